@@ -17,11 +17,13 @@ public class Engine {
     private boolean running = true;
     private boolean dirty = true;
     private final StickyMove sticky = new StickyMove();
-    private final InGameController inGame = new InGameController();
+    private final WorldRegenerator regen = new WorldRegenerator();
+    private final InGameController inGame = new InGameController(regen);
     private final InventoryController invCtrl = new InventoryController();
     private final EquipmentController eqCtrl = new EquipmentController();
     private final WorldActionController worldCtrl = new WorldActionController();
     private final StatsController statsCtrl = new StatsController();
+    private final OverviewController overviewCtrl = new OverviewController();
 
     public Engine(InputHandler input) {
         this.input = input;
@@ -46,7 +48,9 @@ public class Engine {
     }
 
     public void run() {
+        long frameNs = 0; // lo que tardó la vuelta anterior (sin la pausa final)
         while (running) {
+            long frameStart = System.nanoTime();
             // 1) INPUT
             InputHandler.Command c;
             while ((c = input.poll(0)) != InputHandler.Command.NONE) {
@@ -82,6 +86,14 @@ public class Engine {
                     }
                     if (e == Effect.CHANGED) dirty = true;
 
+                } else if (state.overviewOpen) {
+                    Effect e = overviewCtrl.handle(c, state, renderer);
+                    if (e == Effect.QUIT) {
+                        running = false;
+                        break;
+                    }
+                    if (e == Effect.CHANGED) dirty = true;
+
                 } else {
                     if (isArrow(c)) {
                         boolean moved = sticky.onArrow(c, state, renderer);
@@ -98,7 +110,7 @@ public class Engine {
             }
             if (!running) break;
 
-            boolean uiOpen = state.inventoryOpen || state.equipmentOpen || state.worldActionsOpen || state.statsOpen;
+            boolean uiOpen = state.inventoryOpen || state.equipmentOpen || state.worldActionsOpen || state.statsOpen || state.overviewOpen;
 
             if (renderer.ensureLayoutUpToDate(state)) {
                 dirty = true;
@@ -121,7 +133,12 @@ public class Engine {
                 }
             });
 
-            // 4) RENDER
+            // 4) MUNDO NUEVO (si la regeneración en segundo plano ha terminado se cambia aquí, entre ticks;
+            //    la pregeneración especulativa se frena si la vuelta anterior fue lenta)
+            if (regen.poll(state, renderer, frameNs)) dirty = true;
+            if (state.residency != null) state.residency.update(state.px, state.py, game.Constants.WORLD_VIEW_CHUNKS);
+
+            // 5) RENDER
             if (!uiOpen) {
                 if (clock.shouldRender(dirty)) {
                     renderer.renderAll(state);
@@ -136,6 +153,7 @@ public class Engine {
                 }
             }
 
+            frameNs = System.nanoTime() - frameStart;
             try {
                 Thread.sleep(2);
             } catch (InterruptedException ignored) {
@@ -148,6 +166,8 @@ public class Engine {
     }
 
     public void shutdown() {
+        regen.shutdown();
+        if (state.residency != null) state.residency.close();
         AudioManager.shutdown();
         renderer.shutdown();
     }
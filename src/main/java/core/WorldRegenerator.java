@@ -0,0 +1,155 @@
+package core;
+
+import game.GameState;
+import render.Renderer;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+
+import static game.Constants.*;
+
+// Regeneración del mundo en segundo plano: el mapa y su loot se preparan en un hilo aparte y el bucle
+// principal los instala de golpe entre ticks (poll), así que la partida nunca se congela esperando.
+// Con WORLD_PREGENERATE, en cuanto el jugador lleva un rato en un mapa se empieza a preparar el siguiente
+// (especulativo): a prioridad mínima y parándose entre pasadas mientras el bucle vaya justo de tiempo.
+// Al pulsar R ese mundo se instala al instante o, si aún no está, se termina a ritmo normal.
+// Con generación paralela (WORLD_GEN_THREADS > 1) los chunks corren en un pool propio cuyos hilos siguen la
+// misma prioridad que el de "worldgen": mínima mientras el trabajo sea especulativo.
+public final class WorldRegenerator {
+    private volatile Thread worker;
+    private final ExecutorService exec = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "worldgen");
+        t.setDaemon(true);
+        worker = t;
+        return t;
+    });
+    private final Set<Thread> poolWorkers = ConcurrentHashMap.newKeySet();
+    private final ForkJoinPool pool = WORLD_GEN_THREADS > 1 ? new ForkJoinPool(WORLD_GEN_THREADS, p -> {
+        ForkJoinWorkerThread t = new ForkJoinWorkerThread(p) {
+            @Override
+            protected void onTermination(Throwable exception) {
+                poolWorkers.remove(this);
+            }
+        };
+        t.setName("worldgen-" + t.getPoolIndex());
+        t.setDaemon(true);
+        t.setPriority(priority());
+        poolWorkers.add(t);
+        return t;
+    }, null, false) : null;
+    private Future<GameState.NextWorld> job;
+    private volatile boolean requested; // false -> el trabajo en curso es especulativo
+    private volatile boolean tight;     // la última vuelta del bucle se pasó de FRAME_BUDGET_NS
+    private volatile double progress;   // 0..1, lo escribe el hilo de generación
+    private int reportedPct;
+    private long idleSinceNs = System.nanoTime();
+
+    public boolean busy() {
+        return job != null;
+    }
+
+    public void request(GameState s, Renderer r) {
+        if (job != null && requested) {
+            r.log("Ya se está generando un mapa nuevo...");
+            return;
+        }
+        reportedPct = 0;
+        if (job == null) start(s, true);
+        else promote(); // el especulativo pasa a ser el pedido; poll lo instala (ya, si está terminado)
+        if (!job.isDone()) r.log("Generando mapa nuevo...");
+    }
+
+    // Una vez por vuelta del bucle, entre ticks, con lo que ha tardado la vuelta anterior: avisa del avance
+    // (cada 25%), instala el mundo pedido si ya está y lanza el especulativo. true si hay algo que pintar.
+    public boolean poll(GameState s, Renderer r, long frameNs) {
+        tight = frameNs > FRAME_BUDGET_NS;
+        if (job == null) {
+            if (WORLD_PREGENERATE && System.nanoTime() - idleSinceNs >= WORLD_PREGEN_DELAY_NS) start(s, false);
+            return false;
+        }
+        if (!requested) return false; // el especulativo espera a que lo pidan
+        if (!job.isDone()) {
+            int pct = (int) (progress * 4) * 25;
+            if (pct <= reportedPct || pct >= 100) return false;
+            reportedPct = pct;
+            r.log("Generando mapa: " + pct + "%");
+            return true;
+        }
+
+        GameState.NextWorld w;
+        try {
+            w = job.get();
+        } catch (ExecutionException e) {
+            finish();
+            Throwable c = e.getCause() != null ? e.getCause() : e;
+            r.log("No se pudo generar el mapa: " + c.getMessage());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        finish();
+
+        s.install(w);
+        r.onMapChanged(s);
+        if (w.lootPlaced < 0) r.log("No queda loot disponible (cupos agotados).");
+        else r.log("Se han dispersado " + w.lootPlaced + " objetos por la zona.");
+        r.log("Nuevo mapa generado.");
+        return true;
+    }
+
+    public void shutdown() {
+        exec.shutdownNow();
+        if (pool != null) pool.shutdownNow();
+    }
+
+    private void start(GameState s, boolean requested) {
+        long seed = s.nextWorldSeed();
+        this.requested = requested;
+        progress = 0;
+        job = exec.submit(() -> {
+            setPriority(priority());
+            return GameState.buildWorld(seed, this::onProgress, pool);
+        });
+    }
+
+    private void promote() {
+        requested = true;
+        setPriority(Thread.NORM_PRIORITY);
+    }
+
+    private int priority() {
+        return requested ? Thread.NORM_PRIORITY : Thread.MIN_PRIORITY;
+    }
+
+    // hilo "worldgen" y los del pool que ya existan; los que cree el pool después toman priority()
+    private void setPriority(int prio) {
+        Thread t = worker;
+        if (t != null) t.setPriority(prio);
+        for (Thread w : poolWorkers) w.setPriority(prio);
+    }
+
+    private void finish() {
+        job = null;
+        idleSinceNs = System.nanoTime();
+    }
+
+    // llamado por la generación entre pasadas/chunks: un especulativo cede mientras el bucle vaya justo
+    private void onProgress(double p) {
+        progress = p;
+        while (!requested && tight) {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
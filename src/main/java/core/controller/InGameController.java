@@ -1,15 +1,21 @@
 package core.controller;
 
 import core.StickyMove;
+import core.WorldRegenerator;
 import game.GameState;
 import render.Renderer;
 import systems.CombatSystem;
-import systems.LootSystem;
 import systems.WorldActionSystem;
 import ui.input.InputHandler;
 import utils.AudioManager;
 
 public class InGameController {
+    private final WorldRegenerator regen;
+
+    public InGameController(WorldRegenerator regen) {
+        this.regen = regen;
+    }
+
     public Effect handle(InputHandler.Command c, GameState state, Renderer renderer, StickyMove move) {
         switch (c) {
             case INVENTORY -> {
@@ -65,15 +71,22 @@ public class InGameController {
                     }
                 }
             }
+            case MINIMAP -> {
+                state.minimapOpen = !state.minimapOpen;
+                return Effect.CHANGED;
+            }
+            case OVERVIEW -> {
+                state.overviewOpen = true;
+                move.reset();
+                renderer.log("Abres la vista general del mapa.");
+                return Effect.CHANGED;
+            }
             case OPTIONS -> {
                 renderer.log("Abres el menú de opciones.");
                 return Effect.CHANGED;
             }
             case REGENERATE -> {
-                state.resetMap();
-                renderer.onMapChanged(state);
-                LootSystem.scatterInitialLoot(state, renderer);
-                renderer.log("Nuevo mapa generado.");
+                regen.request(state, renderer); // se instala en Engine, entre ticks, cuando esté listo
                 return Effect.CHANGED;
             }
             case QUIT -> {
@@ -0,0 +1,28 @@
+package core.controller;
+
+import game.GameState;
+import render.Renderer;
+import ui.input.InputHandler;
+
+public class OverviewController {
+    public Effect handle(InputHandler.Command c, GameState s, Renderer r) {
+        switch (c) {
+            case OVERVIEW, ACTION -> {
+                s.overviewOpen = false;
+                r.log("Cierras la vista general.");
+                return Effect.CHANGED;
+            }
+            case MINIMAP -> {
+                s.overviewOpen = false;
+                s.minimapOpen = true;
+                return Effect.CHANGED;
+            }
+            case QUIT -> {
+                return Effect.QUIT;
+            }
+            default -> {
+            }
+        }
+        return Effect.NONE;
+    }
+}
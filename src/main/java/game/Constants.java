@@ -12,6 +12,24 @@ public final class Constants {
     public static final long COMBINE_WINDOW_NS = COMBINE_WINDOW_MS * MS;
     public static final long STICKY_RENEW_NS = STICKY_RENEW_MS * MS;
 
+    public static final int WORLD_W = 800;
+    public static final int WORLD_H = 650;
+    // -Ddeadscript.chunked=true -> mundo por chunks generado bajo demanda: arranca con los chunks alrededor del
+    // jugador, pero es otro mundo que el clásico (sin carreteras, ninguna casa cruza un chunk), así que no es el defecto
+    public static final boolean WORLD_CHUNKED = Boolean.getBoolean("deadscript.chunked");
+    public static final long WORLD_SEED = Long.getLong("deadscript.seed", 0L); // 0 -> semilla aleatoria en cada partida
+    public static final String WORLD_FILE = System.getProperty("deadscript.map"); // fichero MapFile a abrir en vez de generar
+    public static final boolean WORLD_MAP_CACHE = true; // mapas de semilla fija se guardan/cargan de disco
+    // 1 -> generador clásico secuencial. Más hilos (opcional, -Ddeadscript.genThreads=N) generan por chunks en
+    // paralelo: misma salida con cualquier N > 1, pero NO es el mundo secuencial (otras casas y puertas, ninguna
+    // casa cruza un chunk) y la caché lo guarda aparte
+    public static final int WORLD_GEN_THREADS = Math.max(1, Integer.getInteger("deadscript.genThreads", 1));
+    public static final boolean WORLD_PREGENERATE = true; // prepara el siguiente mapa en segundo plano mientras se juega
+    public static final long WORLD_PREGEN_DELAY_NS = 3_000_000_000L; // espera tras instalar un mapa antes de preparar el siguiente
+    public static final long FRAME_BUDGET_NS = 8_000_000L; // vuelta del bucle más larga que esto -> la pregeneración se frena
+    public static final int WORLD_RESIDENT_CHUNKS = 256; // máx. chunks en memoria (mapas mayores vuelcan a disco); 0 -> sin límite
+    public static final int WORLD_VIEW_CHUNKS = 2; // radio de chunks alrededor del jugador que se mantienen en memoria
+
     // Player
     public static final long PLAYER_MOVE_COOLDOWN_NS = 180_000_000L; // ≈5.55 tiles/s
     public static final int FOV_OUTER_EXTRA = 2;
@@ -3,13 +3,22 @@ package game;
 import items.Equipment;
 import items.Item;
 import items.Items;
+import world.ChunkResidency;
 import world.Entity;
 import world.GameMap;
+import world.GenParams;
+import world.MapCache;
+import world.MapFile;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleConsumer;
 
 public class GameState {
-    public GameMap map = GameMap.randomBalanced(800, 650);
+    private int regenerations = 0;
+    public GameMap map = initialWorld();
     public int px = map.w / 2, py = map.h / 2;
     public int lastDx = 0, lastDy = 0;
     public String ubicacion = "Goodsummer";
@@ -64,6 +73,8 @@ public class GameState {
     public final Map<String, Integer> worldSpawnedByItem = new HashMap<>();
 
     public boolean statsOpen = false;
+    public boolean minimapOpen = false;
+    public boolean overviewOpen = false;
     public int frio = 12;
     public int miedo = 0;
     public int aburrimiento = 8;
@@ -109,7 +120,11 @@ public class GameState {
     public int statsBodySel = 0;
 
 
+    // chunks en memoria acotados (null si el mapa cabe entero); se rehace con cada mapa
+    public ChunkResidency residency;
+
     public GameState() {
+        residency = ChunkResidency.forMap(map, Constants.WORLD_RESIDENT_CHUNKS, entities);
         // Equipo inicial (no consume cupos de loot)
         equipment.setHead(Items.create("cap_01"));
         equipment.setBackpack(Items.create("bag_01"));
@@ -168,17 +183,98 @@ public class GameState {
 
     }
 
-    public void resetMap() {
-        map = GameMap.randomBalanced(240, 160);
-        px = map.w / 2;
-        py = map.h / 2;
+    private static GameMap initialWorld() {
+        if (Constants.WORLD_FILE != null) {
+            try {
+                return MapFile.open(Paths.get(Constants.WORLD_FILE));
+            } catch (IOException e) {
+                System.err.println("No se pudo abrir el mapa " + Constants.WORLD_FILE + ": " + e.getMessage());
+            }
+        }
+        return newWorld(Constants.WORLD_W, Constants.WORLD_H, worldSeed(0), null, null);
+    }
+
+    // con semilla fija la secuencia de mapas (inicial + regeneraciones) es siempre la misma
+    private static long worldSeed(int n) {
+        return Constants.WORLD_SEED != 0 ? Constants.WORLD_SEED + n : System.nanoTime();
+    }
+
+    private static GameMap newWorld(int w, int h, long seed, DoubleConsumer progress, ForkJoinPool pool) {
+        GenParams p = new GenParams(w, h, seed);
+        p.progress = progress;
+        p.threads = Constants.WORLD_GEN_THREADS;
+        p.pool = pool;
+        if (Constants.WORLD_CHUNKED) return GameMap.chunked(p);
+        // sólo merece la pena cachear si la semilla puede repetirse
+        MapCache cache = Constants.WORLD_MAP_CACHE && Constants.WORLD_SEED != 0 ? MapCache.defaultCache() : null;
+        // por chunks sólo si se pide (WORLD_GEN_THREADS > 1): es otro mundo que el secuencial para la misma semilla
+        if (p.threads > 1) return cache != null ? cache.randomBalancedParallel(p) : GameMap.randomBalancedParallel(p);
+        return cache != null ? cache.randomBalanced(p) : GameMap.randomBalanced(p);
+    }
+
+    // Mundo nuevo ya preparado (mapa + loot) a la espera de instalarse con install()
+    public static final class NextWorld {
+        public final long seed;
+        public final GameMap map;
+        public final int px, py;
+        public final List<Entity> loot;
+        public final Map<String, Integer> spawnedByItem;
+        public final int lootPlaced; // -1: cupos de loot agotados
+
+        NextWorld(long seed, GameMap map, List<Entity> loot, Map<String, Integer> spawnedByItem, int lootPlaced) {
+            this.seed = seed;
+            this.map = map;
+            this.px = map.w / 2;
+            this.py = map.h / 2;
+            this.loot = loot;
+            this.spawnedByItem = spawnedByItem;
+            this.lootPlaced = lootPlaced;
+        }
+    }
+
+    // semilla de la próxima regeneración (hilo del juego)
+    public long nextWorldSeed() {
+        return worldSeed(++regenerations);
+    }
+
+    // Genera mapa y loot sin tocar ningún estado compartido: se puede llamar desde otro hilo
+    public static NextWorld buildWorld(long seed, DoubleConsumer progress) {
+        return buildWorld(seed, progress, null);
+    }
+
+    // 'pool': dónde corren los chunks si la generación es paralela (null -> uno propio)
+    public static NextWorld buildWorld(long seed, DoubleConsumer progress, ForkJoinPool pool) {
+        GameMap m = newWorld(240, 160, seed, progress, pool);
+        int px = m.w / 2, py = m.h / 2;
+        // en un mundo perezoso el loot sólo cae en chunks cargados: carga los de alrededor del jugador
+        if (m.isLazy()) {
+            for (int y = Math.max(0, py - GameMap.CHUNK); y <= Math.min(m.h - 1, py + GameMap.CHUNK); y += GameMap.CHUNK / 2)
+                for (int x = Math.max(0, px - GameMap.CHUNK); x <= Math.min(m.w - 1, px + GameMap.CHUNK); x += GameMap.CHUNK / 2) m.walkable(x, y);
+        }
+        List<Entity> loot = new ArrayList<>();
+        Map<String, Integer> spawned = new HashMap<>();
+        int placed = systems.LootSystem.scatter(m, px, py, loot, spawned, new Random(seed));
+        return new NextWorld(seed, m, loot, spawned, placed);
+    }
+
+    // Cambia al mundo 'w' de golpe (llamar entre ticks, desde el hilo del juego)
+    public void install(NextWorld w) {
+        if (residency != null) residency.close();
+        map = w.map;
+        px = w.px;
+        py = w.py;
         lastDx = lastDy = 0;
         escondido = false;
         hidePrevX = -1;
         hidePrevY = -1;
         entities.clear();
+        entities.addAll(w.loot);
         spawnTimer = 0.0;
         nextGroupId = 1;
         worldSpawnedByItem.clear();
+        worldSpawnedByItem.putAll(w.spawnedByItem);
+        worldActionsOpen = false;
+        worldTarget = null;
+        residency = ChunkResidency.forMap(map, Constants.WORLD_RESIDENT_CHUNKS, entities);
     }
 }
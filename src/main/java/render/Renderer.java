@@ -26,6 +26,7 @@ public class Renderer {
     private final InventoryView invOverlay = new InventoryView();
     private final EquipmentView equipOverlay = new EquipmentView();
     private final StatsView statsOverlay = new StatsView();
+    private final MinimapView minimap = new MinimapView();
     private Terminal term;
     private int lastCols = -1, lastRows = -1;
 
@@ -73,7 +74,7 @@ public class Renderer {
 
         equip.render(arma, off, cabeza, pecho, manos, piernas, pies, mochila, 0, 0, peso, capacidad);
 
-        if (!s.inventoryOpen && !s.equipmentOpen && !s.statsOpen) {
+        if (!s.inventoryOpen && !s.equipmentOpen && !s.statsOpen && !s.overviewOpen) {
             java.util.HashMap<Long, world.Entity> overlay = new java.util.HashMap<>();
             for (world.Entity e : s.entities) {
                 long k = (((long) e.x) << 32) ^ (e.y & 0xffffffffL);
@@ -81,6 +82,11 @@ public class Renderer {
             }
             mapView.render(s.map, s.px, s.py, overlay);
             // elimina la llamada separada a renderEntities(s);
+            if (s.minimapOpen) minimap.renderInset(s.map, s.px, s.py, MAP_TOP + 2, mapView.getLeft(), mapView.getViewW(), mapView.getViewH());
+        }
+
+        if (s.overviewOpen) {
+            minimap.renderOverview(s.map, s.px, s.py, MAP_TOP + 2, mapView.getLeft(), mapView.getViewW(), mapView.getViewH());
         }
 
         if (s.inventoryOpen) {
@@ -203,8 +209,8 @@ public class Renderer {
             lines.add(String.format("Pos: (%d,%d)", tx, ty));
             lines.add("Tipo: " + kind);
             lines.add("Visible: " + (vis ? "Sí" : det ? "Detectado" : "No"));
-            lines.add("Terreno: " + utils.EntityUtil.tileName(s.map.tiles[ty][tx], s.map.indoor[ty][tx]));
-            lines.add("Transitable: " + (s.map.walk[ty][tx] ? "Sí" : "No"));
+            lines.add("Terreno: " + utils.EntityUtil.tileName(s.map.tile(tx, ty), s.map.indoor(tx, ty)));
+            lines.add("Transitable: " + (s.map.walkable(tx, ty) ? "Sí" : "No"));
 
             // Detalle extra cuando sea LOOT
             if (found.type == world.Entity.Type.LOOT && found.item != null) {
@@ -228,15 +234,15 @@ public class Renderer {
             }
         } else {
             // Terreno
-            char t = s.map.tiles[ty][tx];
+            char t = s.map.tile(tx, ty);
             glyph = t;
             kind = "Terreno";
-            title = "OBJETIVO: " + utils.EntityUtil.tileName(t, s.map.indoor[ty][tx]);
+            title = "OBJETIVO: " + utils.EntityUtil.tileName(t, s.map.indoor(tx, ty));
 
             lines.add(String.format("Pos: (%d,%d)", tx, ty));
             lines.add("Visible: " + (vis ? "Sí" : det ? "Detectado" : "No"));
             lines.add("Tipo: " + kind);
-            lines.add("Transitable: " + (s.map.walk[ty][tx] ? "Sí" : "No"));
+            lines.add("Transitable: " + (s.map.walkable(tx, ty) ? "Sí" : "No"));
 
             String extra = utils.EntityUtil.tileHint(t);
             if (!extra.isEmpty()) lines.add(extra);
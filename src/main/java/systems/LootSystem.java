@@ -4,9 +4,13 @@ import game.GameState;
 import items.Items;
 import items.Item;
 import render.Renderer;
+import world.BitLayer;
+import world.Connectivity;
 import world.Entity;
+import world.GameMap;
 
-import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 public final class LootSystem {
@@ -15,52 +19,54 @@ public final class LootSystem {
 
     public static void scatterInitialLoot(GameState s, Renderer r) {
         s.entities.removeIf(e -> e.type == Entity.Type.LOOT);
+        int placed = scatter(s.map, s.px, s.py, s.entities, s.worldSpawnedByItem, s.rng);
+        if (r == null) return;
+        if (placed < 0) r.log("No queda loot disponible (cupos agotados).");
+        else r.log("Se han dispersado " + placed + " objetos por la zona.");
+    }
 
-        int area = Math.max(1, s.map.w * s.map.h);
+    // Reparte loot sobre 'map' añadiéndolo a 'entities' y sumando cupos en 'spawned'. No toca GameState, así que
+    // sirve para preparar un mundo nuevo desde otro hilo. Devuelve los objetos colocados (-1: cupos agotados).
+    public static int scatter(GameMap map, int px, int py, List<Entity> entities, Map<String, Integer> spawned, Random rng) {
+        int area = Math.max(1, map.w * map.h);
         int target = Math.min(200, Math.max(35, area / 500));
 
-        HashSet<Long> used = new HashSet<>();
-        for (var e : s.entities) used.add(key(e.x, e.y));
-        used.add(key(s.px, s.py)); // no spawneamos bajo el jugador
-
-        Random rng = s.rng;
-        int placed = 0, tries = 0, maxTries = target * 30;
-
-        if (!Items.anyLootRemaining(s.worldSpawnedByItem)) {
-            if (r != null) r.log("No queda loot disponible (cupos agotados).");
-            return;
-        }
-
-        while (placed < target && tries++ < maxTries) {
-            // 1) Posición
-            int x = rng.nextInt(s.map.w);
-            int y = rng.nextInt(s.map.h);
-            if (!s.map.walk[y][x]) continue;
-            int dx = x - s.px, dy = y - s.py;
-            if (dx * dx + dy * dy < 100) continue;
-
-            long k = key(x, y);
-            if (used.contains(k)) continue;
+        // Candidatas: celdas transitables (en mundos perezosos sólo las de chunks ya cargados, no forzamos
+        // generar los lejanos) y alcanzables desde el jugador, sin entidades y fuera de un radio de 10 a su alrededor
+        BitLayer free = map.walkLayer().copy();
+        Connectivity conn = map.connectivity();
+        if (conn.component(px, py) != Connectivity.NONE) free.and(conn.reachable(px, py, 0, 0, map.w - 1, map.h - 1));
+        for (var e : entities) if (map.inBounds(e.x, e.y)) free.clear(e.x, e.y);
+        for (int y = Math.max(0, py - 9); y <= Math.min(map.h - 1, py + 9); y++)
+            for (int x = Math.max(0, px - 9); x <= Math.min(map.w - 1, px + 9); x++) {
+                int dx = x - px, dy = y - py;
+                if (dx * dx + dy * dy < 100) free.clear(x, y);
+            }
+
+        int placed = 0, candidates = free.count();
+
+        if (!Items.anyLootRemaining(spawned)) return -1;
+
+        while (placed < target && candidates > 0) {
+            // 1) Posición: una candidata al azar, que deja de serlo
+            int c = free.nthSetBit(rng.nextInt(candidates));
+            int x = c % map.w, y = c / map.w;
+            free.clear(x, y);
+            candidates--;
 
             // 2) Sorteo de ítem con cupos restantes
-            String id = Items.pickRandomLootId(rng, s.worldSpawnedByItem);
+            String id = Items.pickRandomLootId(rng, spawned);
             if (id == null) break; // no queda nada que sortear
 
             Item it = Items.create(id);
 
             // 3) Colocar y contar
             Entity loot = Entity.loot(x, y, it);
-            s.entities.add(loot);
-            used.add(k);
+            entities.add(loot);
             placed++;
 
-            s.worldSpawnedByItem.merge(id, 1, Integer::sum);
+            spawned.merge(id, 1, Integer::sum);
         }
-
-        if (r != null) r.log("Se han dispersado " + placed + " objetos por la zona.");
-    }
-
-    private static long key(int x, int y) {
-        return (((long) x) << 32) ^ (y & 0xffffffffL);
+        return placed;
     }
 }
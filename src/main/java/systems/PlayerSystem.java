@@ -39,15 +39,15 @@ public final class PlayerSystem {
         }
 
         if (dx != 0 && dy != 0) {
-            boolean okX = (s.px + dx >= 0 && s.px + dx < s.map.w) && s.map.walk[s.py][s.px + dx];
-            boolean okY = (s.py + dy >= 0 && s.py + dy < s.map.h) && s.map.walk[s.py + dy][s.px];
+            boolean okX = (s.px + dx >= 0 && s.px + dx < s.map.w) && s.map.walkable(s.px + dx, s.py);
+            boolean okY = (s.py + dy >= 0 && s.py + dy < s.map.h) && s.map.walkable(s.px, s.py + dy);
             if (!okX && !okY) {
                 r.log("Hay un obstáculo bloqueando el paso.");
                 return false;
             }
         }
 
-        if (!s.map.walk[ny][nx]) {
+        if (!s.map.walkable(nx, ny)) {
             r.log("Hay un obstáculo bloqueando el paso.");
             return false;
         }
@@ -91,9 +91,9 @@ public final class WorldActionSystem {
                 // todo --> gestionar más opciones de acción
             }
         } else {
-            char t = s.map.tiles[ty][tx];
+            char t = s.map.tile(tx, ty);
             switch (t) {
-                case '.' -> out.add("Cavar");
+                case '.', ':' -> out.add("Cavar");
                 case '#' -> {
                     boolean onSameTree = (s.px == tx && s.py == ty) && s.escondido;
                     if (onSameTree) out.add("Salir");
@@ -117,7 +117,7 @@ public final class WorldActionSystem {
         int tx = s.worldTx;
         int ty = s.worldTy;
         Entity ent = s.worldTarget;
-        char tile = s.map.tiles[ty][tx];
+        char tile = s.map.tile(tx, ty);
 
         switch (action) {
             case "cancelar" -> {
@@ -162,7 +162,7 @@ public final class WorldActionSystem {
                 }
                 int ex = s.hidePrevX, ey = s.hidePrevY;
                 boolean moved = false;
-                if (ex >= 0 && ey >= 0 && ex < s.map.w && ey < s.map.h && s.map.walk[ey][ex]) {
+                if (ex >= 0 && ey >= 0 && ex < s.map.w && ey < s.map.h && s.map.walkable(ex, ey)) {
                     s.px = ex;
                     s.py = ey;
                     moved = true;
@@ -171,7 +171,7 @@ public final class WorldActionSystem {
                     int[][] dirs = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
                     for (int[] d : dirs) {
                         int nx = s.px + d[0], ny = s.py + d[1];
-                        if (nx >= 0 && ny >= 0 && nx < s.map.w && ny < s.map.h && s.map.walk[ny][nx]) {
+                        if (nx >= 0 && ny >= 0 && nx < s.map.w && ny < s.map.h && s.map.walkable(nx, ny)) {
                             s.px = nx;
                             s.py = ny;
                             moved = true;
@@ -4,7 +4,10 @@ import game.Constants;
 import game.GameState;
 import render.Renderer;
 import utils.AudioManager;
+import world.Connectivity;
 import world.Entity;
+import world.GameMap;
+import world.path.HpaGraph;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -25,6 +28,36 @@ public final class ZombieSystem {
         }
     }
 
+    // --- Rutas por-zombi (HPA*: grafo de entradas entre clusters, compartido por todos) ---
+    private static final WeakHashMap<Entity, PathState> PATHS = new WeakHashMap<>();
+    private static HpaGraph graph;
+    private static GameMap graphMap;
+
+    // Si el objetivo se aleja más que esto del final de la ruta, se vuelve a planificar
+    private static final int REPLAN_DRIFT = 2;
+    // Tras un fallo (sin ruta) se camina en línea recta este tiempo antes de reintentar
+    private static final double RETRY_SEC = 1.0;
+    // Puntos de aparición que se prueban hasta dar con uno alcanzable por el jugador
+    private static final int SPAWN_ANCHOR_TRIES = 4;
+
+    private static final class PathState {
+        int[] cells; // y*w + x, sin la celda de partida
+        int idx;
+        int goalX, goalY;
+        long version;
+        double retrySec;
+    }
+
+    private static HpaGraph graphFor(GameMap m) {
+        if (graphMap != m) {
+            if (graph != null) graphMap.removeListener(graph);
+            graph = new HpaGraph(m);
+            graphMap = m;
+            PATHS.clear();
+        }
+        return graph;
+    }
+
     // Intervalo entre rugidos de un zombi (en segundos). Ajusta a gusto.
     private static double nextInterval(GameState s) {
         // 1.6s .. 4.4s (dispersión suficiente para que no suenen “a la vez”)
@@ -77,23 +110,26 @@ public final class ZombieSystem {
                 }
             }
 
-            int stepX = Integer.compare(tx - e.x, 0);
-            int stepY = Integer.compare(ty - e.y, 0);
+            // Un seguidor cuyo hueco cae en un árbol/pared va directo al líder
+            if (!e.leader && s.map.inBounds(tx, ty) && !s.map.walkable(tx, ty)) {
+                Entity lead = leaders.get(e.groupId);
+                if (lead != null) {
+                    tx = lead.x;
+                    ty = lead.y;
+                }
+            }
+
+            PathState ps = PATHS.get(e);
+            if (ps == null) {
+                ps = new PathState();
+                PATHS.put(e, ps);
+            }
+            if (ps.retrySec > 0) ps.retrySec -= dt;
 
             double tiles = e.speedTilesPerSec * dt + e.moveRemainder;
             while (tiles >= 1.0) {
                 tiles -= 1.0;
-                int nx = e.x, ny = e.y;
-                if (stepX != 0 && stepY != 0) {
-                    if (s.rng.nextBoolean()) nx += stepX;
-                    else ny += stepY;
-                } else if (stepX != 0) nx += stepX;
-                else if (stepY != 0) ny += stepY;
-
-                if (nx >= 0 && ny >= 0 && nx < s.map.w && ny < s.map.h && s.map.walk[ny][nx]) {
-                    e.x = nx;
-                    e.y = ny;
-                } else break;
+                if (!stepAlongPath(s, e, ps, tx, ty) && !stepGreedy(s, e, tx, ty)) break;
             }
             e.moveRemainder = tiles;
 
@@ -149,18 +185,80 @@ public final class ZombieSystem {
         return touched;
     }
 
+    // Un paso por la ruta HPA*; false si no hay ruta utilizable (se cae al paso directo)
+    private static boolean stepAlongPath(GameState s, Entity e, PathState ps, int tx, int ty) {
+        if (e.x == tx && e.y == ty) return false;
+        if (ps.retrySec > 0 || !s.map.inBounds(tx, ty) || !s.map.walkable(tx, ty)) return false;
+        GameMap m = s.map;
+        HpaGraph g = graphFor(m);
+
+        boolean stale = ps.cells == null || ps.idx >= ps.cells.length || ps.version != m.version()
+                || Math.abs(ps.goalX - tx) + Math.abs(ps.goalY - ty) > REPLAN_DRIFT;
+        if (!stale) {
+            int c = ps.cells[ps.idx];
+            int cx = c % m.w, cy = c / m.w;
+            stale = Math.abs(cx - e.x) + Math.abs(cy - e.y) != 1 || !m.walkable(cx, cy);
+        }
+        if (stale) {
+            ps.cells = g.findPath(e.x, e.y, tx, ty);
+            ps.idx = 0;
+            ps.goalX = tx;
+            ps.goalY = ty;
+            ps.version = m.version();
+            if (ps.cells == null || ps.cells.length == 0) {
+                ps.cells = null;
+                ps.retrySec = RETRY_SEC;
+                return false;
+            }
+        }
+        int c = ps.cells[ps.idx++];
+        e.x = c % m.w;
+        e.y = c / m.w;
+        return true;
+    }
+
+    // Paso de siempre: en línea recta hacia el objetivo (diagonal alternando ejes al azar)
+    private static boolean stepGreedy(GameState s, Entity e, int tx, int ty) {
+        int stepX = Integer.compare(tx - e.x, 0);
+        int stepY = Integer.compare(ty - e.y, 0);
+        int nx = e.x, ny = e.y;
+        if (stepX != 0 && stepY != 0) {
+            if (s.rng.nextBoolean()) nx += stepX;
+            else ny += stepY;
+        } else if (stepX != 0) nx += stepX;
+        else if (stepY != 0) ny += stepY;
+
+        if (nx >= 0 && ny >= 0 && nx < s.map.w && ny < s.map.h && s.map.walkable(nx, ny) && (nx != e.x || ny != e.y)) {
+            e.x = nx;
+            e.y = ny;
+            return true;
+        }
+        return false;
+    }
+
     private static boolean trySpawnGroup(GameState s, Renderer r) {
         int curZ = countZombies(s);
         if (curZ >= Constants.MAX_ZOMBIES) return false;
         int capacity = Math.max(0, Constants.MAX_ZOMBIES - curZ);
         int size = Math.min(capacity, 1 + s.rng.nextInt(5));
 
-        double ang = s.rng.nextDouble() * Math.PI * 2.0;
-        int dist = Constants.SPAWN_RADIUS_MIN + s.rng.nextInt(Math.max(1, Constants.SPAWN_RADIUS_MAX - Constants.SPAWN_RADIUS_MIN + 1));
+        // sólo en la componente del jugador: nada de hordas encerradas tras árboles, rocas o el río
+        Connectivity conn = s.map.connectivity();
+        int home = conn.component(s.px, s.py);
 
-        int ax = s.px + (int) Math.round(Math.cos(ang) * dist);
-        int ay = s.py + (int) Math.round(Math.sin(ang) * dist);
-        if (ax < 0 || ay < 0 || ax >= s.map.w || ay >= s.map.h) return false;
+        int ax = -1, ay = -1;
+        for (int t = 0; t < SPAWN_ANCHOR_TRIES; t++) {
+            double ang = s.rng.nextDouble() * Math.PI * 2.0;
+            int dist = Constants.SPAWN_RADIUS_MIN + s.rng.nextInt(Math.max(1, Constants.SPAWN_RADIUS_MAX - Constants.SPAWN_RADIUS_MIN + 1));
+            int x = s.px + (int) Math.round(Math.cos(ang) * dist);
+            int y = s.py + (int) Math.round(Math.sin(ang) * dist);
+            if (x < 0 || y < 0 || x >= s.map.w || y >= s.map.h) continue;
+            if (home != Connectivity.NONE && conn.component(x, y) != home) continue;
+            ax = x;
+            ay = y;
+            break;
+        }
+        if (ax < 0) return false;
 
         int groupId = s.nextGroupId++;
         boolean anyNear = false;
@@ -169,7 +267,8 @@ public final class ZombieSystem {
             int rx = ax + s.rng.nextInt(5) - 2;
             int ry = ay + s.rng.nextInt(5) - 2;
             if (rx < 0 || ry < 0 || rx >= s.map.w || ry >= s.map.h) continue;
-            if (!s.map.walk[ry][rx]) continue;
+            if (!s.map.walkable(rx, ry)) continue;
+            if (home != Connectivity.NONE && conn.component(rx, ry) != home) continue;
 
             double speed = Constants.ZOMBIE_MIN_SPEED + s.rng.nextDouble() * Constants.ZOMBIE_SPEED_RANGE;
 
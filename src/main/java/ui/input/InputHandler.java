@@ -14,7 +14,7 @@ import java.util.concurrent.TimeUnit;
 public class InputHandler implements AutoCloseable {
 
     public enum Command {
-        UP, DOWN, LEFT, RIGHT, REGENERATE, INVENTORY, EQUIPMENT, STATS, ACTION, OPTIONS, QUIT, NONE
+        UP, DOWN, LEFT, RIGHT, REGENERATE, INVENTORY, EQUIPMENT, STATS, ACTION, OPTIONS, MINIMAP, OVERVIEW, QUIT, NONE
     }
 
     private final BlockingQueue<Command> queue = new LinkedBlockingQueue<>();
@@ -82,6 +82,8 @@ public class InputHandler implements AutoCloseable {
         km.bind(Command.EQUIPMENT, "e", "E");
         km.bind(Command.STATS, "s", "S");
         km.bind(Command.OPTIONS, "o", "O");
+        km.bind(Command.MINIMAP, "m", "M");
+        km.bind(Command.OVERVIEW, "v", "V");
 
         return km;
     }
@@ -2,8 +2,10 @@ package ui.menu;
 
 import utils.ANSI;
 import world.GameMap;
-
-import java.util.ArrayDeque;
+import world.RoomIndex;
+import world.fov.EllipseStencil;
+import world.fov.FovCache;
+import world.fov.FovField;
 
 import static game.Constants.FOV_OUTER_EXTRA;
 import static utils.EntityUtil.isInterestingTile;
@@ -11,13 +13,13 @@ import static utils.EntityUtil.isInterestingTile;
 public class MapView {
     private final int top, left, viewW, viewH;
     private final int fovRadius;
-    private final boolean[][] visible;
-    private final boolean[][] detected;
     private final double cellAspect;
     private static final char ROOF_CHAR = '#';
     private static final int ROOF_COLOR = 100000 + 16;
     private static final int WALL_DIM = 100000 + 240;
-    private final boolean[][] roofSeen;
+    private final FovCache fov;
+    private final FovField seen; // visible / detectado del último render, sólo alrededor del jugador
+    private final EllipseStencil disc; // disco de luz del tejado, relativo al jugador
 
     public MapView(int top, int left, int viewW, int viewH, int fovRadius, GameMap map, double cellAspect) {
         this.top = Math.max(1, top);
@@ -26,9 +28,9 @@ public class MapView {
         this.viewH = Math.max(5, viewH);
         this.fovRadius = Math.max(1, fovRadius);
         this.cellAspect = cellAspect <= 0 ? 2.0 : cellAspect;
-        this.visible = new boolean[map.h][map.w];
-        this.detected = new boolean[map.h][map.w];
-        this.roofSeen = new boolean[map.h][map.w];
+        this.disc = EllipseStencil.of(this.fovRadius, this.cellAspect);
+        this.fov = new FovCache(this.fovRadius, this.fovRadius + Math.max(1, FOV_OUTER_EXTRA), this.cellAspect);
+        this.seen = fov.field();
     }
 
     public void prefill() {
@@ -46,10 +48,9 @@ public class MapView {
 
         // 1) FOV con oclusión (visible/detected)
         computeFovAndPeriphery(map, px, py);
-        // 2) Disco de luz sin oclusión para el tejado
-        boolean[][] inDisc = computeLightDisc(map, px, py);
-        // 3) Qué interior queda expuesto (tu estancia + LOS real a interior)
-        boolean[][] exposedIndoor = computeExposedIndoor(map, visible, px, py);
+        // 2) Qué interior queda expuesto: tu estancia (índice de salas, O(1) por celda) + LOS real a interior
+        RoomIndex rooms = map.rooms();
+        int playerRoom = map.indoor(px, py) ? rooms.roomAt(px, py) : RoomIndex.NONE;
 
         int camX = Math.max(0, Math.min(px - viewW / 2, map.w - viewW));
         int camY = Math.max(0, Math.min(py - viewH / 2, map.h - viewH));
@@ -65,9 +66,9 @@ public class MapView {
                 int nextColor = 0;
 
                 if (mx >= 0 && my >= 0 && mx < map.w && my < map.h) {
-                    boolean vis = visible[my][mx];
-                    boolean det = detected[my][mx];
-                    boolean exp = map.explored[my][mx];
+                    boolean vis = seen.visible(mx, my);
+                    boolean det = seen.detected(mx, my);
+                    boolean exp = map.explored(mx, my);
 
                     if (mx == px && my == py) {
                         if (overlay != null) {
@@ -79,18 +80,20 @@ public class MapView {
                         nextColor = 36;
                     } else {
                         // Datos de casilla
-                        char tile = map.tiles[my][mx];
-                        boolean indoor = map.indoor[my][mx];
+                        char tile = map.tile(mx, my);
+                        boolean indoor = map.indoor(mx, my);
                         boolean isIndoorFloor = (tile == '.' && indoor);
+                        boolean inDisc = disc.contains(mx - px, my - py); // disco de luz sin oclusión (tejado)
 
-                        // Memorizamos que ESTE techo ha sido visto si el suelo interior cae en el disco
-                        if (isIndoorFloor && inDisc[my][mx]) {
-                            roofSeen[my][mx] = true;
+                        // Memorizamos que ESTE techo ha sido visto si el suelo interior cae en el disco (en el mapa,
+                        // por chunk: se expulsa y vuelve con él)
+                        if (isIndoorFloor && inDisc) {
+                            map.setRoofSeen(mx, my);
                         }
 
-                        boolean exposed = isIndoorFloor && exposedIndoor[my][mx]; // interior realmente visible ahora
-                        boolean roofNow = isIndoorFloor && !exposed && inDisc[my][mx];        // tejado actual (en disco)
-                        boolean roofDim = isIndoorFloor && !exposed && !inDisc[my][mx] && roofSeen[my][mx]; // tejado atenuado memorizado
+                        boolean exposed = isIndoorFloor && (vis || (playerRoom != RoomIndex.NONE && rooms.roomAt(mx, my) == playerRoom)); // interior realmente visible ahora
+                        boolean roofNow = isIndoorFloor && !exposed && inDisc;        // tejado actual (en disco)
+                        boolean roofDim = isIndoorFloor && !exposed && !inDisc && map.roofSeen(mx, my); // tejado atenuado memorizado
 
                         world.Entity ent = null;
                         if (overlay != null) {
@@ -131,13 +134,14 @@ public class MapView {
                                 ch = ROOF_CHAR;
                                 nextColor = ROOF_COLOR;
                             } else if (vis) {
-                                map.explored[my][mx] = true;
+                                map.setExplored(mx, my);
                                 ch = tile;
                                 nextColor = switch (tile) {
                                     case '#' -> 92;
                                     case '~' -> 100000 + 45;
                                     case '^' -> 37;
                                     case '.' -> (indoor ? 97 : 100000 + 58);
+                                    case ':' -> 100000 + 137;
                                     case '╔', '╗', '╚', '╝', '═', '║' -> 100000 + 94;
                                     case '+' -> 93;
                                     default -> 100000 + 58;
@@ -151,6 +155,7 @@ public class MapView {
                                             case '~' -> 100000 + 24;
                                             case '^' -> 90;
                                             case '.' -> (indoor ? 90 : 100000 + 137);
+                                            case ':' -> 100000 + 95;
                                             case '╔', '╗', '╚', '╝', '═', '║' -> 100000 + 94;
                                             case '+' -> 90;
                                             default -> 100000 + 137;
@@ -170,6 +175,7 @@ public class MapView {
                                     case '~' -> 100000 + 24;
                                     case '^' -> 90;
                                     case '.' -> (indoor ? 90 : 100000 + 137);
+                                    case ':' -> 100000 + 95;
                                     case '╔', '╗', '╚', '╝', '═', '║' -> 100000 + 94;
                                     case '+' -> 90;
                                     default -> 100000 + 137;
@@ -209,129 +215,9 @@ public class MapView {
     }
 
     private void computeFovAndPeriphery(GameMap map, int px, int py) {
-        for (int y = 0; y < map.h; y++) {
-            java.util.Arrays.fill(visible[y], false);
-            java.util.Arrays.fill(detected[y], false);
-        }
-
-        // FOV principal con LOS
-        int r = fovRadius;
-        int y0 = Math.max(0, py - r), y1 = Math.min(map.h - 1, py + r);
-        int x0 = Math.max(0, px - r), x1 = Math.min(map.w - 1, px + r);
-        double r2 = r * (double) r;
-
-        for (int y = y0; y <= y1; y++) {
-            for (int x = x0; x <= x1; x++) {
-                int dx = x - px, dy = y - py;
-                double dyAdj = dy * cellAspect;
-                if (dx * dx + dyAdj * dyAdj <= r2 && los(map, px, py, x, y)) {
-                    visible[y][x] = true;
-                }
-            }
-        }
-
-        // Periferia detectada (sólo si no es visible)
-        int extra = Math.max(1, FOV_OUTER_EXTRA);
-        int rp = r + extra;
-        int yp0 = Math.max(0, py - rp), yp1 = Math.min(map.h - 1, py + rp);
-        int xp0 = Math.max(0, px - rp), xp1 = Math.min(map.w - 1, px + rp);
-        double rp2 = rp * (double) rp;
-
-        for (int y = yp0; y <= yp1; y++) {
-            for (int x = xp0; x <= xp1; x++) {
-                if (visible[y][x]) continue;
-                int dx = x - px, dy = y - py;
-                double dyAdj = dy * cellAspect;
-                if (dx * dx + dyAdj * dyAdj <= rp2 && los(map, px, py, x, y)) {
-                    detected[y][x] = true;
-                }
-            }
-        }
-    }
-
-    // Disco de luz (sin oclusión) para revelar el tejado
-    private boolean[][] computeLightDisc(GameMap map, int px, int py) {
-        boolean[][] inDisc = new boolean[map.h][map.w];
-        int r = fovRadius;
-        int y0 = Math.max(0, py - r), y1 = Math.min(map.h - 1, py + r);
-        int x0 = Math.max(0, px - r), x1 = Math.min(map.w - 1, px + r);
-        double r2 = r * (double) r;
-        for (int y = y0; y <= y1; y++) {
-            for (int x = x0; x <= x1; x++) {
-                int dx = x - px, dy = y - py;
-                double dyAdj = dy * cellAspect;
-                if (dx * dx + dyAdj * dyAdj <= r2) inDisc[y][x] = true;
-            }
-        }
-        return inDisc;
-    }
-    private boolean[][] computeOuterRing(GameMap map, int px, int py, boolean[][] innerDisc) {
-        boolean[][] ring = new boolean[map.h][map.w];
-        int r = fovRadius + Math.max(1, FOV_OUTER_EXTRA);
-        int y0 = Math.max(0, py - r), y1 = Math.min(map.h - 1, py + r);
-        int x0 = Math.max(0, px - r), x1 = Math.min(map.w - 1, px + r);
-        double r2 = r * (double) r;
-        for (int y = y0; y <= y1; y++) {
-            for (int x = x0; x <= x1; x++) {
-                int dx = x - px, dy = y - py;
-                double dyAdj = dy * cellAspect;
-                if (dx*dx + dyAdj*dyAdj <= r2 && !innerDisc[y][x]) {
-                    ring[y][x] = true;
-                }
-            }
-        }
-        return ring;
-    }
-
-    private static boolean[][] computeExposedIndoor(GameMap m, boolean[][] visible, int px, int py) {
-        boolean[][] exposed = new boolean[m.h][m.w];
-
-        // 1) Si el jugador está dentro, expone su estancia (conectividad 4)
-        if (m.indoor[py][px]) {
-            ArrayDeque<int[]> q = new ArrayDeque<>();
-            exposed[py][px] = true;
-            q.add(new int[]{px, py});
-            int[][] d4 = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
-            while (!q.isEmpty()) {
-                int[] p = q.pollFirst();
-                for (int[] d : d4) {
-                    int nx = p[0] + d[0], ny = p[1] + d[1];
-                    if (nx <= 0 || ny <= 0 || nx >= m.w - 1 || ny >= m.h - 1) continue;
-                    if (!m.indoor[ny][nx] || exposed[ny][nx]) continue;
-                    exposed[ny][nx] = true;
-                    q.add(new int[]{nx, ny});
-                }
-            }
-        }
-
-        // 2) Cualquier suelo interior con LOS real se expone (por ej. a través de una puerta)
-        for (int y = 0; y < m.h; y++) {
-            for (int x = 0; x < m.w; x++) {
-                if (m.indoor[y][x] && visible[y][x]) exposed[y][x] = true;
-            }
-        }
-
-        return exposed;
-    }
-
-    private boolean los(GameMap map, int x0, int y0, int x1, int y1) {
-        int dx = Math.abs(x1 - x0), sx = x0 < x1 ? 1 : -1;
-        int dy = -Math.abs(y1 - y0), sy = y0 < y1 ? 1 : -1;
-        int err = dx + dy, e2, x = x0, y = y0;
-        while (true) {
-            if (x == x1 && y == y1) return true;
-            if (!(x == x0 && y == y0) && !map.transp[y][x]) return false;
-            e2 = 2 * err;
-            if (e2 >= dy) {
-                err += dy;
-                x += sx;
-            }
-            if (e2 <= dx) {
-                err += dx;
-                y += sy;
-            }
-            if (x < 0 || y < 0 || x >= map.w || y >= map.h) return false;
-        }
+        // FOV con oclusión y periferia detectada en una sola pasada (sombras recursivas); si el jugador no se
+        // ha movido se reutiliza el anterior, rehaciendo sólo los cuadrantes donde haya cambiado el mapa
+        fov.update(map, px, py);
     }
 
     public int getLeft() {
@@ -347,15 +233,11 @@ public class MapView {
     }
 
     public boolean wasVisibleLastRender(int x, int y) {
-        if (y < 0 || y >= visible.length) return false;
-        if (x < 0 || x >= visible[0].length) return false;
-        return visible[y][x];
+        return seen.visible(x, y);
     }
 
     public boolean wasDetectedLastRender(int x, int y) {
-        if (y < 0 || y >= detected.length) return false;
-        if (x < 0 || x >= detected[0].length) return false;
-        return detected[y][x];
+        return seen.detected(x, y);
     }
 
     private static void applyColor(int sentinel) {
@@ -0,0 +1,109 @@
+package ui.menu;
+
+import utils.ANSI;
+import world.GameMap;
+import world.MapPyramid;
+
+// Minimapa (recuadro en la esquina del mapa) y vista general (todo el mapa en el hueco del MapView), ambos
+// leídos de la pirámide del mapa: nada de recorrer casilla a casilla. Cada carácter es un medio bloque '▀'
+// con la celda de arriba como color de texto y la de abajo como fondo, así que una fila de texto son dos
+// filas de la pirámide. Sólo se pinta lo explorado.
+public class MinimapView {
+    private static final int INSET_LEVEL = 2; // cada celda del minimapa = 4x4 casillas
+    private static final int INSET_MAX_W = 30, INSET_MAX_H = 10;
+    private static final int PLAYER_COLOR = 196;
+    private static final int[] PALETTE = {-1, 58, 22, 244, 24, 94}; // NONE, OPEN, FOREST, ROCK, WATER, BUILDING
+    private static final char[] PLAIN = {' ', '.', '#', '^', '~', 'H'}; // sin color
+
+    private final StringBuilder sb = new StringBuilder(256);
+
+    // recuadro arriba a la derecha del hueco del mapa (top/left/viewW/viewH del MapView)
+    public void renderInset(GameMap map, int px, int py, int top, int left, int viewW, int viewH) {
+        int w = Math.min(INSET_MAX_W, viewW / 3), h = Math.min(INSET_MAX_H, viewH / 3);
+        if (w < 8 || h < 3) return;
+        MapPyramid pyr = map.pyramid();
+        int k = Math.min(INSET_LEVEL, pyr.levels() - 1);
+        int rows = h - 1;
+        int x0 = (px >> k) - w / 2, y0 = (py >> k) - rows; // jugador en el centro
+        int l = left + viewW - w;
+        title(" MINIMAPA ", top, l, w);
+        draw(pyr, k, x0, y0, w, rows, top + 1, l, px >> k, py >> k);
+    }
+
+    // todo el mapa en el nivel más fino que quepa en el hueco, centrado
+    public void renderOverview(GameMap map, int px, int py, int top, int left, int viewW, int viewH) {
+        MapPyramid pyr = map.pyramid();
+        int rows = viewH - 1;
+        int k = pyr.levelToFit(viewW, 2 * rows);
+        int x0 = -(viewW - pyr.width(k)) / 2, y0 = -(2 * rows - pyr.height(k)) / 2;
+        title(" VISTA GENERAL 1:" + (1 << k) + " ", top, left, viewW);
+        draw(pyr, k, x0, y0, viewW, rows, top + 1, left, px >> k, py >> k);
+    }
+
+    private void title(String label, int row, int left, int w) {
+        ANSI.gotoRC(row, left);
+        ANSI.resetStyle();
+        if (label.length() >= w) {
+            System.out.print(label.substring(0, w));
+            return;
+        }
+        int leftDash = (w - label.length()) / 2;
+        System.out.print("─".repeat(leftDash) + label + "─".repeat(w - label.length() - leftDash));
+    }
+
+    // 'cols' x 'rows' caracteres desde la celda (x0, y0) del nivel k; (mx, my) es el jugador
+    private void draw(MapPyramid pyr, int k, int x0, int y0, int cols, int rows, int top, int left, int mx, int my) {
+        boolean color = ANSI.isEnabled();
+        for (int r = 0; r < rows; r++) {
+            sb.setLength(0);
+            int fg = -2, bg = -2;
+            int yt = y0 + 2 * r, yb = yt + 1;
+            for (int c = 0; c < cols; c++) {
+                int x = x0 + c;
+                int t = colorAt(pyr, k, x, yt, mx, my), b = colorAt(pyr, k, x, yb, mx, my);
+                if (!color) {
+                    sb.append(t == PLAYER_COLOR || b == PLAYER_COLOR ? '@' : PLAIN[Math.max(plainCls(pyr, k, x, yt), plainCls(pyr, k, x, yb))]);
+                    continue;
+                }
+                char ch;
+                int nf, nb;
+                if (t < 0 && b < 0) {
+                    ch = ' ';
+                    nf = fg;
+                    nb = -1;
+                } else if (t < 0) {
+                    ch = '▄';
+                    nf = b;
+                    nb = -1;
+                } else {
+                    ch = '▀';
+                    nf = t;
+                    nb = b;
+                }
+                if (nf != fg) {
+                    sb.append("\u001B[38;5;").append(nf).append('m');
+                    fg = nf;
+                }
+                if (nb != bg) {
+                    if (nb < 0) sb.append("\u001B[49m");
+                    else sb.append("\u001B[48;5;").append(nb).append('m');
+                    bg = nb;
+                }
+                sb.append(ch);
+            }
+            ANSI.gotoRC(top + r, left);
+            System.out.print(sb);
+            ANSI.resetStyle();
+        }
+    }
+
+    private static int colorAt(MapPyramid pyr, int k, int x, int y, int mx, int my) {
+        if (x == mx && y == my) return PLAYER_COLOR;
+        if (!pyr.explored(k, x, y)) return -1;
+        return PALETTE[pyr.cls(k, x, y)];
+    }
+
+    private static int plainCls(MapPyramid pyr, int k, int x, int y) {
+        return pyr.explored(k, x, y) ? pyr.cls(k, x, y) : MapPyramid.NONE;
+    }
+}
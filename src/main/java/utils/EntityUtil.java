@@ -36,6 +36,7 @@ public final class EntityUtil {
             case '~' -> "Agua";
             case '^' -> "Roca";
             case '+' -> "Puerta";
+            case ':' -> "Camino";
             case '╔', '╗', '╚', '╝', '═', '║' -> indoor ? "Pared interior" : "Pared";
             case '.' -> indoor ? "Suelo (interior)" : "Suelo";
             default -> "Terreno";
@@ -48,13 +49,14 @@ public final class EntityUtil {
             case '~' -> "No transitable. Posible fuente de agua.";
             case '#' -> "Obstáculo. Cubre visión y paso.";
             case '^' -> "Cobertura dura. No transitable.";
+            case ':' -> "Camino entre grupos de casas.";
             default -> "";
         };
     }
 
     public static boolean isInterestingTile(char t) {
         return switch (t) {
-            case '#', '^', '~', '╔', '╗', '╚', '╝', '═', '║', '+' -> true;
+            case '#', '^', '~', ':', '╔', '╗', '╚', '╝', '═', '║', '+' -> true;
             default -> false;
         };
     }
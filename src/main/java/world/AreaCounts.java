@@ -0,0 +1,126 @@
+package world;
+
+import world.MapGenerator.RectI;
+
+// Tablas de áreas sumadas (imagen integral) de una región para las pasadas de casas: cuántas casillas de agua,
+// de agua o roca, de pared/puerta y de pared/puerta/interior hay en cualquier rectángulo, en O(1).
+// Construirlas cuesta una vuelta a la región, y con la densidad normal de casas las comprobaciones casilla a
+// casilla salen más baratas; así que se cuentan las casillas recorridas (scanned) y las tablas se construyen
+// cuando ese trabajo ya ha igualado el área (pueblos densos, la búsqueda exhaustiva de addCabins). Desde ahí lo
+// que la pasada va construyendo se apunta (touch) en bloques de 8x8 "sucios"; una consulta que toque alguno
+// vuelve a ir casilla a casilla (sólo pasa junto a lo recién construido).
+final class AreaCounts {
+    static final int WATER = 0, BLOCKED = 1, STRUCT = 2, OCCUPIED = 3;
+    private static final int B_SHIFT = 3;
+    private static final int[] BITS = new int[16]; // tipo -> bit de cada tabla (sin el interior)
+
+    static {
+        for (int t = 0; t < 16; t++) {
+            if (t == Tiles.WATER) BITS[t] |= 1 << WATER;
+            if (t == Tiles.WATER || t == Tiles.ROCK) BITS[t] |= 1 << BLOCKED;
+            if (Tiles.isStructure(t)) BITS[t] |= 1 << STRUCT | 1 << OCCUPIED;
+        }
+    }
+
+    private final GameMap m;
+    private final RectI reg;
+    private final int tables;
+    private final int w, h;
+    private final int sw; // ancho de fila de las tablas: w + 1 (fila y columna 0 a cero)
+    private final int[][] sat = new int[4][];
+    private long scanned;
+    private boolean built;
+    private int bw;
+    private boolean[] dirty;
+    private boolean anyDirty;
+
+    // 'tables': máscara de bits (1 << WATER | ...) con las tablas que se van a consultar
+    AreaCounts(GameMap m, RectI reg, int tables) {
+        this.m = m;
+        this.reg = reg;
+        this.tables = tables;
+        w = Math.max(0, reg.w());
+        h = Math.max(0, reg.h());
+        sw = w + 1;
+    }
+
+    // hay tablas y nada escrito desde entonces en el rectángulo (que debe estar dentro): se puede usar count()
+    boolean ready(int x0, int y0, int x1, int y1) {
+        if (!built) return false;
+        if (!anyDirty) return true;
+        int bx0 = (x0 - reg.x0) >> B_SHIFT, bx1 = (x1 - reg.x0) >> B_SHIFT;
+        for (int by = (y0 - reg.y0) >> B_SHIFT; by <= (y1 - reg.y0) >> B_SHIFT; by++)
+            for (int bx = bx0; bx <= bx1; bx++) if (dirty[by * bw + bx]) return false;
+        return true;
+    }
+
+    // una consulta se ha resuelto casilla a casilla sobre 'cells' casillas
+    void scanned(int cells) {
+        scanned += cells;
+        if (!built && scanned >= (long) w * h) build();
+    }
+
+    private void build() {
+        GenScratch sc = GenScratch.get();
+        for (int k = 0; k < sat.length; k++) {
+            if ((tables & 1 << k) == 0) continue;
+            int[] s = sat[k] = sc.table(k, sw * (h + 1));
+            java.util.Arrays.fill(s, 0, sw, 0);
+        }
+        int[] bits = new int[w];
+        for (int y = 0; y < h; y++) {
+            int gy = reg.y0 + y;
+            // fila de bits por tramos de chunk: un byte[] por tramo en vez de buscar el chunk en cada casilla
+            for (int x = 0; x < w; ) {
+                int gx = reg.x0 + x;
+                byte[] c = m.chunkData((gy >> GameMap.CHUNK_SHIFT) * m.chunksW + (gx >> GameMap.CHUNK_SHIFT));
+                int base = ((gy & (GameMap.CHUNK - 1)) << GameMap.CHUNK_SHIFT) - x + (gx & (GameMap.CHUNK - 1));
+                int end = Math.min(w, x + GameMap.CHUNK - (gx & (GameMap.CHUNK - 1)));
+                for (; x < end; x++) {
+                    int v = c[base + x];
+                    bits[x] = BITS[v & 0x0F] | (v & 0x40) >> 6 << OCCUPIED;
+                }
+            }
+            // y una pasada por tabla: suma de la fila hasta x más la tabla de la fila de arriba
+            for (int k = 0; k < sat.length; k++) {
+                int[] s = sat[k];
+                if (s == null) continue;
+                int i = (y + 1) * sw, r = 0;
+                s[i] = 0;
+                for (int x = 0; x < w; x++) {
+                    r += bits[x] >> k & 1;
+                    s[i + 1 + x] = s[i - sw + 1 + x] + r;
+                }
+            }
+        }
+        bw = ((w - 1) >> B_SHIFT) + 1;
+        dirty = new boolean[bw * (((h - 1) >> B_SHIFT) + 1)];
+        built = true;
+    }
+
+    // el rectángulo (inclusivo) cae entero en la región
+    boolean inside(int x0, int y0, int x1, int y1) {
+        return reg.contains(x0, y0) && reg.contains(x1, y1);
+    }
+
+    // recuento de la tabla 'table' en el rectángulo (inclusivo, dentro de la región y con ready())
+    int count(int table, int x0, int y0, int x1, int y1) {
+        int[] s = sat[table];
+        int a = (y0 - reg.y0) * sw + (x0 - reg.x0), b = (y1 - reg.y0 + 1) * sw + (x0 - reg.x0);
+        int dx = x1 - x0 + 1;
+        return s[b + dx] - s[b] - s[a + dx] + s[a];
+    }
+
+    // la pasada va a escribir en el rectángulo (se recorta a la región); sin tablas no hace falta apuntarlo
+    void touch(int x0, int y0, int x1, int y1) {
+        if (!built) return;
+        x0 = Math.max(reg.x0, x0);
+        y0 = Math.max(reg.y0, y0);
+        x1 = Math.min(reg.x1, x1);
+        y1 = Math.min(reg.y1, y1);
+        if (x0 > x1 || y0 > y1) return;
+        for (int by = (y0 - reg.y0) >> B_SHIFT; by <= (y1 - reg.y0) >> B_SHIFT; by++)
+            for (int bx = (x0 - reg.x0) >> B_SHIFT; bx <= (x1 - reg.x0) >> B_SHIFT; bx++) dirty[by * bw + bx] = true;
+        anyDirty = true;
+    }
+}
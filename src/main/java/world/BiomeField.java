@@ -0,0 +1,75 @@
+package world;
+
+// Ruido fractal de valor (fBm) para los biomas, evaluado por lotes de filas en float[] planos.
+// Cada octava tiene un periodo entero (potencia de 2) anclado a coordenadas globales del mapa, así que el campo
+// de un chunk empalma con el del vecino y da igual cómo se trocee la región. Por fila se interpolan primero en
+// vertical los valores de la rejilla (uno por columna de rejilla) y luego cada tramo entre dos columnas es un
+// bucle contiguo con pesos precalculados: sin saltos ni búsquedas dentro del bucle interior, que el JIT puede
+// vectorizar. Los valores de la rejilla se hashean sólo al cambiar de fila de rejilla.
+final class BiomeField {
+    private static final int[] SHIFT = {7, 6, 5, 4}; // periodos 128, 64, 32, 16
+    private static final float[] AMP = new float[SHIFT.length];
+    private static final float[][] SMOOTH = new float[SHIFT.length][]; // peso smoothstep por posición en el periodo
+
+    static {
+        float sum = 0;
+        for (int o = 0; o < SHIFT.length; o++) sum += 1f / (1 << o);
+        for (int o = 0; o < SHIFT.length; o++) {
+            AMP[o] = (1f / (1 << o)) / sum;
+            int p = 1 << SHIFT[o];
+            SMOOTH[o] = new float[p];
+            for (int t = 0; t < p; t++) {
+                float u = (float) t / p;
+                SMOOTH[o][t] = u * u * (3 - 2 * u);
+            }
+        }
+    }
+
+    private BiomeField() {
+    }
+
+    // campo 0..1 de la semilla 'seed' para las filas y0..y0+h-1 y columnas x0..x0+w-1 -> out[(y - y0) * w + (x - x0)]
+    static void fill(long seed, int x0, int y0, int w, int h, float[] out) {
+        java.util.Arrays.fill(out, 0, w * h, 0f);
+        for (int o = 0; o < SHIFT.length; o++) {
+            int s = SHIFT[o], p = 1 << s, mask = p - 1;
+            float amp = AMP[o];
+            float[] sm = SMOOTH[o];
+            long os = ChunkGenerator.mix(seed + o);
+            int lx0 = x0 >> s, cols = ((x0 + w - 1) >> s) - lx0 + 2;
+            float[] top = new float[cols], bot = new float[cols], col = new float[cols];
+            int ly = Integer.MIN_VALUE;
+            for (int r = 0; r < h; r++) {
+                int y = y0 + r;
+                if ((y >> s) != ly) { // nueva fila de rejilla: hashea sus dos filas de valores
+                    ly = y >> s;
+                    for (int k = 0; k < cols; k++) {
+                        top[k] = lattice(os, lx0 + k, ly);
+                        bot[k] = lattice(os, lx0 + k, ly + 1);
+                    }
+                }
+                float sy = sm[y & mask];
+                for (int k = 0; k < cols; k++) col[k] = top[k] + (bot[k] - top[k]) * sy;
+                int base = r * w - x0;
+                for (int k = 0; k < cols - 1; k++) {
+                    int left = (lx0 + k) << s, off = base + left;
+                    int ta = Math.max(x0, left) - left, tb = Math.min(x0 + w, left + p) - left;
+                    float c0 = col[k] * amp, d = (col[k + 1] - col[k]) * amp;
+                    for (int t = ta; t < tb; t++) out[off + t] += c0 + d * sm[t];
+                }
+            }
+        }
+    }
+
+    // valor 0..1 (24 bits) de un punto de la rejilla
+    private static float lattice(long os, int kx, int ky) {
+        long z = ChunkGenerator.mix(os ^ (kx * 0x9E3779B97F4A7C15L) ^ (ky * 0xC2B2AE3D27D4EB4FL));
+        return (z >>> 40) * 0x1p-24f;
+    }
+
+    // azar 0..1 de una casilla (para tramar los bordes entre biomas sin depender del orden de la región)
+    static float cell(long seed, int x, int y) {
+        long z = ChunkGenerator.mix(seed ^ ((long) x << 32 | (y & 0xFFFFFFFFL)));
+        return (z >>> 40) * 0x1p-24f;
+    }
+}
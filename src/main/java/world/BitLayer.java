@@ -0,0 +1,288 @@
+package world;
+
+import java.util.Random;
+
+// Capa de bits del mapa (paso, visión, interior, explorado...): una fila son 'stride' palabras de 64 celdas,
+// el bit (x & 63) de la palabra x >> 6 es la celda x. Las operaciones en bloque trabajan palabra a palabra
+// (64 celdas por instrucción). Los bits más allá de 'w' en la última palabra de cada fila están siempre a 0.
+public final class BitLayer {
+    private int w, h, stride;
+    private long[] bits;
+
+    public BitLayer(int w, int h) {
+        reset(w, h);
+    }
+
+    // reutiliza el array si cabe (buffers de trabajo); deja la capa a 0
+    void reset(int w, int h) {
+        this.w = w;
+        this.h = h;
+        this.stride = (w + 63) >> 6;
+        int n = stride * h;
+        if (bits == null || bits.length < n) bits = new long[n];
+        else java.util.Arrays.fill(bits, 0, n, 0L);
+    }
+
+    public int width() {
+        return w;
+    }
+
+    public int height() {
+        return h;
+    }
+
+    // palabras por fila
+    public int stride() {
+        return stride;
+    }
+
+    // --- celdas ---
+    public boolean get(int x, int y) {
+        return (bits[y * stride + (x >> 6)] & (1L << x)) != 0;
+    }
+
+    public void set(int x, int y) {
+        bits[y * stride + (x >> 6)] |= 1L << x;
+    }
+
+    public void clear(int x, int y) {
+        bits[y * stride + (x >> 6)] &= ~(1L << x);
+    }
+
+    public void set(int x, int y, boolean v) {
+        if (v) set(x, y);
+        else clear(x, y);
+    }
+
+    // --- palabras de fila ---
+    public long word(int y, int wi) {
+        return bits[y * stride + wi];
+    }
+
+    public void setWord(int y, int wi, long v) {
+        bits[y * stride + wi] = v & lastMask(wi);
+    }
+
+    // --- en bloque (misma forma; devuelven this para encadenar) ---
+    public BitLayer clearAll() {
+        java.util.Arrays.fill(bits, 0, stride * h, 0L);
+        return this;
+    }
+
+    public BitLayer copyFrom(BitLayer o) {
+        same(o);
+        System.arraycopy(o.bits, 0, bits, 0, stride * h);
+        return this;
+    }
+
+    public BitLayer copy() {
+        return new BitLayer(w, h).copyFrom(this);
+    }
+
+    // esta capa = ventana de 'src' con esquina en (x0, y0) >= 0 y el tamaño de esta capa (lo que cae fuera de
+    // 'src' queda a 0); cada palabra junta dos de 'src' desplazadas
+    public BitLayer copyWindow(BitLayer src, int x0, int y0) {
+        int first = x0 >> 6, sh = x0 & 63;
+        for (int y = 0; y < h; y++) {
+            int b = y * stride, sy = y0 + y;
+            if (sy >= src.h) {
+                java.util.Arrays.fill(bits, b, b + stride, 0L);
+                continue;
+            }
+            int sb = sy * src.stride;
+            for (int i = 0; i < stride; i++) {
+                int si = first + i;
+                long lo = si < src.stride ? src.bits[sb + si] : 0L;
+                long hi = sh != 0 && si + 1 < src.stride ? src.bits[sb + si + 1] << (64 - sh) : 0L;
+                bits[b + i] = ((lo >>> sh) | hi) & lastMask(i);
+            }
+        }
+        return this;
+    }
+
+    public BitLayer and(BitLayer o) {
+        same(o);
+        for (int i = 0, n = stride * h; i < n; i++) bits[i] &= o.bits[i];
+        return this;
+    }
+
+    public BitLayer or(BitLayer o) {
+        same(o);
+        for (int i = 0, n = stride * h; i < n; i++) bits[i] |= o.bits[i];
+        return this;
+    }
+
+    public BitLayer andNot(BitLayer o) {
+        same(o);
+        for (int i = 0, n = stride * h; i < n; i++) bits[i] &= ~o.bits[i];
+        return this;
+    }
+
+    public BitLayer xor(BitLayer o) {
+        same(o);
+        for (int i = 0, n = stride * h; i < n; i++) bits[i] ^= o.bits[i];
+        return this;
+    }
+
+    // desplaza el contenido (dx, dy) celdas; lo que sale por un borde se pierde y entra a 0
+    public BitLayer shift(int dx, int dy) {
+        if (dy != 0) {
+            if (Math.abs(dy) >= h) return clearAll();
+            int rows = h - Math.abs(dy);
+            if (dy > 0) {
+                System.arraycopy(bits, 0, bits, dy * stride, rows * stride);
+                java.util.Arrays.fill(bits, 0, dy * stride, 0L);
+            } else {
+                System.arraycopy(bits, -dy * stride, bits, 0, rows * stride);
+                java.util.Arrays.fill(bits, rows * stride, h * stride, 0L);
+            }
+        }
+        if (dx != 0) {
+            if (Math.abs(dx) >= w) return clearAll();
+            for (int y = 0; y < h; y++) shiftRow(y * stride, dx);
+        }
+        return this;
+    }
+
+    private void shiftRow(int base, int dx) {
+        int ws = Math.abs(dx) >> 6, bs = Math.abs(dx) & 63;
+        if (dx > 0) { // hacia x creciente: hacia bits altos
+            for (int i = stride - 1; i >= 0; i--) {
+                int src = i - ws;
+                long lo = src >= 0 ? bits[base + src] : 0L;
+                long below = src - 1 >= 0 ? bits[base + src - 1] : 0L;
+                bits[base + i] = bs == 0 ? lo : (lo << bs) | (below >>> (64 - bs));
+            }
+        } else {
+            for (int i = 0; i < stride; i++) {
+                int src = i + ws;
+                long hi = src < stride ? bits[base + src] : 0L;
+                long above = src + 1 < stride ? bits[base + src + 1] : 0L;
+                bits[base + i] = bs == 0 ? hi : (hi >>> bs) | (above << (64 - bs));
+            }
+        }
+        bits[base + stride - 1] &= lastMask(stride - 1);
+    }
+
+    // --- recuentos y búsquedas (las celdas se devuelven como índice y * w + x) ---
+    public int count() {
+        int n = 0;
+        for (int i = 0, e = stride * h; i < e; i++) n += Long.bitCount(bits[i]);
+        return n;
+    }
+
+    public int countRow(int y) {
+        int n = 0;
+        for (int i = y * stride, e = i + stride; i < e; i++) n += Long.bitCount(bits[i]);
+        return n;
+    }
+
+    public boolean isEmpty() {
+        for (int i = 0, e = stride * h; i < e; i++) if (bits[i] != 0) return false;
+        return true;
+    }
+
+    // primera celda a 1 en orden de filas a partir de 'from' (incluida); -1 si no hay
+    public int nextSetBit(int from) {
+        if (from < 0) from = 0;
+        int y = from / w, x = from % w;
+        if (y >= h) return -1;
+        int i = y * stride + (x >> 6);
+        long word = bits[i] & (-1L << x);
+        int end = stride * h;
+        while (true) {
+            if (word != 0) {
+                int row = i / stride;
+                return row * w + ((i - row * stride) << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++i == end) return -1;
+            word = bits[i];
+        }
+    }
+
+    // k-ésima celda a 1 (desde 0) en orden de filas; -1 si hay menos
+    public int nthSetBit(int k) {
+        if (k < 0) return -1;
+        for (int i = 0, e = stride * h; i < e; i++) {
+            long word = bits[i];
+            int c = Long.bitCount(word);
+            if (k >= c) {
+                k -= c;
+                continue;
+            }
+            for (; k > 0; k--) word &= word - 1; // quita los k bits más bajos
+            int row = i / stride;
+            return row * w + ((i - row * stride) << 6) + Long.numberOfTrailingZeros(word);
+        }
+        return -1;
+    }
+
+    // celda a 1 al azar (uniforme); -1 si la capa está vacía
+    public int randomSetBit(Random rng) {
+        int n = count();
+        return n == 0 ? -1 : nthSetBit(rng.nextInt(n));
+    }
+
+    // Relleno 4-conexo: hace crecer esta capa dentro de 'mask' hasta cubrir todas las componentes de 'mask' que
+    // toca. Por filas y con la suma como acarreo: en una palabra, ((p + s) ^ p) & p extiende cada semilla s hasta
+    // el final de su tramo de 1s en p. Se barre arriba-abajo y abajo-arriba hasta que nada cambia.
+    public BitLayer floodWithin(BitLayer mask) {
+        same(mask);
+        and(mask);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int y = 0; y < h; y++) changed |= growRow(mask, y, y - 1);
+            for (int y = h - 1; y >= 0; y--) changed |= growRow(mask, y, y + 1);
+        }
+        return this;
+    }
+
+    // fila y: añade lo que entra desde la fila 'from' y lo extiende a lo largo de sus tramos; true si cambió
+    private boolean growRow(BitLayer mask, int y, int from) {
+        int b = y * stride;
+        boolean changed = false;
+        if (from >= 0 && from < h) {
+            int f = from * stride;
+            for (int i = 0; i < stride; i++) {
+                long v = bits[b + i] | (bits[f + i] & mask.bits[b + i]);
+                if (v != bits[b + i]) {
+                    bits[b + i] = v;
+                    changed = true;
+                }
+            }
+        }
+        // hacia x creciente (acarreo a la palabra siguiente) y luego hacia x decreciente (con bits invertidos)
+        long carry = 0;
+        for (int i = 0; i < stride; i++) {
+            long p = mask.bits[b + i], s = bits[b + i] | (carry & p);
+            long v = (((p + s) ^ p) & p) | s;
+            carry = (v < 0 && (p & 1L << 63) != 0) ? 1L : 0L;
+            if (v != bits[b + i]) {
+                bits[b + i] = v;
+                changed = true;
+            }
+        }
+        carry = 0;
+        for (int i = stride - 1; i >= 0; i--) {
+            long p = Long.reverse(mask.bits[b + i]), s = Long.reverse(bits[b + i]) | (carry & p);
+            long v = (((p + s) ^ p) & p) | s;
+            carry = (v < 0 && (p & 1L << 63) != 0) ? 1L : 0L;
+            v = Long.reverse(v);
+            if (v != bits[b + i]) {
+                bits[b + i] = v;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private long lastMask(int wi) {
+        int rem = w & 63;
+        return wi == stride - 1 && rem != 0 ? (1L << rem) - 1 : -1L;
+    }
+
+    private void same(BitLayer o) {
+        if (o.w != w || o.h != h) throw new IllegalArgumentException("Capas de distinto tamaño: " + w + "x" + h + " / " + o.w + "x" + o.h);
+    }
+}
@@ -0,0 +1,122 @@
+package world;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// Plantilla de edificio precompilada: bytes de celda (tipo + flags + interior) fila a fila, que se estampan
+// con GameMap.stamp en vez de casilla a casilla. Las de cada tamaño se compilan una vez y se guardan.
+// rotated()/mirrored() dan la plantilla girada o reflejada, rehaciendo los glifos de pared por sus brazos
+// (una esquina ╔ girada es ╗, una pared ═ girada es ║...).
+final class Blueprint {
+    private static final int N = 1, E = 2, S = 4, W = 8; // brazos de una pared
+    private static final int[] ARMS = new int[Tiles.COUNT];
+    private static final int[] BY_ARMS = new int[16];
+    private static final ConcurrentHashMap<Integer, Blueprint> SHELLS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Integer, Blueprint> CABINS = new ConcurrentHashMap<>();
+
+    static {
+        ARMS[Tiles.WALL_NW] = E | S;
+        ARMS[Tiles.WALL_NE] = W | S;
+        ARMS[Tiles.WALL_SW] = N | E;
+        ARMS[Tiles.WALL_SE] = N | W;
+        ARMS[Tiles.WALL_H] = E | W;
+        ARMS[Tiles.WALL_V] = N | S;
+        for (int t = 0; t < Tiles.COUNT; t++) if (ARMS[t] != 0) BY_ARMS[ARMS[t]] = t;
+    }
+
+    final int w, h;
+    private final int[] type;
+    private final boolean[] indoor;
+    private byte[] cells; // compilada (GameMap.cell) antes de guardarla en la caché
+
+    private Blueprint(int w, int h) {
+        this.w = w;
+        this.h = h;
+        this.type = new int[w * h];
+        this.indoor = new boolean[w * h];
+    }
+
+    // módulo rectangular: paredes alrededor y suelo interior
+    static Blueprint shell(int w, int h) {
+        return SHELLS.computeIfAbsent(w << 16 | h, k -> {
+            Blueprint b = new Blueprint(w, h);
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    boolean left = x == 0, right = x == w - 1, top = y == 0, bottom = y == h - 1;
+                    int t;
+                    if (top) t = left ? Tiles.WALL_NW : right ? Tiles.WALL_NE : Tiles.WALL_H;
+                    else if (bottom) t = left ? Tiles.WALL_SW : right ? Tiles.WALL_SE : Tiles.WALL_H;
+                    else t = left || right ? Tiles.WALL_V : Tiles.FLOOR;
+                    b.set(x, y, t, t == Tiles.FLOOR);
+                }
+            }
+            return b.compile();
+        });
+    }
+
+    // cabaña suelta: puerta en el centro del lado largo de abajo o, si es más alta que ancha, de la derecha
+    static Blueprint cabin(int w, int h) {
+        Blueprint b = CABINS.get(w << 16 | h);
+        if (b != null) return b;
+        if (w < h) {
+            b = cabin(h, w).rotated().mirrored(); // traspuesta: la puerta de abajo pasa a la derecha
+        } else {
+            b = shell(w, h).copy();
+            b.set((w - 1) / 2, h - 1, Tiles.DOOR, false);
+        }
+        CABINS.putIfAbsent(w << 16 | h, b.compile());
+        return b;
+    }
+
+    // 90º en sentido horario
+    Blueprint rotated() {
+        Blueprint b = new Blueprint(h, w);
+        for (int y = 0; y < h; y++)
+            for (int x = 0; x < w; x++) b.set(h - 1 - y, x, turn(type[y * w + x]), indoor[y * w + x]);
+        return b;
+    }
+
+    // espejo izquierda-derecha
+    Blueprint mirrored() {
+        Blueprint b = new Blueprint(w, h);
+        for (int y = 0; y < h; y++)
+            for (int x = 0; x < w; x++) b.set(w - 1 - x, y, flip(type[y * w + x]), indoor[y * w + x]);
+        return b;
+    }
+
+    // esquina (x0, y0); la plantilla tiene que caber en el mapa
+    void stamp(GameMap m, int x0, int y0) {
+        if (cells == null) compile();
+        m.stamp(x0, y0, w, h, cells);
+    }
+
+    private Blueprint compile() {
+        byte[] c = new byte[w * h];
+        for (int i = 0; i < c.length; i++) c[i] = GameMap.cell(type[i], indoor[i]);
+        cells = c;
+        return this;
+    }
+
+    private Blueprint copy() {
+        Blueprint b = new Blueprint(w, h);
+        System.arraycopy(type, 0, b.type, 0, type.length);
+        System.arraycopy(indoor, 0, b.indoor, 0, indoor.length);
+        return b;
+    }
+
+    private void set(int x, int y, int t, boolean in) {
+        type[y * w + x] = t;
+        indoor[y * w + x] = in;
+    }
+
+    private static int turn(int t) {
+        int a = ARMS[t];
+        if (a == 0) return t;
+        return BY_ARMS[((a << 1) | (a >> 3)) & 15]; // N->E->S->W->N
+    }
+
+    private static int flip(int t) {
+        int a = ARMS[t];
+        if (a == 0) return t;
+        return BY_ARMS[(a & (N | S)) | ((a & E) != 0 ? W : 0) | ((a & W) != 0 ? E : 0)];
+    }
+}
@@ -0,0 +1,54 @@
+package world;
+
+import java.util.List;
+
+import world.MapGenerator.RectI;
+import world.MapGenerator.River;
+
+// Generador por chunks: cada chunk sale de su propia semilla (derivada de la del mundo y de cx, cy),
+// así que el mundo es el mismo lo cargues en el orden que lo cargues. Lo único global es el río,
+// que se evalúa de forma analítica celda a celda.
+// Al no compartir estado entre chunks también sirve para generar un mapa completo en paralelo; en ese caso
+// finish() corre después las pasadas de cierre (caminos) con los grupos de casas de todos los chunks.
+final class ChunkGenerator implements ChunkSource {
+    private final GenParams params;
+    private final River river;
+    private final GenPipeline pipeline = GenPipeline.standard();
+
+    ChunkGenerator(GenParams params) {
+        this.params = params;
+        this.river = River.forSeed(params.seed, params.w, params.h);
+    }
+
+    @Override
+    public void generate(GameMap m, int cx, int cy) {
+        region(m, cx, cy);
+    }
+
+    // genera el chunk y devuelve sus grupos de casas
+    List<RectI> region(GameMap m, int cx, int cy) {
+        int x0 = cx << GameMap.CHUNK_SHIFT, y0 = cy << GameMap.CHUNK_SHIFT;
+        RectI reg = new RectI(x0, y0, Math.min(m.w, x0 + GameMap.CHUNK) - 1, Math.min(m.h, y0 + GameMap.CHUNK) - 1);
+        GenPipeline.Context c = new GenPipeline.Context(m, reg, params, river, chunkSeed(params.seed, cx, cy), false);
+        pipeline.run(c);
+        return c.clusters;
+    }
+
+    // pasadas de cierre sobre el mapa ya generado; 'clusters' en un orden fijo (el de los chunks)
+    void finish(GameMap m, List<RectI> clusters) {
+        GenPipeline.Context c = new GenPipeline.Context(m, new RectI(0, 0, m.w - 1, m.h - 1), params, river, params.seed, true);
+        c.clusters.addAll(clusters);
+        pipeline.finish(c);
+    }
+
+    static long chunkSeed(long seed, int cx, int cy) {
+        return mix(seed ^ mix(((long) cx << 32) ^ (cy & 0xffffffffL)));
+    }
+
+    // finalizador de SplitMix64: semillas vecinas -> flujos independientes
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
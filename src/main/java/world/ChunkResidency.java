@@ -0,0 +1,304 @@
+package world;
+
+import items.Item;
+import items.Items;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Residencia de chunks: como mucho 'maxResident' chunks en memoria. Los menos usados (LRU) se expulsan a un
+// fichero de intercambio con sus celdas (tipo + flags, explorado incluido), los tejados vistos y el loot que
+// hay encima; lo que los índices derivan del chunk (componentes, salas) se suelta y se rehace cuando vuelve.
+// Al volver la cámara se releen en segundo plano un anillo antes de que lleguen a verse. Si algo pide un chunk expulsado
+// antes de que llegue su página, se lee en el momento (GameMap.loadChunk -> pageIn).
+// El fichero tiene un hueco fijo por chunk: [celdas CHUNK*CHUNK][tejados CHUNK palabras][nº de loot][x, y, durabilidad, revelado, id]...
+// El hueco se prepara bajo el cerrojo del mapa y se escribe ya fuera; hasta que acaba, las lecturas usan esa copia.
+// Todo lo que toca el mapa o la lista de entidades pasa en el hilo del juego (update); el hilo de fondo sólo lee.
+public final class ChunkResidency implements Closeable {
+    private static final int CELLS = GameMap.CHUNK * GameMap.CHUNK;
+    private static final int SLOT = 2 * CELLS; // celdas + tejados + bloque de loot
+    private static final int LOOT = CELLS + GameMap.CHUNK * Long.BYTES; // donde empieza el bloque de loot
+
+    private final GameMap map;
+    private final int maxResident;
+    private final List<Entity> entities;
+    private final Path file;
+    private final FileChannel ch;
+    private final ExecutorService pager = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "chunk-pager");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    private final LinkedHashMap<Integer, Boolean> lru = new LinkedHashMap<>(64, 0.75f, true); // chunks residentes
+    private final boolean[] spilled;  // en disco y no en memoria
+    private final int[] epoch;        // sube en cada expulsión: descarta páginas leídas de una versión vieja
+    private final boolean[] inFlight; // lectura asíncrona pedida
+    private final Map<Integer, Page> ready = new ConcurrentHashMap<>();
+    private final Map<Integer, byte[]> unwritten = new ConcurrentHashMap<>(); // huecos aún no escritos (o que no se pudieron)
+    private final Map<Integer, List<Entity>> pendingLoot = new LinkedHashMap<>(); // se devuelve en update()
+    private int evictions, pageIns;
+
+    private static final class Page {
+        final int epoch;
+        final byte[] cells;
+        final long[] roofs; // null si no había ninguno visto
+        final List<Entity> loot;
+
+        Page(int epoch, byte[] cells, long[] roofs, List<Entity> loot) {
+            this.epoch = epoch;
+            this.cells = cells;
+            this.roofs = roofs;
+            this.loot = loot;
+        }
+    }
+
+    public ChunkResidency(GameMap map, int maxResident, Path file, List<Entity> entities) throws IOException {
+        this.map = map;
+        this.maxResident = Math.max(1, maxResident);
+        this.entities = entities;
+        this.file = file;
+        this.ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        int n = map.chunksW * map.chunksH;
+        this.spilled = new boolean[n];
+        this.epoch = new int[n];
+        this.inFlight = new boolean[n];
+        synchronized (map) {
+            for (int ci = 0; ci < n; ci++) if (map.isLoaded(ci % map.chunksW << GameMap.CHUNK_SHIFT, ci / map.chunksW << GameMap.CHUNK_SHIFT)) lru.put(ci, Boolean.TRUE);
+            map.attach(this);
+        }
+    }
+
+    // Residencia con fichero temporal; null si el mapa ya cabe entero o no se puede crear el fichero
+    public static ChunkResidency forMap(GameMap map, int maxResident, List<Entity> entities) {
+        if (maxResident <= 0 || map.chunksW * map.chunksH <= maxResident) return null;
+        try {
+            Path f = Files.createTempFile("deadscript-chunks", ".spill");
+            f.toFile().deleteOnExit();
+            return new ChunkResidency(map, maxResident, f, entities);
+        } catch (IOException e) {
+            System.err.println("Sin fichero de intercambio de chunks: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public synchronized int resident() {
+        return lru.size();
+    }
+
+    public int evictions() {
+        return evictions;
+    }
+
+    public int pageIns() {
+        return pageIns;
+    }
+
+    // Una vez por vuelta del bucle (hilo del juego) con la posición de la cámara y su radio de vista en chunks:
+    // instala las páginas que han llegado, devuelve su loot, marca como usados los chunks a la vista, pide los del
+    // anillo siguiente y expulsa los más viejos hasta quedar en maxResident.
+    public void update(int camX, int camY, int viewChunks) {
+        for (Iterator<Map.Entry<Integer, Page>> it = ready.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, Page> e = it.next();
+            it.remove();
+            int ci = e.getKey();
+            Page p = e.getValue();
+            synchronized (this) {
+                inFlight[ci] = false;
+                if (!spilled[ci] || p.epoch != epoch[ci]) continue; // ya se leyó en síncrono, o es vieja
+                spilled[ci] = false;
+                pendingLoot.put(ci, p.loot);
+            }
+            map.install(ci, p.cells, p.roofs);
+            pageIns++;
+        }
+        List<List<Entity>> loot;
+        synchronized (this) {
+            loot = new ArrayList<>(pendingLoot.values());
+            pendingLoot.clear();
+        }
+        for (List<Entity> l : loot) entities.addAll(l);
+
+        int ccx = camX >> GameMap.CHUNK_SHIFT, ccy = camY >> GameMap.CHUNK_SHIFT;
+        int r = viewChunks + 1; // un anillo de margen: se pide antes de verse
+        synchronized (this) {
+            for (int cy = Math.max(0, ccy - r); cy <= Math.min(map.chunksH - 1, ccy + r); cy++) {
+                for (int cx = Math.max(0, ccx - r); cx <= Math.min(map.chunksW - 1, ccx + r); cx++) {
+                    int ci = cy * map.chunksW + cx;
+                    if (lru.get(ci) != null) continue; // get() lo marca como recién usado
+                    if (spilled[ci] && !inFlight[ci]) request(ci);
+                }
+            }
+        }
+
+        while (true) {
+            int victim;
+            synchronized (this) {
+                if (lru.size() <= maxResident) return;
+                victim = lru.keySet().iterator().next();
+                int vx = victim % map.chunksW, vy = victim / map.chunksW;
+                if (Math.abs(vx - ccx) <= r && Math.abs(vy - ccy) <= r) return; // lo más viejo aún está a la vista
+            }
+            evict(victim);
+        }
+    }
+
+    // GameMap.loadChunk (bajo el cerrojo del mapa): rellena 'dst' si el chunk está en disco
+    synchronized boolean pageIn(int ci, byte[] dst) {
+        if (!spilled[ci]) return false;
+        Page p = ready.remove(ci);
+        if (p != null) inFlight[ci] = false; // la página pedida se usa (o se tira) aquí: update() ya no la verá
+        if (p == null || p.epoch != epoch[ci]) {
+            try {
+                p = read(ci, epoch[ci]);
+            } catch (IOException e) {
+                return false; // sin página: se vuelve a generar (se pierde lo explorado de ese chunk)
+            }
+        }
+        System.arraycopy(p.cells, 0, dst, 0, CELLS);
+        map.restoreRoofs(ci, p.roofs);
+        spilled[ci] = false;
+        pendingLoot.put(ci, p.loot); // la lista de entidades sólo se toca en update()
+        pageIns++;
+        return true;
+    }
+
+    synchronized void loaded(int ci) {
+        lru.put(ci, Boolean.TRUE);
+    }
+
+    @Override
+    public void close() {
+        pager.shutdownNow();
+        map.attach(null);
+        try {
+            ch.close();
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+        }
+    }
+
+    // --- expulsión y lectura ---
+    private void evict(int ci) {
+        int x0 = (ci % map.chunksW) << GameMap.CHUNK_SHIFT, y0 = (ci / map.chunksW) << GameMap.CHUNK_SHIFT;
+
+        // loot encima del chunk, más el que aún no se había devuelto (el que no quepa en el hueco se queda en memoria)
+        List<Entity> candidates = new ArrayList<>();
+        synchronized (this) {
+            List<Entity> pend = pendingLoot.remove(ci);
+            if (pend != null) candidates.addAll(pend);
+        }
+        for (Entity e : entities) {
+            if (e.type == Entity.Type.LOOT && e.item != null && (e.x >> GameMap.CHUNK_SHIFT) == (x0 >> GameMap.CHUNK_SHIFT)
+                    && (e.y >> GameMap.CHUNK_SHIFT) == (y0 >> GameMap.CHUNK_SHIFT)) candidates.add(e);
+        }
+
+        byte[] data = new byte[SLOT];
+        ByteBuffer slot = ByteBuffer.wrap(data);
+        List<Entity> out = new ArrayList<>();
+        synchronized (map) { // se copia y sale de memoria de una vez: nadie lo carga ni lo cambia entre medias
+            slot.put(map.chunkData(ci));
+            long[] roofs = map.roofData(ci);
+            for (int r = 0; r < GameMap.CHUNK; r++) slot.putLong(roofs == null ? 0L : roofs[r]);
+            slot.putInt(0);
+            for (Entity e : candidates) {
+                byte[] id = e.item.getId().getBytes(StandardCharsets.UTF_8);
+                if (slot.remaining() < 11 + id.length) break;
+                slot.putShort((short) (e.x - x0)).putShort((short) (e.y - y0)).putInt(e.item.getDurabilidad());
+                slot.put((byte) (e.revealed ? 1 : 0)).putShort((short) id.length).put(id);
+                out.add(e);
+            }
+            slot.putInt(LOOT, out.size());
+            synchronized (this) {
+                lru.remove(ci);
+                epoch[ci]++;
+                spilled[ci] = true;
+                unwritten.put(ci, data);
+            }
+            map.unload(ci);
+        }
+        map.evicted(ci);
+        entities.removeAll(out);
+        for (Entity l : candidates) if (!out.contains(l) && !entities.contains(l)) entities.add(l); // no cupo
+        evictions++;
+
+        // sin el cerrojo del mapa: el disco no frena a quien lo consulta. Si falla, el hueco se queda en memoria
+        try {
+            ByteBuffer b = ByteBuffer.wrap(data);
+            long pos = (long) ci * SLOT;
+            while (b.hasRemaining()) pos += ch.write(b, pos);
+            unwritten.remove(ci, data);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void request(int ci) {
+        inFlight[ci] = true;
+        int ep = epoch[ci];
+        pager.execute(() -> {
+            try {
+                ready.put(ci, read(ci, ep));
+            } catch (IOException e) {
+                synchronized (this) {
+                    inFlight[ci] = false; // se leerá en síncrono al pedirlo
+                }
+            }
+        });
+    }
+
+    private Page read(int ci, int ep) throws IOException {
+        byte[] mem = unwritten.get(ci);
+        ByteBuffer slot = mem != null ? ByteBuffer.wrap(mem) : ByteBuffer.allocate(SLOT);
+        if (mem == null) {
+            long pos = (long) ci * SLOT;
+            while (slot.hasRemaining()) {
+                int n = ch.read(slot, pos);
+                if (n < 0) throw new IOException("Fichero de intercambio truncado");
+                pos += n;
+            }
+            slot.flip();
+        }
+        byte[] cells = new byte[CELLS];
+        slot.get(cells);
+        long[] roofs = null;
+        for (int r = 0; r < GameMap.CHUNK; r++) {
+            long v = slot.getLong();
+            if (v == 0) continue;
+            if (roofs == null) roofs = new long[GameMap.CHUNK];
+            roofs[r] = v;
+        }
+        int x0 = (ci % map.chunksW) << GameMap.CHUNK_SHIFT, y0 = (ci / map.chunksW) << GameMap.CHUNK_SHIFT;
+        int n = slot.getInt();
+        List<Entity> loot = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int x = x0 + slot.getShort(), y = y0 + slot.getShort(), dur = slot.getInt();
+            boolean revealed = slot.get() != 0;
+            byte[] id = new byte[slot.getShort()];
+            slot.get(id);
+            try {
+                Item it = Items.create(new String(id, StandardCharsets.UTF_8));
+                it.setDurabilidad(dur);
+                Entity l = Entity.loot(x, y, it);
+                l.revealed = revealed;
+                loot.add(l);
+            } catch (Exception ignored) {
+            }
+        }
+        return new Page(ep, cells, roofs, loot);
+    }
+}
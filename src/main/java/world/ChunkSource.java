@@ -0,0 +1,7 @@
+package world;
+
+// Rellena un chunk (cx, cy) de un mapa perezoso la primera vez que se consulta.
+// Debe escribir sólo dentro de ese chunk y ser determinista: el resultado no puede depender del orden de carga.
+public interface ChunkSource {
+    void generate(GameMap map, int cx, int cy);
+}
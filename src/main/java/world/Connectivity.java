@@ -0,0 +1,268 @@
+package world;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Componentes 4-conexas de lo transitable, para no colocar loot ni zombis donde el jugador no llega. Cada
+// chunk se etiqueta por su cuenta (BFS) y un union-find une las etiquetas a través de los bordes. Los ids son
+// estables mientras el mapa no cambie; para comparar, pedirlos en el mismo momento.
+public final class Connectivity implements MapListener {
+    public static final int NONE = -1;
+    private static final int WALK = 0x10; // flag de paso en el byte de celda (GameMap.F_WALK)
+    private static final int CELLS = GameMap.CHUNK * GameMap.CHUNK;
+
+    private final GameMap map;
+    // por chunk: etiqueta local + 1 por celda (0 = no transitable); null sin etiquetar o fuera de memoria
+    private final short[][] label;
+    // por chunk: etiquetas de la fila de arriba, la de abajo, la columna izquierda y la derecha (null: nunca
+    // etiquetado). Las uniones sólo miran bordes, así que un chunk expulsado se queda con ellos y sus nodos
+    private final short[][] edge;
+    private final int[] count;     // por chunk: nº de etiquetas locales
+    private final int[] base;      // por chunk: primer nodo del union-find
+    private int[] parent = new int[256];
+    private int nodes, dead; // nodos repartidos / de etiquetas ya sustituidas (se recogen al rehacer)
+    private short[] spare = new short[CELLS]; // rejilla de trabajo al re-etiquetar
+    private final ConcurrentLinkedQueue<Integer> loaded = new ConcurrentLinkedQueue<>(); // por etiquetar
+    private final ConcurrentLinkedQueue<Integer> dirty = new ConcurrentLinkedQueue<>();  // por re-etiquetar
+    private final int[] queue = new int[CELLS];
+
+    Connectivity(GameMap map) {
+        this.map = map;
+        int n = map.chunksW * map.chunksH;
+        label = new short[n][];
+        edge = new short[n][];
+        count = new int[n];
+        base = new int[n];
+        for (int ci = 0; ci < n; ci++)
+            if (map.isLoaded((ci % map.chunksW) << GameMap.CHUNK_SHIFT, (ci / map.chunksW) << GameMap.CHUNK_SHIFT)) loaded.add(ci);
+    }
+
+    // --- consultas ---
+    // componente de (x, y); NONE si no es transitable o su chunk no se ha cargado nunca
+    public synchronized int component(int x, int y) {
+        if (!map.inBounds(x, y)) return NONE;
+        catchUp();
+        int ci = (y >> GameMap.CHUNK_SHIFT) * map.chunksW + (x >> GameMap.CHUNK_SHIFT);
+        short[] l = label[ci];
+        if (l == null) return NONE;
+        int v = l[((y & (GameMap.CHUNK - 1)) << GameMap.CHUNK_SHIFT) | (x & (GameMap.CHUNK - 1))];
+        return v == 0 ? NONE : find(base[ci] + v - 1);
+    }
+
+    public boolean connected(int x0, int y0, int x1, int y1) {
+        int a = component(x0, y0);
+        return a != NONE && a == component(x1, y1);
+    }
+
+    // casillas de la componente de (x, y) dentro de la caja [x0, x1] x [y0, y1] (inclusiva), en una capa del
+    // tamaño de la caja: la casilla (cx, cy) es el bit (cx - x0, cy - y0). Sólo se miran los chunks que toca
+    // la caja; lo que cae fuera del mapa o en chunks sin cargar queda a 0, y todo a 0 si no hay componente
+    public synchronized BitLayer reachable(int x, int y, int x0, int y0, int x1, int y1) {
+        BitLayer out = new BitLayer(Math.max(0, x1 - x0 + 1), Math.max(0, y1 - y0 + 1));
+        int c = component(x, y);
+        int bx0 = Math.max(0, x0), by0 = Math.max(0, y0), bx1 = Math.min(map.w - 1, x1), by1 = Math.min(map.h - 1, y1);
+        if (c == NONE || bx0 > bx1 || by0 > by1) return out;
+        for (int cy = by0 >> GameMap.CHUNK_SHIFT; cy <= by1 >> GameMap.CHUNK_SHIFT; cy++) {
+            for (int cx = bx0 >> GameMap.CHUNK_SHIFT; cx <= bx1 >> GameMap.CHUNK_SHIFT; cx++) {
+                int ci = cy * map.chunksW + cx;
+                short[] l = label[ci];
+                if (l == null) continue;
+                boolean any = false;
+                for (int k = 0; k < count[ci] && !any; k++) any = find(base[ci] + k) == c;
+                if (!any) continue;
+                int gx0 = cx << GameMap.CHUNK_SHIFT, gy0 = cy << GameMap.CHUNK_SHIFT;
+                for (int gy = Math.max(gy0, by0); gy <= Math.min(gy0 + GameMap.CHUNK - 1, by1); gy++) {
+                    for (int gx = Math.max(gx0, bx0); gx <= Math.min(gx0 + GameMap.CHUNK - 1, bx1); gx++) {
+                        int v = l[((gy - gy0) << GameMap.CHUNK_SHIFT) | (gx - gx0)];
+                        if (v != 0 && find(base[ci] + v - 1) == c) out.set(gx - x0, gy - y0);
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    // --- mantenimiento ---
+    @Override
+    public void mapChanged(GameMap m, int x0, int y0, int x1, int y1, long version) {
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(map.w - 1, x1);
+        y1 = Math.min(map.h - 1, y1);
+        for (int cy = y0 >> GameMap.CHUNK_SHIFT; cy <= y1 >> GameMap.CHUNK_SHIFT; cy++)
+            for (int cx = x0 >> GameMap.CHUNK_SHIFT; cx <= x1 >> GameMap.CHUNK_SHIFT; cx++) dirty.add(cy * map.chunksW + cx);
+    }
+
+    // GameMap.loadChunk / install (bajo el cerrojo del mapa): sólo se apunta; se etiqueta al consultar
+    void chunkLoaded(int ci) {
+        loaded.add(ci);
+    }
+
+    // GameMap.evicted (sin el cerrojo del mapa): suelta la rejilla; bordes y nodos se quedan
+    synchronized void chunkEvicted(int ci) {
+        int x0 = (ci % map.chunksW) << GameMap.CHUNK_SHIFT, y0 = (ci / map.chunksW) << GameMap.CHUNK_SHIFT;
+        if (map.isLoaded(x0, y0)) return; // ya ha vuelto
+        label[ci] = null;
+    }
+
+    private void catchUp() {
+        boolean rebuild = false;
+        for (Integer ci; (ci = dirty.poll()) != null; ) {
+            if (edge[ci] == null) continue; // nunca etiquetado: ya lo hará la carga
+            rebuild |= relabel(ci, rebuild);
+        }
+        for (Integer ci; (ci = loaded.poll()) != null; ) {
+            if (label[ci] != null) continue; // ya etiquetado (o re-etiquetado arriba)
+            boolean known = edge[ci] != null;
+            short[] l = new short[CELLS];
+            int n = labelChunk(ci, l);
+            label[ci] = l;
+            if (known) continue; // vuelve de disco: mismas etiquetas; bordes y nodos siguen valiendo
+            count[ci] = n;
+            setEdges(ci, l);
+            if (rebuild) continue;
+            base[ci] = alloc(n);
+            joinBorders(ci);
+        }
+        if (rebuild || (dead > nodes / 2 && nodes > CELLS)) rebuild();
+    }
+
+    // re-etiqueta un chunk que ha cambiado; true si hay que rehacer el union-find (alguna casilla perdió el
+    // paso: algo puede haberse partido y el union-find no sabe separar). Con 'rebuilding' sólo las etiquetas
+    private boolean relabel(int ci, boolean rebuilding) {
+        short[] old = label[ci], l = spare;
+        int n = labelChunk(ci, l);
+        // sin las etiquetas de antes (se expulsó entre el cambio y ahora) no se puede comparar: se rehace
+        boolean removed = old == null, added = false;
+        for (int i = 0; i < CELLS && !removed; i++) {
+            if (old[i] != 0 && l[i] == 0) removed = true;
+            else if (old[i] == 0 && l[i] != 0) added = true;
+        }
+        if (!removed && !added) return false; // mismas casillas transitables -> mismas etiquetas
+        spare = old != null ? old : new short[CELLS];
+        label[ci] = l;
+        int oldCount = count[ci], oldBase = base[ci];
+        count[ci] = n;
+        setEdges(ci, l);
+        if (removed || rebuilding) return removed;
+
+        // sólo se ha ganado paso: cada etiqueta vieja cae entera dentro de una nueva
+        base[ci] = alloc(n);
+        for (int i = 0; i < CELLS; i++) if (old[i] != 0) union(base[ci] + l[i] - 1, oldBase + old[i] - 1);
+        dead += oldCount;
+        joinBorders(ci);
+        return false;
+    }
+
+    // etiquetas locales del chunk 'ci' por BFS en 'l' (lo carga si hace falta); devuelve cuántas hay
+    private int labelChunk(int ci, short[] l) {
+        byte[] c = map.chunkData(ci);
+        Arrays.fill(l, (short) 0);
+        int cx0 = (ci % map.chunksW) << GameMap.CHUNK_SHIFT, cy0 = (ci / map.chunksW) << GameMap.CHUNK_SHIFT;
+        int cw = Math.min(GameMap.CHUNK, map.w - cx0), ch = Math.min(GameMap.CHUNK, map.h - cy0);
+        int n = 0;
+        for (int y = 0; y < ch; y++) {
+            for (int x = 0; x < cw; x++) {
+                int s = (y << GameMap.CHUNK_SHIFT) | x;
+                if (l[s] != 0 || (c[s] & WALK) == 0) continue;
+                short id = (short) ++n;
+                l[s] = id;
+                int head = 0, tail = 0;
+                queue[tail++] = s;
+                while (head < tail) {
+                    int i = queue[head++];
+                    int ix = i & (GameMap.CHUNK - 1), iy = i >> GameMap.CHUNK_SHIFT;
+                    if (ix > 0) tail = visit(c, l, i - 1, id, tail);
+                    if (ix < cw - 1) tail = visit(c, l, i + 1, id, tail);
+                    if (iy > 0) tail = visit(c, l, i - GameMap.CHUNK, id, tail);
+                    if (iy < ch - 1) tail = visit(c, l, i + GameMap.CHUNK, id, tail);
+                }
+            }
+        }
+        return n;
+    }
+
+    // bordes del chunk 'ci' sacados de sus etiquetas 'l'
+    private void setEdges(int ci, short[] l) {
+        short[] e = edge[ci];
+        if (e == null) edge[ci] = e = new short[4 * GameMap.CHUNK];
+        int last = GameMap.CHUNK - 1;
+        for (int k = 0; k < GameMap.CHUNK; k++) {
+            e[k] = l[k];
+            e[GameMap.CHUNK + k] = l[(last << GameMap.CHUNK_SHIFT) | k];
+            e[2 * GameMap.CHUNK + k] = l[k << GameMap.CHUNK_SHIFT];
+            e[3 * GameMap.CHUNK + k] = l[(k << GameMap.CHUNK_SHIFT) | last];
+        }
+    }
+
+    private int visit(byte[] c, short[] l, int i, short id, int tail) {
+        if (l[i] != 0 || (c[i] & WALK) == 0) return tail;
+        l[i] = id;
+        queue[tail++] = i;
+        return tail;
+    }
+
+    // union-find desde cero con todos los chunks etiquetados alguna vez (los de disco, por sus bordes)
+    private void rebuild() {
+        nodes = 0;
+        dead = 0;
+        for (int ci = 0; ci < edge.length; ci++) if (edge[ci] != null) base[ci] = alloc(count[ci]);
+        for (int ci = 0; ci < edge.length; ci++) {
+            if (edge[ci] == null) continue;
+            int cx = ci % map.chunksW, cy = ci / map.chunksW;
+            if (cx + 1 < map.chunksW) joinVertical(ci, ci + 1);
+            if (cy + 1 < map.chunksH) joinHorizontal(ci, ci + map.chunksW);
+        }
+    }
+
+    private void joinBorders(int ci) {
+        int cx = ci % map.chunksW, cy = ci / map.chunksW;
+        if (cx > 0) joinVertical(ci - 1, ci);
+        if (cx + 1 < map.chunksW) joinVertical(ci, ci + 1);
+        if (cy > 0) joinHorizontal(ci - map.chunksW, ci);
+        if (cy + 1 < map.chunksH) joinHorizontal(ci, ci + map.chunksW);
+    }
+
+    // borde entre 'a' (izquierda) y 'b' (derecha)
+    private void joinVertical(int a, int b) {
+        join(a, 3 * GameMap.CHUNK, b, 2 * GameMap.CHUNK);
+    }
+
+    // borde entre 'a' (arriba) y 'b' (abajo)
+    private void joinHorizontal(int a, int b) {
+        join(a, GameMap.CHUNK, b, 0);
+    }
+
+    // une las etiquetas enfrentadas de dos bordes (desde la posición 'oa' de edge[a] y 'ob' de edge[b])
+    private void join(int a, int oa, int b, int ob) {
+        short[] ea = edge[a], eb = edge[b];
+        if (ea == null || eb == null) return;
+        for (int k = 0; k < GameMap.CHUNK; k++) {
+            int va = ea[oa + k], vb = eb[ob + k];
+            if (va != 0 && vb != 0) union(base[a] + va - 1, base[b] + vb - 1);
+        }
+    }
+
+    private int alloc(int n) {
+        if (nodes + n > parent.length) parent = Arrays.copyOf(parent, Math.max(parent.length * 2, nodes + n));
+        for (int i = 0; i < n; i++) parent[nodes + i] = nodes + i;
+        nodes += n;
+        return nodes - n;
+    }
+
+    private int find(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]]; // compresión a medias
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private void union(int a, int b) {
+        a = find(a);
+        b = find(b);
+        if (a == b) return;
+        if (a < b) parent[b] = a; // la raíz es el nodo más antiguo
+        else parent[a] = b;
+    }
+}
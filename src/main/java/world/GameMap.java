@@ -1,823 +1,466 @@
 package world;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-// TODO --> refactorizar clase completa pronto
 public class GameMap {
     public final int w, h;
-    public final char[][] tiles;
-    public final boolean[][] walk;
-    public final boolean[][] transp;
-    public final boolean[][] explored;
-    public final boolean[][] indoor;
 
+    // Capa compacta troceada en chunks de 64x64: un byte por celda -> [flags (4 bits) | tipo de casilla (4 bits)]
+    public static final int CHUNK_SHIFT = 6;
+    public static final int CHUNK = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK - 1;
+
+    private static final int TYPE_MASK = 0x0F;
+    private static final int F_WALK = 0x10;
+    private static final int F_TRANSP = 0x20;
+    private static final int F_INDOOR = 0x40;
+    private static final int F_EXPLORED = 0x80;
+
+    public final int chunksW, chunksH;
+    // un chunk se publica (set) ya relleno, así que quien lo lee sin cerrojo nunca lo ve a medias; mientras se
+    // genera sólo lo ve, a través de 'filling', el hilo que lo está generando (tiene el cerrojo)
+    private final AtomicReferenceArray<byte[]> chunks;
+    private final List<byte[]> filling = new ArrayList<>();   // pila de chunks a medio generar...
+    private final List<Integer> fillingIds = new ArrayList<>(); // ...y sus índices
+    // cima de la pila, para el camino rápido de chunkAt sin cerrojo: sólo vale si 'filler' es el hilo que
+    // pregunta (un hilo sólo puede leer su propio valor en 'filler' si lo escribió él, y entonces ve lo demás)
+    private Thread filler;
+    private int fillerChunk = -1;
+    private byte[] fillerData;
+    // tejados vistos (MapView) por chunk, una palabra por fila; null donde no se ha visto ninguno. No caben en
+    // el byte de celda (no quedan bits) y viajan con el chunk al expulsarlo (ChunkResidency)
+    private final long[][] roofs;
+    // una capa de bits por flag, al día con los bytes (cada escritura toca las dos cosas); los chunks sin cargar
+    // quedan a 0. Un chunk ocupa justo una palabra por fila, así que cargar o expulsar uno son 64 palabras
+    private final BitLayer walkBits, transpBits, indoorBits, exploredBits;
+    private final ChunkSource source; // null -> mapa completo en memoria
+    private volatile int loadedChunks;
+    private final RoomIndex rooms;
+    private volatile long version;
+    private final CopyOnWriteArrayList<MapListener> listeners = new CopyOnWriteArrayList<>();
+    private ChunkResidency residency; // null -> los chunks cargados se quedan en memoria para siempre
+    private volatile MapPyramid pyramid; // se crea al pedirla (minimapa / vista general)
+    private volatile Connectivity connectivity; // se crea al pedirla (colocar loot/zombis alcanzables)
 
     public GameMap(int w, int h) {
+        this(w, h, null);
+        for (int i = 0; i < chunks.length(); i++) chunks.set(i, new byte[CHUNK * CHUNK]);
+        loadedChunks = chunks.length();
+    }
+
+    // Mapa perezoso: cada chunk se genera con 'source' la primera vez que alguien lo consulta
+    public GameMap(int w, int h, ChunkSource source) {
         this.w = w;
         this.h = h;
-        this.tiles = new char[h][w];
-        this.walk = new boolean[h][w];
-        this.transp = new boolean[h][w];
-        this.explored = new boolean[h][w];
-        this.indoor = new boolean[h][w];
-
+        this.chunksW = (w + CHUNK - 1) >> CHUNK_SHIFT;
+        this.chunksH = (h + CHUNK - 1) >> CHUNK_SHIFT;
+        this.chunks = new AtomicReferenceArray<>(chunksW * chunksH);
+        this.roofs = new long[chunksW * chunksH][];
+        this.walkBits = new BitLayer(w, h);
+        this.transpBits = new BitLayer(w, h);
+        this.indoorBits = new BitLayer(w, h);
+        this.exploredBits = new BitLayer(w, h);
+        this.source = source;
+        this.rooms = new RoomIndex(this);
+        listeners.add(rooms);
     }
 
-    public static GameMap randomBalanced(int w, int h) {
-        long seed = System.nanoTime();
-        double coverage = 0.14;
-        int minClusterDist = 18;
-        int minBlobSize = 5;
-        int maxBlobSize = 55;
-        int safeRadius = 6;
-        return randomBalanced(w, h, seed, coverage, minClusterDist, minBlobSize, maxBlobSize, safeRadius);
+    // --- consultas ---
+    public boolean inBounds(int x, int y) {
+        return x >= 0 && y >= 0 && x < w && y < h;
     }
 
-    public static GameMap randomBalanced(int w, int h, long seed, double coverageTarget, int minClusterDist, int minBlobSize, int maxBlobSize, int safeRadius) {
-        if (w < 5 || h < 5) throw new IllegalArgumentException("Mapa demasiado pequeño");
-        coverageTarget = Math.max(0.01, Math.min(0.45, coverageTarget));
-        minBlobSize = Math.max(3, minBlobSize);
-        maxBlobSize = Math.max(minBlobSize, maxBlobSize);
-
-        Random rng = new Random(seed);
-        GameMap m = new GameMap(w, h);
-
-        // base suelo
-        for (int y = 0; y < h; y++) for (int x = 0; x < w; x++) setFloor(m, x, y);
-
-        // borde con árboles
-        for (int x = 0; x < w; x++) {
-            setTree(m, x, 0);
-            setTree(m, x, h - 1);
-        }
-        for (int y = 0; y < h; y++) {
-            setTree(m, 0, y);
-            setTree(m, w - 1, y);
-        }
-
-        int cx = w / 2, cy = h / 2;
-        carveDisk(m, cx, cy, safeRadius);
-
-        // bosque (blobs)
-        int interiorArea = (w - 2) * (h - 2);
-        int targetTrees = (int) Math.round(coverageTarget * interiorArea);
-        int placedTrees = 0;
-
-        int minDist2 = minClusterDist * minClusterDist;
-        List<int[]> seeds = new ArrayList<>();
-        int attempts = 0, maxAttempts = interiorArea * 5;
-        int margin = 2;
-
-        while (placedTrees < targetTrees && attempts++ < maxAttempts) {
-            int x = margin + 1 + rng.nextInt(Math.max(1, w - 2 * (margin + 1)));
-            int y = margin + 1 + rng.nextInt(Math.max(1, h - 2 * (margin + 1)));
-            if (dist2(x, y, cx, cy) <= (safeRadius + 1) * (safeRadius + 1)) continue;
-
-            boolean farEnough = true;
-            for (int[] s : seeds) {
-                if (dist2(x, y, s[0], s[1]) < minDist2) {
-                    farEnough = false;
-                    break;
-                }
-            }
-            if (!farEnough) continue;
-
-            seeds.add(new int[]{x, y});
-            int blobTarget = heavyBetween(rng, minBlobSize, maxBlobSize);
-            int placed = growTreeBlob(m, rng, x, y, blobTarget, margin, cx, cy, safeRadius, targetTrees - placedTrees);
-            placedTrees += placed;
-        }
-
-        // decoración
-        int area = w * h;
-        int groups = Math.max(12, area / 16000) + rng.nextInt(6);
-        int singles = Math.max(22, area / 12000) + rng.nextInt(10);
-        addRiver(m, rng, cx, cy, safeRadius);
-        addCabinClusters(m, rng, groups, safeRadius);
-        addCabins(m, rng, singles, safeRadius);
-        punchDoorsBetweenTouchingInteriors(m, rng);
-        addRocks(m, rng, Math.max(8, (w * h) / 270), Math.max(12, (w * h) / 200), 1, 7, safeRadius);
-
-        return m;
+    public int type(int x, int y) {
+        return chunkAt(x, y)[cellIndex(x, y)] & TYPE_MASK;
     }
 
-    // tiles
-    private static void setTree(GameMap m, int x, int y) {
-        m.tiles[y][x] = '#';
-        m.walk[y][x] = false;
-        m.transp[y][x] = false;
+    public char tile(int x, int y) {
+        return Tiles.glyph(type(x, y));
     }
 
-    private static void setFloor(GameMap m, int x, int y) {
-        m.tiles[y][x] = '.';
-        m.walk[y][x] = true;
-        m.transp[y][x] = true;
+    public boolean walkable(int x, int y) {
+        return (chunkAt(x, y)[cellIndex(x, y)] & F_WALK) != 0;
     }
 
-    private static void setWater(GameMap m, int x, int y) {
-        m.tiles[y][x] = '~';
-        m.walk[y][x] = false;
-        m.transp[y][x] = true;
+    public boolean transparent(int x, int y) {
+        return (chunkAt(x, y)[cellIndex(x, y)] & F_TRANSP) != 0;
     }
 
-    private static void setRock(GameMap m, int x, int y) {
-        m.tiles[y][x] = '^';
-        m.walk[y][x] = false;
-        m.transp[y][x] = false;
+    public boolean indoor(int x, int y) {
+        return (chunkAt(x, y)[cellIndex(x, y)] & F_INDOOR) != 0;
     }
 
-    private static void setCabinWall(GameMap m, int x, int y, char ch) {
-        m.tiles[y][x] = ch;
-        m.walk[y][x] = false;
-        m.transp[y][x] = false;
+    public boolean explored(int x, int y) {
+        return (chunkAt(x, y)[cellIndex(x, y)] & F_EXPLORED) != 0;
     }
 
-    private static void setDoor(GameMap m, int x, int y) {
-        m.tiles[y][x] = '+';
-        m.walk[y][x] = true;
-        m.transp[y][x] = true;
+    public void setExplored(int x, int y) {
+        byte[] c = chunkAt(x, y);
+        int i = cellIndex(x, y);
+        if ((c[i] & F_EXPLORED) != 0) return;
+        c[i] |= (byte) F_EXPLORED;
+        exploredBits.set(x, y);
+        MapPyramid p = pyramid;
+        if (p != null) p.explored(x, y);
     }
 
-    // util
-    private static boolean inBounds(GameMap m, int x, int y) {
-        return x >= 0 && y >= 0 && x < m.w && y < m.h;
+    // tejado visto desde dentro del disco de luz (lo recuerda la vista aunque el jugador se aleje)
+    public boolean roofSeen(int x, int y) {
+        long[] r = roofs[(y >> CHUNK_SHIFT) * chunksW + (x >> CHUNK_SHIFT)];
+        return r != null && (r[y & CHUNK_MASK] & 1L << (x & CHUNK_MASK)) != 0;
     }
 
-    private static boolean inInterior(GameMap m, int x, int y, int margin) {
-        return x >= (1 + margin) && y >= (1 + margin) && x < (m.w - 1 - margin) && y < (m.h - 1 - margin);
+    public void setRoofSeen(int x, int y) {
+        if (roofSeen(x, y)) return;
+        int ci = (y >> CHUNK_SHIFT) * chunksW + (x >> CHUNK_SHIFT);
+        synchronized (this) { // como unload/install: una expulsión no se lleva el chunk a mitad
+            chunkAt(x, y); // el chunk tiene que estar en memoria: sus tejados se expulsan con él
+            long[] r = roofs[ci];
+            if (r == null) roofs[ci] = r = new long[CHUNK];
+            r[y & CHUNK_MASK] |= 1L << (x & CHUNK_MASK);
+        }
     }
 
-    private static int dist2(int x1, int y1, int x2, int y2) {
-        int dx = x1 - x2, dy = y1 - y2;
-        return dx * dx + dy * dy;
+    // --- capas de bits de cada flag, 1 bit por celda: son las del mapa, siempre al día y sin coste al pedirlas.
+    // Sólo lectura: quien quiera operar sobre ellas (and, floodWithin...) trabaja sobre una copy() ---
+    public BitLayer walkLayer() {
+        return walkBits;
     }
 
-    private static void carveDisk(GameMap m, int cx, int cy, int r) {
-        int r2 = r * r, x0 = Math.max(1, cx - r), x1 = Math.min(m.w - 2, cx + r), y0 = Math.max(1, cy - r), y1 = Math.min(m.h - 2, cy + r);
-        for (int y = y0; y <= y1; y++) for (int x = x0; x <= x1; x++) if (dist2(x, y, cx, cy) <= r2) setFloor(m, x, y);
+    public BitLayer transparentLayer() {
+        return transpBits;
     }
 
-    // bosque
-    private static int growTreeBlob(GameMap m, Random rng, int sx, int sy, int targetSize, int margin, int cx, int cy, int safeRadius, int budget) {
-        if (budget <= 0 || !inInterior(m, sx, sy, margin) || !m.walk[sy][sx]) return 0;
-        if (dist2(sx, sy, cx, cy) <= (safeRadius + 1) * (safeRadius + 1)) return 0;
-
-        ArrayDeque<int[]> frontier = new ArrayDeque<>();
-        boolean[][] inBlob = new boolean[m.h][m.w];
-        frontier.add(new int[]{sx, sy});
-        inBlob[sy][sx] = true;
-
-        int placed = 0, placedThis = 0, minX = sx, maxX = sx, minY = sy, maxY = sy;
-
-        while (!frontier.isEmpty() && placedThis < targetSize) {
-            int idx = rng.nextInt(frontier.size());
-            int[] cur = pickAndRemove(frontier, idx);
-            int x = cur[0], y = cur[1];
-
-            if (m.walk[y][x] && inInterior(m, x, y, margin) && dist2(x, y, cx, cy) > (safeRadius + 1) * (safeRadius + 1)) {
-                setTree(m, x, y);
-                placed++;
-                placedThis++;
-                if (x < minX) minX = x;
-                if (x > maxX) maxX = x;
-                if (y < minY) minY = y;
-                if (y > maxY) maxY = y;
-                if (placed >= budget || placedThis >= targetSize) break;
-            }
+    public BitLayer indoorLayer() {
+        return indoorBits;
+    }
 
-            double progress = Math.min(1.0, placedThis / Math.max(1.0, (double) targetSize));
-            double p = 0.82 - 0.55 * progress;
-            int[][] dirs = rng.nextBoolean() ? new int[][]{{1, 0}, {-1, 0}, {0, 1}, {0, -1}} : new int[][]{{0, 1}, {0, -1}, {1, 0}, {-1, 0}};
-            for (int[] d : dirs) {
-                int nx = x + d[0], ny = y + d[1];
-                if (!inBounds(m, nx, ny) || !inInterior(m, nx, ny, margin) || inBlob[ny][nx] || !m.walk[ny][nx])
-                    continue;
-                if (rng.nextDouble() < p) {
-                    inBlob[ny][nx] = true;
-                    frontier.add(new int[]{nx, ny});
-                }
-            }
-        }
+    public BitLayer exploredLayer() {
+        return exploredBits;
+    }
 
-        if (placedThis > 0 && placed < budget) {
-            int pad = 1, x0 = Math.max(1, minX - pad), y0 = Math.max(1, minY - pad), x1 = Math.min(m.w - 2, maxX + pad), y1 = Math.min(m.h - 2, maxY + pad);
-            placed += fillHolesRegionWithTrees(m, x0, y0, x1, y1, budget - placed);
-        }
-        return placed;
+    // 'dst' = ventana de la capa de paso con esquina en (x0, y0) y el tamaño de 'dst', cargando antes los chunks
+    // que toca (para el generador, que puede estar rellenando alguno de ellos)
+    void walkWindow(BitLayer dst, int x0, int y0) {
+        int x1 = Math.min(w, x0 + dst.width()) - 1, y1 = Math.min(h, y0 + dst.height()) - 1;
+        for (int cy = y0 >> CHUNK_SHIFT; cy <= y1 >> CHUNK_SHIFT; cy++)
+            for (int cx = x0 >> CHUNK_SHIFT; cx <= x1 >> CHUNK_SHIFT; cx++) chunkAt(cx << CHUNK_SHIFT, cy << CHUNK_SHIFT);
+        dst.copyWindow(walkBits, x0, y0);
     }
 
-    private static int fillHolesRegionWithTrees(GameMap m, int x0, int y0, int x1, int y1, int budget) {
-        if (budget <= 0) return 0;
-        int rw = x1 - x0 + 1, rh = y1 - y0 + 1;
-        if (rw <= 0 || rh <= 0) return 0;
-        boolean[][] vis = new boolean[rh][rw];
-        ArrayDeque<int[]> q = new ArrayDeque<>();
+    // true si la celda ya está en memoria (consultarla no dispara generación)
+    public boolean isLoaded(int x, int y) {
+        return chunks.get((y >> CHUNK_SHIFT) * chunksW + (x >> CHUNK_SHIFT)) != null;
+    }
 
-        for (int x = x0; x <= x1; x++) {
-            if (m.walk[y0][x]) {
-                vis[0][x - x0] = true;
-                q.add(new int[]{x, y0});
-            }
-            if (m.walk[y1][x]) {
-                vis[rh - 1][x - x0] = true;
-                q.add(new int[]{x, y1});
-            }
-        }
-        for (int y = y0; y <= y1; y++) {
-            if (m.walk[y][x0]) {
-                vis[y - y0][0] = true;
-                q.add(new int[]{x0, y});
-            }
-            if (m.walk[y][x1]) {
-                vis[y - y0][rw - 1] = true;
-                q.add(new int[]{x1, y});
-            }
-        }
+    public int loadedChunks() {
+        return loadedChunks;
+    }
 
-        int[][] d4 = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
-        while (!q.isEmpty()) {
-            int[] c = q.pollFirst();
-            int x = c[0], y = c[1];
-            for (int[] d : d4) {
-                int nx = x + d[0], ny = y + d[1];
-                if (nx < x0 || ny < y0 || nx > x1 || ny > y1) continue;
-                int vx = nx - x0, vy = ny - y0;
-                if (vis[vy][vx] || !m.walk[ny][nx]) continue;
-                vis[vy][vx] = true;
-                q.addLast(new int[]{nx, ny});
-            }
-        }
+    // salas y edificios (se etiquetan bajo demanda)
+    public RoomIndex rooms() {
+        return rooms;
+    }
 
-        int filled = 0;
-        for (int y = y0; y <= y1; y++) {
-            for (int x = x0; x <= x1; x++) {
-                if (!m.walk[y][x] || vis[y - y0][x - x0]) continue;
-                setTree(m, x, y);
-                if (++filled >= budget) return filled;
+    // resumen por niveles para minimapa y vista general (se construye con lo ya cargado la primera vez)
+    public MapPyramid pyramid() {
+        MapPyramid p = pyramid;
+        if (p != null) return p;
+        synchronized (this) {
+            if (pyramid == null) {
+                pyramid = new MapPyramid(this);
+                listeners.add(pyramid);
             }
-        }
-        return filled;
-    }
-
-    // río
-    private static void addRiver(GameMap m, Random rng, int cx, int cy, int safeRadius) {
-        if (m.w < 40 || m.h < 30) return;
-        boolean horizontal = rng.nextBoolean();
-        double amp = (horizontal ? m.h : m.w) * (0.08 + rng.nextDouble() * 0.06);
-        double freq = (0.015 + rng.nextDouble() * 0.015);
-        double phase = rng.nextDouble() * Math.PI * 2.0;
-        int base = horizontal ? (int) (m.h * (0.25 + rng.nextDouble() * 0.5)) : (int) (m.w * (0.25 + rng.nextDouble() * 0.5));
-        int halfW = 2 + rng.nextInt(3);
-
-        if (horizontal) {
-            for (int x = 1; x < m.w - 1; x++) {
-                int yC = base + (int) Math.round(Math.sin(x * freq + phase) * amp);
-                for (int dy = -halfW; dy <= halfW; dy++) {
-                    int y = yC + dy;
-                    if (y <= 0 || y >= m.h - 1) continue;
-                    setWater(m, x, y);
-                }
-            }
-        } else {
-            for (int y = 1; y < m.h - 1; y++) {
-                int xC = base + (int) Math.round(Math.sin(y * freq + phase) * amp);
-                for (int dx = -halfW; dx <= halfW; dx++) {
-                    int x = xC + dx;
-                    if (x <= 0 || x >= m.w - 1) continue;
-                    setWater(m, x, y);
-                }
-            }
-        }
-        // ribera
-        for (int y = 1; y < m.h - 1; y++)
-            for (int x = 1; x < m.w - 1; x++) {
-                if (m.tiles[y][x] == '~') {
-                    for (int yy = y - 1; yy <= y + 1; yy++)
-                        for (int xx = x - 1; xx <= x + 1; xx++)
-                            if (m.tiles[yy][xx] == '#') setFloor(m, xx, yy);
-                }
-            }
-        carveDisk(m, cx, cy, safeRadius);
-    }
-
-    // rocas
-    private static void addRocks(GameMap m, Random rng, int minGroups, int maxGroups, int sizeMin, int sizeMax, int safeRadius) {
-        // saneo parámetros
-        sizeMin = Math.max(1, sizeMin);
-        sizeMax = Math.max(sizeMin, sizeMax);
-        minGroups = Math.max(1, minGroups);
-        maxGroups = Math.max(minGroups, maxGroups);
-
-        int groups = minGroups + rng.nextInt(maxGroups - minGroups + 1);
-        int placedGroups = 0;
-        int attempts = groups * 30; // margen de intentos
-        int margin = 1;
-        int cx = m.w / 2, cy = m.h / 2;
-        int safe2 = (safeRadius + 1) * (safeRadius + 1);
-
-        while (placedGroups < groups && attempts-- > 0) {
-            // semilla en interior, sobre suelo libre
-            int x = margin + rng.nextInt(Math.max(1, m.w - 2 * margin));
-            int y = margin + rng.nextInt(Math.max(1, m.h - 2 * margin));
-            if (!inInterior(m, x, y, margin)) continue;
-            if (m.tiles[y][x] != '.') continue;       // no agua/árbol/pared
-            if (m.indoor[y][x]) continue;             // no interiores
-            if (dist2(x, y, cx, cy) <= safe2) continue;
-
-            int target = sizeMin + rng.nextInt(sizeMax - sizeMin + 1);
-            int got = sprinkleRockMicroBlob(m, rng, x, y, target, cx, cy, safe2);
-            if (got > 0) placedGroups++;
-        }
-
-        // fallback mínimo por si acaso
-        if (placedGroups == 0) {
-            for (int y = 1; y < m.h - 1; y++)
-                for (int x = 1; x < m.w - 1; x++) {
-                    if (m.tiles[y][x] == '.' && !m.indoor[y][x] && dist2(x, y, cx, cy) > safe2) {
-                        setRock(m, x, y);
-                        return;
-                    }
-                }
+            return pyramid;
         }
     }
 
-    private static int sprinkleRockMicroBlob(GameMap m, Random rng, int sx, int sy, int target, int cx, int cy, int safe2) {
-        int placed = 0, steps = 0;
-        ArrayDeque<int[]> q = new ArrayDeque<>();
-        boolean[][] seen = new boolean[m.h][m.w];
-        q.add(new int[]{sx, sy});
-        seen[sy][sx] = true;
-
-        // 8 direcciones para formar grupitos compactos
-        int[][] d8 = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
-
-        while (!q.isEmpty() && placed < target && steps < target * 12) {
-            steps++;
-            int[] cur = q.pollFirst();
-            int x = cur[0], y = cur[1];
-
-            if (m.tiles[y][x] == '.' && !m.indoor[y][x] && dist2(x, y, cx, cy) > safe2) {
-                setRock(m, x, y);
-                placed++;
-            }
-
-            // expansión moderada (≈40%) para mantener grupos pequeños y orgánicos
-            for (int[] d : d8) {
-                if (rng.nextDouble() > 0.25) continue;
-                int nx = x + d[0], ny = y + d[1];
-                if (!inBounds(m, nx, ny) || seen[ny][nx]) continue;
-                if (m.tiles[ny][nx] != '.' || m.indoor[ny][nx]) continue;
-                seen[ny][nx] = true;
-                q.addLast(new int[]{nx, ny});
+    // componentes conexas de lo transitable (se etiqueta lo ya cargado en la primera consulta)
+    public Connectivity connectivity() {
+        Connectivity c = connectivity;
+        if (c != null) return c;
+        synchronized (this) {
+            if (connectivity == null) {
+                connectivity = new Connectivity(this);
+                listeners.add(connectivity);
             }
+            return connectivity;
         }
-        return placed;
     }
 
+    public boolean isLazy() {
+        return source != null;
+    }
 
-    // cabañas
-    private static void addCabins(GameMap m, Random rng, int count, int safeRadius) {
-        int target = Math.max(1, count);
-        int tries = target * 60;
-        int placed = 0;
+    // --- mutaciones públicas: suben la versión y avisan a los listeners ---
+    // (marcar explorado no cuenta como cambio del mapa)
 
-        while (placed < target && tries-- > 0) {
-            int wCab = 6 + rng.nextInt(9);
-            int hCab = 4 + rng.nextInt(8);
-            int x0 = 2 + rng.nextInt(Math.max(1, m.w - 2 - wCab - 2));
-            int y0 = 2 + rng.nextInt(Math.max(1, m.h - 2 - hCab - 2));
-            int x1 = x0 + wCab - 1, y1 = y0 + hCab - 1;
+    // versión del contenido: cambia con cada mutación, nunca con la carga de chunks
+    public long version() {
+        return version;
+    }
 
-            int cx = (x0 + x1) / 2, cy = (y0 + y1) / 2;
-            if (dist2(cx, cy, m.w / 2, m.h / 2) <= (safeRadius + 3) * (safeRadius + 3)) continue;
+    public void addListener(MapListener l) {
+        listeners.add(l);
+    }
 
-            // Requisito: sin agua en un halo 1-tile alrededor
-            if (!areaClearOfWater(m, x0 - 1, y0 - 1, x1 + 1, y1 + 1)) continue;
+    public void removeListener(MapListener l) {
+        listeners.remove(l);
+    }
 
-            buildCabin(m, x0, y0, x1, y1);
-            placed++;
-        }
+    public void setType(int x, int y, int type) {
+        if (!inBounds(x, y)) throw new IndexOutOfBoundsException("Fuera del mapa: " + x + "," + y);
+        if (type(x, y) == type) return;
+        put(x, y, type);
+        changed(x, y, x, y);
+    }
 
-        // Fallback determinista: si por cualquier motivo no se colocó ninguna, forzamos 1
-        if (placed == 0) {
-            outer:
-            for (int hCab = 5; hCab <= 12; hCab++) {
-                for (int wCab = 8; wCab <= 16; wCab++) {
-                    for (int y0 = 2; y0 <= m.h - 2 - hCab; y0++) {
-                        for (int x0 = 2; x0 <= m.w - 2 - wCab; x0++) {
-                            int x1 = x0 + wCab - 1, y1 = y0 + hCab - 1;
-                            int cx = (x0 + x1) / 2, cy = (y0 + y1) / 2;
-                            if (dist2(cx, cy, m.w / 2, m.h / 2) <= (safeRadius + 3) * (safeRadius + 3)) continue;
-                            if (!areaClearOfWater(m, x0 - 1, y0 - 1, x1 + 1, y1 + 1)) continue;
-
-                            buildCabin(m, x0, y0, x1, y1);
-                            break outer;
-                        }
-                    }
-                }
-            }
-        }
+    // rellena un rectángulo (inclusivo, recortado al mapa) con un único aviso
+    public void fill(int x0, int y0, int x1, int y1, int type) {
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(w - 1, x1);
+        y1 = Math.min(h - 1, y1);
+        if (x0 > x1 || y0 > y1) return;
+        for (int y = y0; y <= y1; y++) for (int x = x0; x <= x1; x++) put(x, y, type);
+        changed(x0, y0, x1, y1);
     }
 
-    private static void drawCabinShell(GameMap m, int x0, int y0, int x1, int y1) {
-        // Interior
-        for (int y = y0 + 1; y <= y1 - 1; y++) {
-            for (int x = x0 + 1; x <= x1 - 1; x++) {
-                setFloor(m, x, y);
-                m.indoor[y][x] = true;
-            }
-        }
-        // Paredes
-        setCabinWall(m, x0, y0, '╔');
-        setCabinWall(m, x1, y0, '╗');
-        setCabinWall(m, x0, y1, '╚');
-        setCabinWall(m, x1, y1, '╝');
-        for (int x = x0 + 1; x <= x1 - 1; x++) {
-            setCabinWall(m, x, y0, '═');
-            setCabinWall(m, x, y1, '═');
-        }
-        for (int y = y0 + 1; y <= y1 - 1; y++) {
-            setCabinWall(m, x0, y, '║');
-            setCabinWall(m, x1, y, '║');
-        }
+    public void setIndoor(int x, int y, boolean indoor) {
+        if (!inBounds(x, y)) throw new IndexOutOfBoundsException("Fuera del mapa: " + x + "," + y);
+        if (indoor(x, y) == indoor) return;
+        byte[] c = chunkAt(x, y);
+        int i = cellIndex(x, y);
+        c[i] = (byte) (indoor ? c[i] | F_INDOOR : c[i] & ~F_INDOOR);
+        indoorBits.set(x, y, indoor);
+        changed(x, y, x, y);
     }
 
-    private static boolean areaBuildableForCabin(GameMap m, int x0, int y0, int x1, int y1) {
-        for (int y = y0; y <= y1; y++) {
-            for (int x = x0; x <= x1; x++) {
-                if (!inBounds(m, x, y)) return false;
-                char t = m.tiles[y][x];
-                if (t == '~' || t == '^') return false; // agua/roca
-                if (t == '╔' || t == '╗' || t == '╚' || t == '╝' || t == '═' || t == '║' || t == '+')
-                    return false; // ya hay casa
-            }
+    // para quien escribe en bloque con put() dentro del paquete: un único aviso al final
+    void changed(int x0, int y0, int x1, int y1) {
+        long v;
+        synchronized (this) {
+            v = ++version;
         }
-        return true;
+        for (MapListener l : listeners) l.mapChanged(this, x0, y0, x1, y1, v);
     }
 
-    private static final class RectI {
-        final int x0, y0, x1, y1;
+    // cambia el tipo (y sus flags de paso/visión) conservando interior/explorado; sin aviso (generación)
+    void put(int x, int y, int type) {
+        byte[] c = chunkAt(x, y);
+        int i = cellIndex(x, y);
+        int keep = c[i] & (F_INDOOR | F_EXPLORED);
+        int flags = (Tiles.walkable(type) ? F_WALK : 0) | (Tiles.transparent(type) ? F_TRANSP : 0);
+        c[i] = (byte) (keep | flags | type);
+        walkBits.set(x, y, (flags & F_WALK) != 0);
+        transpBits.set(x, y, (flags & F_TRANSP) != 0);
+    }
 
-        RectI(int x0, int y0, int x1, int y1) {
-            this.x0 = x0;
-            this.y0 = y0;
-            this.x1 = x1;
-            this.y1 = y1;
-        }
+    // sin aviso (generación)
+    void setIndoor(int x, int y) {
+        byte[] c = chunkAt(x, y);
+        int i = cellIndex(x, y);
+        c[i] |= (byte) F_INDOOR;
+        indoorBits.set(x, y);
+    }
 
-        int w() {
-            return x1 - x0 + 1;
-        }
+    // byte de celda de una plantilla (Blueprint): tipo con sus flags de paso/visión y, si toca, interior
+    static byte cell(int type, boolean indoor) {
+        int flags = (Tiles.walkable(type) ? F_WALK : 0) | (Tiles.transparent(type) ? F_TRANSP : 0);
+        return (byte) (flags | (indoor ? F_INDOOR : 0) | type);
+    }
 
-        int h() {
-            return y1 - y0 + 1;
+    // estampa una plantilla de 'tw' x 'th' bytes (filas seguidas) con esquina en (x0, y0), dentro del mapa:
+    // fila a fila y por tramos de chunk; como put(), conserva el interior/explorado que ya hubiera. Sin aviso (generación)
+    void stamp(int x0, int y0, int tw, int th, byte[] cells) {
+        for (int r = 0; r < th; r++) {
+            int y = y0 + r, j = r * tw;
+            for (int x = x0; x < x0 + tw; ) {
+                byte[] c = chunkAt(x, y);
+                int i = cellIndex(x, y);
+                int n = Math.min(x0 + tw - x, CHUNK - (x & CHUNK_MASK));
+                for (int k = 0; k < n; k++, i++, j++) c[i] = (byte) ((c[i] & (F_INDOOR | F_EXPLORED)) | cells[j]);
+                syncRow(c, x >> CHUNK_SHIFT, y);
+                x += n;
+            }
         }
     }
 
-    private static boolean areaBuildableForAttachment(GameMap m, int x0, int y0, int x1, int y1, int side) {
-        for (int y = y0 - 1; y <= y1 + 1; y++) {
-            for (int x = x0 - 1; x <= x1 + 1; x++) {
-                if (!inBounds(m, x, y)) return false;
-
-                char t = m.tiles[y][x];
-                if (t == '~' || t == '^') return false; // nunca sobre agua/roca
+    byte raw(int x, int y) {
+        return chunkAt(x, y)[cellIndex(x, y)];
+    }
 
-                boolean inRect = (x >= x0 && x <= x1 && y >= y0 && y <= y1);
+    // acceso crudo al chunk 'ci' (se genera si hace falta); lo usan la caché y el formato en disco
+    byte[] chunkData(int ci) {
+        byte[] c = chunks.get(ci);
+        return c != null ? c : loadChunk(ci);
+    }
 
-                // halo adyacente al lado COMPARTIDO (permitido)
-                boolean sharedHalo = (side == 0 && x == x0 - 1) ||   // derecha → halo a la izquierda del nuevo
-                        (side == 1 && x == x1 + 1) ||   // izquierda → halo a la derecha del nuevo
-                        (side == 2 && y == y0 - 1) ||   // abajo → halo arriba del nuevo
-                        (side == 3 && y == y1 + 1);     // arriba → halo abajo del nuevo
-                if (!inRect && sharedHalo) continue;
+    // tejados vistos del chunk 'ci' (null si ninguno); para la residencia
+    long[] roofData(int ci) {
+        return roofs[ci];
+    }
 
-                boolean wallish = (t == '╔' || t == '╗' || t == '╚' || t == '╝' || t == '═' || t == '║' || t == '+');
+    private static int cellIndex(int x, int y) {
+        return ((y & CHUNK_MASK) << CHUNK_SHIFT) | (x & CHUNK_MASK);
+    }
 
-                // dentro del rectángulo no podemos pisar paredes/puertas existentes
-                if (inRect && wallish) return false;
+    private byte[] chunkAt(int x, int y) {
+        int ci = (y >> CHUNK_SHIFT) * chunksW + (x >> CHUNK_SHIFT);
+        byte[] c = chunks.get(ci);
+        if (c != null) return c;
+        if (filler == Thread.currentThread() && fillerChunk == ci) return fillerData;
+        return loadChunk(ci);
+    }
 
-                // en el resto del halo (no compartido) no podemos tocar interiores/paredes
-                if (!inRect && (wallish || m.indoor[y][x])) return false;
+    private synchronized byte[] loadChunk(int ci) {
+        byte[] c = chunks.get(ci);
+        if (c != null) return c;
+        int f = fillingIds.indexOf(ci);
+        if (f >= 0) return filling.get(f); // el generador escribe en su chunk a través de put()
+        c = new byte[CHUNK * CHUNK];
+        // un chunk expulsado a disco vuelve tal cual estaba; si no, se genera
+        if ((residency == null || !residency.pageIn(ci, c)) && source != null) {
+            filling.add(c);
+            fillingIds.add(ci);
+            topFilling();
+            try {
+                source.generate(this, ci % chunksW, ci / chunksW);
+            } finally {
+                filling.remove(filling.size() - 1);
+                fillingIds.remove(fillingIds.size() - 1);
+                topFilling();
             }
         }
+        syncChunk(ci, c);
+        chunks.set(ci, c);
+        loadedChunks++;
+        if (pyramid != null) pyramid.chunkLoaded(ci);
+        if (connectivity != null) connectivity.chunkLoaded(ci);
+        if (residency != null) residency.loaded(ci);
+        return c;
+    }
+
+    private void topFilling() {
+        int n = filling.size();
+        filler = n == 0 ? null : Thread.currentThread();
+        fillerChunk = n == 0 ? -1 : fillingIds.get(n - 1);
+        fillerData = n == 0 ? null : filling.get(n - 1);
+    }
+
+    // --- residencia (ChunkResidency): expulsar chunks y volver a instalarlos; no cambian la versión ---
+    synchronized void attach(ChunkResidency r) {
+        residency = r;
+    }
+
+    // quita el chunk 'ci' (y sus tejados vistos) de memoria y devuelve sus bytes (null si no estaba cargado)
+    synchronized byte[] unload(int ci) {
+        byte[] c = chunks.get(ci);
+        if (c == null) return null;
+        chunks.set(ci, null);
+        roofs[ci] = null;
+        syncChunk(ci, null);
+        loadedChunks--;
+        return c;
+    }
+
+    // después de unload() y fuera del cerrojo del mapa: los índices sueltan lo que derivaron del chunk y lo
+    // rehacen cuando vuelva (no se toma aquí el cerrojo: ellos lo piden al mapa mientras tienen el suyo)
+    void evicted(int ci) {
+        Connectivity c = connectivity;
+        if (c != null) c.chunkEvicted(ci);
+        rooms.chunkEvicted(ci);
+    }
+
+    // tejados vistos de un chunk que vuelve de disco (null si ninguno)
+    synchronized void restoreRoofs(int ci, long[] r) {
+        roofs[ci] = r;
+    }
+
+    // instala bytes ya leídos (página asíncrona); false si el chunk ya estaba cargado
+    synchronized boolean install(int ci, byte[] data, long[] roofSeen) {
+        if (chunks.get(ci) != null) return false;
+        roofs[ci] = roofSeen;
+        syncChunk(ci, data);
+        chunks.set(ci, data);
+        loadedChunks++;
+        if (pyramid != null) pyramid.chunkLoaded(ci);
+        if (connectivity != null) connectivity.chunkLoaded(ci);
+        if (residency != null) residency.loaded(ci);
         return true;
     }
 
-
-    private static RectI boundsOf(java.util.List<RectI> rs) {
-        int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = Integer.MIN_VALUE, y1 = Integer.MIN_VALUE;
-        for (RectI r : rs) {
-            x0 = Math.min(x0, r.x0);
-            y0 = Math.min(y0, r.y0);
-            x1 = Math.max(x1, r.x1);
-            y1 = Math.max(y1, r.y1);
-        }
-        return new RectI(x0, y0, x1, y1);
-    }
-
-    // --- NUEVO: abre una puerta entre dos módulos adyacentes que comparten pared ---
-    private static void openSharedDoor(GameMap m, RectI a, RectI b, Random rng) {
-        // vertical compartida
-        if (a.x1 == b.x0 || b.x1 == a.x0) {
-            int x = (a.x1 == b.x0) ? a.x1 : b.x1;
-            int yStart = Math.max(a.y0 + 1, b.y0 + 1);
-            int yEnd = Math.min(a.y1 - 1, b.y1 - 1);
-            if (yStart <= yEnd) {
-                int y = yStart + rng.nextInt(Math.max(1, yEnd - yStart + 1));
-                setDoor(m, x, y);
-                // asegura suelo a ambos lados
-                if (inBounds(m, x - 1, y)) {
-                    setFloor(m, x - 1, y);
-                    m.indoor[y][x - 1] = true;
-                }
-                if (inBounds(m, x + 1, y)) {
-                    setFloor(m, x + 1, y);
-                    m.indoor[y][x + 1] = true;
-                }
-            }
-        }
-        // horizontal compartida
-        if (a.y1 == b.y0 || b.y1 == a.y0) {
-            int y = (a.y1 == b.y0) ? a.y1 : b.y1;
-            int xStart = Math.max(a.x0 + 1, b.x0 + 1);
-            int xEnd = Math.min(a.x1 - 1, b.x1 - 1);
-            if (xStart <= xEnd) {
-                int x = xStart + rng.nextInt(Math.max(1, xEnd - xStart + 1));
-                setDoor(m, x, y);
-                if (inBounds(m, x, y - 1)) {
-                    setFloor(m, x, y - 1);
-                    m.indoor[y - 1][x] = true;
-                }
-                if (inBounds(m, x, y + 1)) {
-                    setFloor(m, x, y + 1);
-                    m.indoor[y + 1][x] = true;
-                }
+    // rehace en las capas las palabras del chunk 'ci' desde sus bytes (null: chunk fuera, a 0)
+    private void syncChunk(int ci, byte[] c) {
+        int cx = ci % chunksW, y0 = (ci / chunksW) << CHUNK_SHIFT;
+        for (int y = y0, y1 = Math.min(h, y0 + CHUNK); y < y1; y++) {
+            if (c != null) {
+                syncRow(c, cx, y);
+                continue;
             }
+            walkBits.setWord(y, cx, 0L);
+            transpBits.setWord(y, cx, 0L);
+            indoorBits.setWord(y, cx, 0L);
+            exploredBits.setWord(y, cx, 0L);
         }
     }
 
-    // --- NUEVO: añade 1–2 puertas exteriores en la envolvente de la casa compuesta ---
-    private static void addExteriorDoorsOnBounding(GameMap m, java.util.List<RectI> rooms, Random rng) {
-        RectI bb = boundsOf(rooms);
-        int doors = 1 + rng.nextInt(2);
-        for (int d = 0; d < doors; d++) {
-            int side = rng.nextInt(4); // 0 top,1 right,2 bottom,3 left
-            switch (side) {
-                case 0 -> {
-                    if (bb.w() >= 4) {
-                        int x = bb.x0 + 2 + rng.nextInt(Math.max(1, bb.w() - 3));
-                        int y = bb.y0;
-                        setDoor(m, x, y);
-                        if (inBounds(m, x, y + 1)) {
-                            setFloor(m, x, y + 1);
-                            m.indoor[y + 1][x] = true;
-                        }
-                    }
-                }
-                case 1 -> {
-                    if (bb.h() >= 4) {
-                        int x = bb.x1;
-                        int y = bb.y0 + 2 + rng.nextInt(Math.max(1, bb.h() - 3));
-                        setDoor(m, x, y);
-                        if (inBounds(m, x - 1, y)) {
-                            setFloor(m, x - 1, y);
-                            m.indoor[y][x - 1] = true;
-                        }
-                    }
-                }
-                case 2 -> {
-                    if (bb.w() >= 4) {
-                        int x = bb.x0 + 2 + rng.nextInt(Math.max(1, bb.w() - 3));
-                        int y = bb.y1;
-                        setDoor(m, x, y);
-                        if (inBounds(m, x, y - 1)) {
-                            setFloor(m, x, y - 1);
-                            m.indoor[y - 1][x] = true;
-                        }
-                    }
-                }
-                default -> {
-                    if (bb.h() >= 4) {
-                        int x = bb.x0;
-                        int y = bb.y0 + 2 + rng.nextInt(Math.max(1, bb.h() - 3));
-                        setDoor(m, x, y);
-                        if (inBounds(m, x + 1, y)) {
-                            setFloor(m, x + 1, y);
-                            m.indoor[y][x + 1] = true;
-                        }
-                    }
-                }
-            }
+    // fila 'y' del chunk de columna 'cx' -> una palabra en cada capa (setWord recorta lo que pase de 'w')
+    private void syncRow(byte[] c, int cx, int y) {
+        long walk = 0, transp = 0, indoor = 0, explored = 0;
+        for (int i = 0, base = (y & CHUNK_MASK) << CHUNK_SHIFT; i < CHUNK; i++) {
+            int b = c[base + i];
+            long bit = 1L << i;
+            if ((b & F_WALK) != 0) walk |= bit;
+            if ((b & F_TRANSP) != 0) transp |= bit;
+            if ((b & F_INDOOR) != 0) indoor |= bit;
+            if ((b & F_EXPLORED) != 0) explored |= bit;
         }
+        walkBits.setWord(y, cx, walk);
+        transpBits.setWord(y, cx, transp);
+        indoorBits.setWord(y, cx, indoor);
+        exploredBits.setWord(y, cx, explored);
     }
 
-    private static boolean tryAttachModule(GameMap m, Random rng, java.util.List<RectI> rooms, int safeRadius) {
-        RectI base = rooms.get(rng.nextInt(rooms.size()));
-
-        // módulos más grandes
-        int wCab = 8 + rng.nextInt(9);  // 8..16
-        int hCab = 5 + rng.nextInt(8);  // 5..12
-
-        int side = rng.nextInt(4);
-        int minOverlap = 3;
-
-        // más reintentos para encontrar hueco
-        for (int tries = 0; tries < 12; tries++) {
-            int x0, y0, x1, y1;
-
-            if (side == 0) { // derecha (comparte x0 con base.x1)
-                x0 = base.x1;
-                x1 = x0 + wCab - 1;
-                int yTop = Math.max(2, base.y0 - hCab + minOverlap);
-                int yBot = Math.min(m.h - 3 - hCab, base.y1 - minOverlap + 1);
-                if (yTop > yBot) {
-                    side = (side + 1) % 4;
-                    continue;
-                }
-                y0 = yTop + rng.nextInt(Math.max(1, yBot - yTop + 1));
-                y1 = y0 + hCab - 1;
-
-                int cx = (x0 + x1) / 2, cy = (y0 + y1) / 2;
-                if (dist2(cx, cy, m.w / 2, m.h / 2) <= (safeRadius + 3) * (safeRadius + 3)) {
-                    side = (side + 1) % 4;
-                    continue;
-                }
-                if (!areaBuildableForAttachment(m, x0, y0, x1, y1, 0)) {
-                    side = (side + 1) % 4;
-                    continue;
-                }
-
-            } else if (side == 1) { // izquierda (comparte x1 con base.x0)
-                x1 = base.x0;
-                x0 = x1 - wCab + 1;
-                int yTop = Math.max(2, base.y0 - hCab + minOverlap);
-                int yBot = Math.min(m.h - 3 - hCab, base.y1 - minOverlap + 1);
-                if (yTop > yBot) {
-                    side = (side + 1) % 4;
-                    continue;
-                }
-                y0 = yTop + rng.nextInt(Math.max(1, yBot - yTop + 1));
-                y1 = y0 + hCab - 1;
-
-                int cx = (x0 + x1) / 2, cy = (y0 + y1) / 2;
-                if (dist2(cx, cy, m.w / 2, m.h / 2) <= (safeRadius + 3) * (safeRadius + 3)) {
-                    side = (side + 1) % 4;
-                    continue;
-                }
-                if (!areaBuildableForAttachment(m, x0, y0, x1, y1, 1)) {
-                    side = (side + 1) % 4;
-                    continue;
-                }
-
-            } else if (side == 2) { // abajo (comparte y0 con base.y1)
-                y0 = base.y1;
-                y1 = y0 + hCab - 1;
-                int xLeft = Math.max(2, base.x0 - wCab + minOverlap);
-                int xRight = Math.min(m.w - 3 - wCab, base.x1 - minOverlap + 1);
-                if (xLeft > xRight) {
-                    side = (side + 1) % 4;
-                    continue;
-                }
-                x0 = xLeft + rng.nextInt(Math.max(1, xRight - xLeft + 1));
-                x1 = x0 + wCab - 1;
-
-                int cx = (x0 + x1) / 2, cy = (y0 + y1) / 2;
-                if (dist2(cx, cy, m.w / 2, m.h / 2) <= (safeRadius + 3) * (safeRadius + 3)) {
-                    side = (side + 1) % 4;
-                    continue;
-                }
-                if (!areaBuildableForAttachment(m, x0, y0, x1, y1, 2)) {
-                    side = (side + 1) % 4;
-                    continue;
-                }
-
-            } else { // arriba (comparte y1 con base.y0)
-                y1 = base.y0;
-                y0 = y1 - hCab + 1;
-                int xLeft = Math.max(2, base.x0 - wCab + minOverlap);
-                int xRight = Math.min(m.w - 3 - wCab, base.x1 - minOverlap + 1);
-                if (xLeft > xRight) {
-                    side = (side + 1) % 4;
-                    continue;
-                }
-                x0 = xLeft + rng.nextInt(Math.max(1, xRight - xLeft + 1));
-                x1 = x0 + wCab - 1;
-
-                int cx = (x0 + x1) / 2, cy = (y0 + y1) / 2;
-                if (dist2(cx, cy, m.w / 2, m.h / 2) <= (safeRadius + 3) * (safeRadius + 3)) {
-                    side = (side + 1) % 4;
-                    continue;
-                }
-                if (!areaBuildableForAttachment(m, x0, y0, x1, y1, 3)) {
-                    side = (side + 1) % 4;
-                    continue;
-                }
-            }
-
-            // Dibuja y conecta
-            drawCabinShell(m, x0, y0, x1, y1);
-            RectI neo = new RectI(x0, y0, x1, y1);
-            rooms.add(neo);
-            openSharedDoor(m, base, neo, rng);
-            return true;
-        }
-        return false;
+    public static GameMap randomBalanced(int w, int h) {
+        long seed = System.nanoTime();
+        double coverage = 0.14;
+        int minClusterDist = 18;
+        int minBlobSize = 5;
+        int maxBlobSize = 55;
+        int safeRadius = 6;
+        return randomBalanced(w, h, seed, coverage, minClusterDist, minBlobSize, maxBlobSize, safeRadius);
     }
 
-
-    private static void addCabinClusters(GameMap m, Random rng, int groups, int safeRadius) {
-        int placed = 0;
-        int attempts = groups * 40;
-
-        while (placed < groups && attempts-- > 0) {
-            int modules = 2 + rng.nextInt(5);
-
-            int wCab = 6 + rng.nextInt(6);
-            int hCab = 4 + rng.nextInt(5);
-            int x0 = 2 + rng.nextInt(Math.max(1, m.w - 2 - wCab - 2));
-            int y0 = 2 + rng.nextInt(Math.max(1, m.h - 2 - hCab - 2));
-            int x1 = x0 + wCab - 1, y1 = y0 + hCab - 1;
-
-            int cx = (x0 + x1) / 2, cy = (y0 + y1) / 2;
-            if (dist2(cx, cy, m.w / 2, m.h / 2) <= (safeRadius + 3) * (safeRadius + 3)) continue;
-            if (!areaBuildableForCabin(m, x0 - 1, y0 - 1, x1 + 1, y1 + 1)) continue;
-
-            java.util.ArrayList<RectI> rooms = new java.util.ArrayList<>();
-            drawCabinShell(m, x0, y0, x1, y1);
-            RectI first = new RectI(x0, y0, x1, y1);
-            rooms.add(first);
-
-            for (int k = 1; k < modules; k++) {
-                if (!tryAttachModule(m, rng, rooms, safeRadius)) break;
-            }
-
-            addExteriorDoorsOnBounding(m, rooms, rng);
-
-            placed++;
-        }
+    public static GameMap randomBalanced(int w, int h, long seed, double coverageTarget, int minClusterDist, int minBlobSize, int maxBlobSize, int safeRadius) {
+        return randomBalanced(GenParams.of(w, h, seed, coverageTarget, minClusterDist, minBlobSize, maxBlobSize, safeRadius));
     }
 
-    private static int[] pickAndRemove(ArrayDeque<int[]> dq, int index) {
-        int size = dq.size();
-        int[][] arr = new int[size][2];
-        for (int i = 0; i < size; i++) arr[i] = dq.pollFirst();
-        int[] pick = arr[index];
-        for (int i = 0; i < size; i++) if (i != index) dq.addLast(arr[i]);
-        return pick;
+    public static GameMap randomBalanced(GenParams p) {
+        return MapGenerator.randomBalanced(p);
     }
 
-    private static int heavyBetween(Random rng, int a, int b) {
-        if (a >= b) return a;
-        double u = rng.nextDouble(), t = (u < 0.2) ? Math.pow(rng.nextDouble(), 2.4) : (u < 0.85) ? rng.nextDouble() : 1.0 - Math.pow(rng.nextDouble(), 2.0);
-        int v = a + (int) Math.round(t * (b - a));
-        return Math.min(b, Math.max(a, v));
+    // Misma generación por regiones que 'chunked' pero completa y repartida en 'threads' hilos
+    public static GameMap randomBalancedParallel(int w, int h, long seed, double coverageTarget, int minClusterDist, int minBlobSize, int maxBlobSize, int safeRadius, int threads) {
+        GenParams p = GenParams.of(w, h, seed, coverageTarget, minClusterDist, minBlobSize, maxBlobSize, safeRadius);
+        p.threads = threads;
+        return randomBalancedParallel(p);
     }
 
-    private static boolean areaClearOfWater(GameMap m, int x0, int y0, int x1, int y1) {
-        for (int y = y0; y <= y1; y++) {
-            for (int x = x0; x <= x1; x++) {
-                if (!inBounds(m, x, y) || m.tiles[y][x] == '~') return false;
-            }
-        }
-        return true;
+    public static GameMap randomBalancedParallel(GenParams p) {
+        return MapGenerator.randomBalancedParallel(p);
     }
 
-    private static void punchDoorsBetweenTouchingInteriors(GameMap m, Random rng) {
-        // Segmentos verticales (pared '║'): interiores a izquierda y derecha
-        for (int x = 1; x < m.w - 1; x++) {
-            int y = 1;
-            while (y < m.h - 1) {
-                if (m.tiles[y][x] == '║' && m.indoor[y][x - 1] && m.indoor[y][x + 1]) {
-                    int y0 = y;
-                    while (y < m.h - 1 && m.tiles[y][x] == '║' && m.indoor[y][x - 1] && m.indoor[y][x + 1]) y++;
-                    int y1 = y - 1;
-                    int yy = y0 + rng.nextInt(y1 - y0 + 1);
-                    setDoor(m, x, yy);
-                } else {
-                    y++;
-                }
-            }
-        }
-        // Segmentos horizontales (pared '═'): interiores arriba y abajo
-        for (int y = 1; y < m.h - 1; y++) {
-            int x = 1;
-            while (x < m.w - 1) {
-                if (m.tiles[y][x] == '═' && m.indoor[y - 1][x] && m.indoor[y + 1][x]) {
-                    int x0 = x;
-                    while (x < m.w - 1 && m.tiles[y][x] == '═' && m.indoor[y - 1][x] && m.indoor[y + 1][x]) x++;
-                    int x1 = x - 1;
-                    int xx = x0 + rng.nextInt(x1 - x0 + 1);
-                    setDoor(m, xx, y);
-                } else {
-                    x++;
-                }
-            }
-        }
+    // Mundo troceado y perezoso: el coste de arranque es sólo el de los chunks que se tocan
+    public static GameMap chunked(int w, int h, long seed) {
+        return chunked(new GenParams(w, h, seed));
     }
 
-    private static void buildCabin(GameMap m, int x0, int y0, int x1, int y1) {
-        drawCabinShell(m, x0, y0, x1, y1);
-        if ((x1 - x0 + 1) >= (y1 - y0 + 1)) setDoor(m, (x0 + x1) / 2, y1);
-        else setDoor(m, x1, (y0 + y1) / 2);
+    public static GameMap chunked(GenParams p) {
+        if (p.w < 5 || p.h < 5) throw new IllegalArgumentException("Mapa demasiado pequeño");
+        return new GameMap(p.w, p.h, new ChunkGenerator(p));
     }
 }
@@ -0,0 +1,57 @@
+package world;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleConsumer;
+
+// Parámetros de generación. Cualquier pasada se puede desactivar por nombre (ver GenPipeline) para
+// mapas de prueba baratos; si 'stats' no es null cada pasada apunta ahí tiempo, celdas y memoria.
+// 'progress' (opcional) recibe el avance 0..1 desde el hilo (o hilos, en modo paralelo) que genera; si se
+// bloquea, la generación espera: así se frena una generación de fondo. 'pool' (opcional, modo por regiones)
+// es dónde corren los chunks, p. ej. con hilos de prioridad baja; si es null se crea uno de 'threads' hilos.
+public final class GenParams {
+    public int w, h;
+    public long seed;
+    public double coverage = 0.14;
+    public int minClusterDist = 18;
+    public int minBlobSize = 5;
+    public int maxBlobSize = 55;
+    public int safeRadius = 6;
+    public int threads = 1; // sólo modo por regiones
+    public final Set<String> disabled = new TreeSet<>();
+    public GenStats stats;
+    public DoubleConsumer progress;
+    public ForkJoinPool pool; // no se cierra al acabar: es del llamador
+
+    public GenParams(int w, int h, long seed) {
+        this.w = w;
+        this.h = h;
+        this.seed = seed;
+    }
+
+    public static GenParams of(int w, int h, long seed, double coverage, int minClusterDist, int minBlobSize, int maxBlobSize, int safeRadius) {
+        GenParams p = new GenParams(w, h, seed);
+        p.coverage = coverage;
+        p.minClusterDist = minClusterDist;
+        p.minBlobSize = minBlobSize;
+        p.maxBlobSize = maxBlobSize;
+        p.safeRadius = safeRadius;
+        return p;
+    }
+
+    public GenParams without(String... passes) {
+        for (String s : passes) disabled.add(s);
+        return this;
+    }
+
+    public boolean enabled(String pass) {
+        return !disabled.contains(pass);
+    }
+
+    // todo lo que cambia la salida (la clave de la caché sale de aquí); 'threads', 'pool', 'stats' y 'progress' no cuentan
+    String describe() {
+        return w + "x" + h + '|' + seed + '|' + Double.doubleToLongBits(coverage) + '|' + minClusterDist + '|' + minBlobSize
+                + '|' + maxBlobSize + '|' + safeRadius + '|' + String.join(",", disabled);
+    }
+}
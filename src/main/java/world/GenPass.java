@@ -0,0 +1,24 @@
+package world;
+
+import java.util.function.Consumer;
+
+// Una pasada de generación: trabaja sobre la región del contexto y sólo escribe dentro de ella
+interface GenPass {
+    String name();
+
+    void run(GenPipeline.Context c);
+
+    static GenPass of(String name, Consumer<GenPipeline.Context> body) {
+        return new GenPass() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public void run(GenPipeline.Context c) {
+                body.accept(c);
+            }
+        };
+    }
+}
@@ -0,0 +1,159 @@
+package world;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import world.MapGenerator.RectI;
+import world.MapGenerator.River;
+
+// Lista ordenada de pasadas con nombre. Cada pasada saca su propio Random de (semilla, nombre), así que
+// desactivar una no altera el azar de las demás. Con params.stats != null se mide cada ejecución.
+// Las pasadas de cierre (finish) necesitan el mapa entero: corren una vez, después de todas las regiones,
+// sobre lo que éstas hayan dejado en el contexto (p. ej. los caminos entre todos los grupos de casas).
+final class GenPipeline {
+    static final String TERRAIN = "terrain";
+    static final String FOREST = "forest";
+    static final String BIOMES = "biomes";
+    static final String RIVER = "river";
+    static final String CLUSTERS = "clusters";
+    static final String CABINS = "cabins";
+    static final String DOORS = "doors";
+    static final String ROADS = "roads";
+    static final String ROCKS = "rocks";
+
+    // mismas densidades que el mapa completo (grupos/casas por celda) para regiones sueltas
+    private static final double CLUSTERS_PER_CELL = 1.0 / 16000.0;
+    private static final double CABINS_PER_CELL = 1.0 / 12000.0;
+
+    private final List<GenPass> passes = new ArrayList<>();
+    private final List<GenPass> closing = new ArrayList<>();
+
+    GenPipeline add(GenPass pass) {
+        passes.add(pass);
+        return this;
+    }
+
+    // pasada de cierre: sólo sobre el mapa entero, tras las de región
+    GenPipeline then(GenPass pass) {
+        closing.add(pass);
+        return this;
+    }
+
+    List<GenPass> passes() {
+        return passes;
+    }
+
+    // Estado de una ejecución: mapa, región, parámetros y lo que comparten todas las regiones (el río)
+    static final class Context {
+        final GameMap map;
+        final RectI reg;
+        final GenParams params;
+        final River river;
+        final long seed;     // del mapa (completo) o del chunk (por regiones)
+        final boolean whole; // true -> la región es el mapa entero
+        final List<RectI> buildings = new ArrayList<>(); // módulos estampados (para las puertas entre ellos)
+        final List<RectI> clusters = new ArrayList<>();  // contorno de cada grupo de casas (para los caminos)
+
+        Context(GameMap map, RectI reg, GenParams params, River river, long seed, boolean whole) {
+            this.map = map;
+            this.reg = reg;
+            this.params = params;
+            this.river = river;
+            this.seed = seed;
+            this.whole = whole;
+        }
+
+        Random rng(String pass) {
+            return new Random(ChunkGenerator.mix(seed ^ ChunkGenerator.mix(pass.hashCode())));
+        }
+
+        int area() {
+            return reg.w() * reg.h();
+        }
+    }
+
+    // pasadas de región; si la región es el mapa entero, también las de cierre
+    void run(Context c) {
+        int total = passes.size() + (c.whole ? closing.size() : 0);
+        for (int i = 0; i < passes.size(); i++) {
+            if (c.whole && c.params.progress != null) c.params.progress.accept((double) i / total);
+            runPass(passes.get(i), c);
+        }
+        if (!c.whole) return;
+        for (int i = 0; i < closing.size(); i++) {
+            if (c.params.progress != null) c.params.progress.accept((double) (passes.size() + i) / total);
+            runPass(closing.get(i), c);
+        }
+    }
+
+    // sólo las pasadas de cierre, cuando el mapa se ha generado por regiones ('c' es el mapa entero)
+    void finish(Context c) {
+        if (!c.whole) throw new IllegalArgumentException("Las pasadas de cierre van sobre el mapa entero");
+        for (GenPass pass : closing) runPass(pass, c);
+    }
+
+    private static void runPass(GenPass pass, Context c) {
+        GenStats stats = c.params.stats;
+        if (!c.params.enabled(pass.name())) return;
+        if (stats == null) {
+            pass.run(c);
+            return;
+        }
+        byte[] before = snapshot(c);
+        long a0 = GenStats.threadAllocated();
+        long t0 = System.nanoTime();
+        pass.run(c);
+        long dt = System.nanoTime() - t0;
+        long a1 = GenStats.threadAllocated();
+        stats.record(pass.name(), dt, changed(c, before), a0 < 0 ? -1 : a1 - a0);
+    }
+
+    private static byte[] snapshot(Context c) {
+        byte[] b = new byte[c.area()];
+        int i = 0;
+        for (int y = c.reg.y0; y <= c.reg.y1; y++)
+            for (int x = c.reg.x0; x <= c.reg.x1; x++) b[i++] = c.map.raw(x, y);
+        return b;
+    }
+
+    private static int changed(Context c, byte[] before) {
+        int n = 0, i = 0;
+        for (int y = c.reg.y0; y <= c.reg.y1; y++)
+            for (int x = c.reg.x0; x <= c.reg.x1; x++) if (c.map.raw(x, y) != before[i++]) n++;
+        return n;
+    }
+
+    // Pipeline estándar. En el mapa completo se usan los recuentos fijos de siempre; en una región suelta
+    // se escalan por área (densidad por celda) para que el mundo por chunks tenga la misma densidad.
+    // Los caminos son de cierre: el mundo perezoso (chunked) nunca ve el mapa entero y sale sin ellos.
+    static GenPipeline standard() {
+        return new GenPipeline()
+                .add(GenPass.of(TERRAIN, c -> MapGenerator.baseTerrain(c.map, c.reg, c.params.safeRadius)))
+                .add(GenPass.of(FOREST, c -> {
+                    GenParams p = c.params;
+                    int minBlob = Math.max(3, p.minBlobSize);
+                    MapGenerator.addForest(c.map, c.rng(FOREST), c.reg, Math.max(0.01, Math.min(0.45, p.coverage)), p.minClusterDist,
+                            minBlob, Math.max(minBlob, p.maxBlobSize), p.safeRadius);
+                }))
+                .add(GenPass.of(BIOMES, c -> MapGenerator.addBiomes(c.map, c.reg, c.params.seed, c.params.safeRadius)))
+                .add(GenPass.of(RIVER, c -> MapGenerator.addRiver(c.map, c.river, c.reg, c.params.safeRadius)))
+                .add(GenPass.of(CLUSTERS, c -> {
+                    Random rng = c.rng(CLUSTERS);
+                    int groups = c.whole ? Math.max(12, c.area() / 16000) + rng.nextInt(6) : MapGenerator.scaledCount(rng, c.area() * CLUSTERS_PER_CELL);
+                    MapGenerator.addCabinClusters(c.map, rng, c.reg, groups, c.params.safeRadius, c.buildings, c.clusters);
+                }))
+                .add(GenPass.of(CABINS, c -> {
+                    Random rng = c.rng(CABINS);
+                    int singles = c.whole ? Math.max(22, c.area() / 12000) + rng.nextInt(10) : MapGenerator.scaledCount(rng, c.area() * CABINS_PER_CELL);
+                    MapGenerator.addCabins(c.map, rng, c.reg, singles, c.params.safeRadius, c.whole, c.buildings);
+                }))
+                .add(GenPass.of(DOORS, c -> MapGenerator.punchDoorsBetweenTouchingInteriors(c.map, c.rng(DOORS), c.reg, c.buildings)))
+                .add(GenPass.of(ROCKS, c -> {
+                    int a = c.area();
+                    if (c.whole) MapGenerator.addRocks(c.map, c.rng(ROCKS), c.reg, Math.max(8, a / 270), Math.max(12, a / 200), 1, 7, c.params.safeRadius);
+                    else MapGenerator.addRocks(c.map, c.rng(ROCKS), c.reg, a / 270, a / 200, 1, 7, c.params.safeRadius);
+                }))
+                .then(GenPass.of(ROADS, c -> MapGenerator.addRoads(c.map, c.rng(ROADS), c.reg, c.clusters)));
+    }
+}
@@ -0,0 +1,63 @@
+package world;
+
+// Buffers reutilizables de la generación (uno por hilo): rejilla de visitados con sello de generación
+// (limpiarla es incrementar 'stamp', no rellenar el array), un int[] que hace de cola o de frontera y
+// tablas de enteros para las áreas sumadas de AreaCounts y campos de ruido para los biomas.
+// Las celdas se guardan como índice local de la región (y * ancho + x), sin objetos por celda.
+final class GenScratch {
+    private static final ThreadLocal<GenScratch> LOCAL = ThreadLocal.withInitial(GenScratch::new);
+
+    private int[] mark = new int[0];
+    private int stamp = 0;
+    int[] cells = new int[0];
+    private final BitLayer[] layers = new BitLayer[2];
+    private final int[][] tables = new int[4][];
+    private final float[][] fields = new float[2][];
+
+    static GenScratch get() {
+        return LOCAL.get();
+    }
+
+    // prepara una rejilla "vacía" de n celdas
+    void begin(int n) {
+        if (mark.length < n) {
+            mark = new int[n];
+            cells = new int[n];
+            stamp = 0;
+        }
+        if (++stamp == 0) { // desbordamiento del sello: ahora sí toca limpiar
+            java.util.Arrays.fill(mark, 0);
+            stamp = 1;
+        }
+    }
+
+    // capa de bits de trabajo 'slot' (0 o 1) con forma w x h, a 0
+    BitLayer layer(int slot, int w, int h) {
+        BitLayer b = layers[slot];
+        if (b == null) layers[slot] = b = new BitLayer(w, h);
+        else b.reset(w, h);
+        return b;
+    }
+
+    // tabla de trabajo 'slot' (0..3) de al menos n enteros, con contenido sin definir
+    int[] table(int slot, int n) {
+        int[] t = tables[slot];
+        if (t == null || t.length < n) tables[slot] = t = new int[n];
+        return t;
+    }
+
+    // campo de trabajo 'slot' (0 o 1) de al menos n floats (BiomeField), con contenido sin definir
+    float[] field(int slot, int n) {
+        float[] f = fields[slot];
+        if (f == null || f.length < n) fields[slot] = f = new float[n];
+        return f;
+    }
+
+    boolean marked(int i) {
+        return mark[i] == stamp;
+    }
+
+    void mark(int i) {
+        mark[i] = stamp;
+    }
+}
@@ -0,0 +1,59 @@
+package world;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Métricas por pasada acumuladas sobre todas sus ejecuciones (una por región en el modo por chunks)
+public final class GenStats {
+    public static final class Entry {
+        public final String pass;
+        public int runs;
+        public long nanos;        // tiempo de pared
+        public long cellsTouched; // celdas cuyo byte empaquetado cambió
+        public long allocBytes;   // -1 si la JVM no lo mide
+
+        Entry(String pass) {
+            this.pass = pass;
+        }
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    synchronized void record(String pass, long nanos, long cells, long alloc) {
+        Entry e = entries.computeIfAbsent(pass, Entry::new);
+        e.runs++;
+        e.nanos += nanos;
+        e.cellsTouched += cells;
+        e.allocBytes = (alloc < 0 || e.allocBytes < 0) ? -1 : e.allocBytes + alloc;
+    }
+
+    public synchronized List<Entry> entries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Entry e : entries.values()) {
+            sb.append(String.format("%-10s %5d runs %9.2f ms %10d celdas %9s%n", e.pass, e.runs, e.nanos / 1e6, e.cellsTouched,
+                    e.allocBytes < 0 ? "?" : (e.allocBytes >> 10) + " KB"));
+        }
+        return sb.toString();
+    }
+
+    // bytes reservados por el hilo actual hasta ahora (-1 si no está disponible)
+    static long threadAllocated() {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (mx instanceof com.sun.management.ThreadMXBean sun && sun.isThreadAllocatedMemorySupported())
+            return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+}
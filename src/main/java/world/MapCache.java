@@ -0,0 +1,130 @@
+package world;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Caché en disco de mapas generados. La generación es una función pura de sus parámetros, así que la clave es un
+// hash de todos ellos (más la versión del generador). Política LRU por fecha de último uso con tope de tamaño total.
+// Los ficheros usan el formato de MapFile. Es "best effort": cualquier fallo de E/S se traduce en regenerar,
+// nunca en un error de juego.
+public final class MapCache {
+    private static final String EXT = ".map";
+
+    private final Path dir;
+    private final long maxBytes;
+
+    public MapCache(Path dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    // ~/.deadscript/maps con 256 MB de tope
+    public static MapCache defaultCache() {
+        return new MapCache(Paths.get(System.getProperty("user.home"), ".deadscript", "maps"), 256L << 20);
+    }
+
+    public GameMap randomBalanced(int w, int h, long seed, double coverageTarget, int minClusterDist, int minBlobSize, int maxBlobSize, int safeRadius) {
+        return randomBalanced(GenParams.of(w, h, seed, coverageTarget, minClusterDist, minBlobSize, maxBlobSize, safeRadius));
+    }
+
+    public GameMap randomBalanced(GenParams p) {
+        String key = key("serial", p);
+        GameMap m = load(key, p.w, p.h);
+        if (m != null) return m;
+        m = GameMap.randomBalanced(p);
+        store(key, m);
+        return m;
+    }
+
+    public GameMap randomBalancedParallel(int w, int h, long seed, double coverageTarget, int minClusterDist, int minBlobSize, int maxBlobSize, int safeRadius, int threads) {
+        GenParams p = GenParams.of(w, h, seed, coverageTarget, minClusterDist, minBlobSize, maxBlobSize, safeRadius);
+        p.threads = threads;
+        return randomBalancedParallel(p);
+    }
+
+    // el número de hilos no entra en la clave: la salida paralela no depende de él
+    public GameMap randomBalancedParallel(GenParams p) {
+        String key = key("regions", p);
+        GameMap m = load(key, p.w, p.h);
+        if (m != null) return m;
+        m = GameMap.randomBalancedParallel(p);
+        store(key, m);
+        return m;
+    }
+
+    static String key(String mode, GenParams p) {
+        String s = mode + '|' + MapGenerator.VERSION + '|' + p.describe();
+        try {
+            byte[] d = MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(40);
+            for (int i = 0; i < 20; i++) sb.append(String.format("%02x", d[i]));
+            return sb.toString();
+        } catch (Exception e) {
+            return Integer.toHexString(s.hashCode()) + Long.toHexString(p.seed);
+        }
+    }
+
+    private Path file(String key) {
+        return dir.resolve(key + EXT);
+    }
+
+    private GameMap load(String key, int w, int h) {
+        Path f = file(key);
+        if (!Files.isRegularFile(f)) return null;
+        try {
+            GameMap m = MapFile.read(f);
+            if (m.w != w || m.h != h) throw new IOException("Dimensiones distintas");
+            Files.setLastModifiedTime(f, FileTime.fromMillis(System.currentTimeMillis())); // LRU: marca de uso
+            return m;
+        } catch (Exception e) {
+            try {
+                Files.deleteIfExists(f); // corrupto o de otro formato
+            } catch (Exception ignored) {
+            }
+            return null;
+        }
+    }
+
+    private void store(String key, GameMap m) {
+        try {
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, key, ".tmp");
+            MapFile.write(m, tmp);
+            Files.move(tmp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            evict();
+        } catch (Exception ignored) {
+        }
+    }
+
+    // borra los menos usados hasta quedar por debajo del tope
+    void evict() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> s = Files.list(dir)) {
+            s.filter(p -> p.getFileName().toString().endsWith(EXT)).forEach(files::add);
+        }
+        long total = 0;
+        for (Path p : files) total += Files.size(p);
+        if (total <= maxBytes) return;
+
+        files.sort(Comparator.comparingLong(p -> {
+            try {
+                return Files.getLastModifiedTime(p).toMillis();
+            } catch (IOException e) {
+                return 0L;
+            }
+        }));
+        for (Path p : files) {
+            if (total <= maxBytes) break;
+            long sz = Files.size(p);
+            Files.deleteIfExists(p);
+            total -= sz;
+        }
+    }
+}
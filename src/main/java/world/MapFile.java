@@ -0,0 +1,130 @@
+package world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+// Formato binario de mapa, pensado para leerse con FileChannel.map:
+//   página 0  : cabecera (magic, versión, w, h, CHUNK_SHIFT, offset/longitud de capa y de metadatos de salas)
+//   páginas 1+: capa de celdas en orden de chunk, CHUNK*CHUNK bytes por chunk = una página de 4 KB por chunk.
+//               Cada byte es la celda empaquetada de GameMap: tipo en el nibble bajo, flags (paso, visión,
+//               interior, explorado) en el alto.
+//   opcional  : bloque de metadatos de salas (longitud 0 si no hay)
+// Al abrir sólo se lee la cabecera; cada chunk se copia del mapeo la primera vez que se consulta, así que las
+// páginas se van cargando según se mueve la cámara y la caché de páginas del SO se comparte entre procesos.
+public final class MapFile {
+    private static final int MAGIC = 0x44534D46; // "DSMF"
+    private static final int VERSION = 1;
+    private static final int HEADER = 4096;
+    private static final int CHUNK_BYTES = GameMap.CHUNK * GameMap.CHUNK;
+    private static final int SEGMENT_CHUNKS = 1 << 18; // 1 GB por mapeo (un MappedByteBuffer no pasa de 2 GB)
+
+    private MapFile() {
+    }
+
+    public static void write(GameMap m, Path file) throws IOException {
+        write(m, file, null);
+    }
+
+    // ojo: en un mapa perezoso escribir obliga a generar todos los chunks
+    public static void write(GameMap m, Path file, byte[] rooms) throws IOException {
+        int n = m.chunksW * m.chunksH;
+        long layerLen = (long) n * CHUNK_BYTES;
+        long roomsLen = rooms == null ? 0 : rooms.length;
+
+        ByteBuffer head = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        head.putInt(MAGIC).putInt(VERSION).putInt(m.w).putInt(m.h).putInt(GameMap.CHUNK_SHIFT);
+        head.putLong(HEADER).putLong(layerLen).putLong(HEADER + layerLen).putLong(roomsLen);
+        head.clear();
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(ch, head);
+            ByteBuffer buf = ByteBuffer.allocate(CHUNK_BYTES * 64);
+            for (int ci = 0; ci < n; ci++) {
+                if (buf.remaining() < CHUNK_BYTES) {
+                    buf.flip();
+                    writeFully(ch, buf);
+                    buf.clear();
+                }
+                buf.put(m.chunkData(ci));
+            }
+            buf.flip();
+            writeFully(ch, buf);
+            if (rooms != null) writeFully(ch, ByteBuffer.wrap(rooms));
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) ch.write(b);
+    }
+
+    // Abre el mapa sin leer la capa: cada chunk se trae del mapeo al tocarlo por primera vez
+    public static GameMap open(Path file) throws IOException {
+        Reader r = new Reader(file);
+        return new GameMap(r.w, r.h, r);
+    }
+
+    // Lo mismo pero copiando ya todos los chunks (mapa completo en memoria)
+    public static GameMap read(Path file) throws IOException {
+        Reader r = new Reader(file);
+        GameMap m = new GameMap(r.w, r.h);
+        for (int cy = 0; cy < m.chunksH; cy++)
+            for (int cx = 0; cx < m.chunksW; cx++) r.generate(m, cx, cy);
+        m.rooms().labelAll();
+        return m;
+    }
+
+    // bloque de metadatos de salas tal cual se escribió (vacío si no hay)
+    public static byte[] readRooms(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = readHeader(ch);
+            long off = head.getLong(36), len = head.getLong(44);
+            ByteBuffer out = ByteBuffer.allocate((int) len);
+            while (out.hasRemaining()) if (ch.read(out, off + out.position()) < 0) throw new IOException("Metadatos de salas truncados");
+            return out.array();
+        }
+    }
+
+    private static ByteBuffer readHeader(FileChannel ch) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(52).order(ByteOrder.LITTLE_ENDIAN);
+        while (head.hasRemaining()) if (ch.read(head, head.position()) < 0) throw new IOException("Cabecera de mapa truncada");
+        if (head.getInt(0) != MAGIC) throw new IOException("No es un fichero de mapa");
+        if (head.getInt(4) != VERSION) throw new IOException("Versión de mapa no soportada: " + head.getInt(4));
+        if (head.getInt(16) != GameMap.CHUNK_SHIFT) throw new IOException("Tamaño de chunk incompatible");
+        return head;
+    }
+
+    // ChunkSource respaldado por el fichero mapeado (sólo lectura)
+    static final class Reader implements ChunkSource {
+        final int w, h;
+        private final MappedByteBuffer[] segments;
+
+        Reader(Path file) throws IOException {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer head = readHeader(ch);
+                w = head.getInt(8);
+                h = head.getInt(12);
+                long off = head.getLong(20), len = head.getLong(28);
+                int n = ((w + GameMap.CHUNK - 1) >> GameMap.CHUNK_SHIFT) * ((h + GameMap.CHUNK - 1) >> GameMap.CHUNK_SHIFT);
+                if (len != (long) n * CHUNK_BYTES || off + len > ch.size()) throw new IOException("Capa de mapa truncada");
+
+                // el mapeo sigue vivo después de cerrar el canal
+                segments = new MappedByteBuffer[(n + SEGMENT_CHUNKS - 1) / SEGMENT_CHUNKS];
+                for (int s = 0; s < segments.length; s++) {
+                    int chunks = Math.min(SEGMENT_CHUNKS, n - s * SEGMENT_CHUNKS);
+                    segments[s] = ch.map(FileChannel.MapMode.READ_ONLY, off + (long) s * SEGMENT_CHUNKS * CHUNK_BYTES, (long) chunks * CHUNK_BYTES);
+                }
+            }
+        }
+
+        @Override
+        public void generate(GameMap map, int cx, int cy) {
+            int ci = cy * map.chunksW + cx;
+            // get absoluto: no toca la posición del buffer, seguro aunque carguen varios hilos
+            segments[ci / SEGMENT_CHUNKS].get((ci % SEGMENT_CHUNKS) * CHUNK_BYTES, map.chunkData(ci));
+        }
+    }
+}
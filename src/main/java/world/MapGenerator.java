@@ -0,0 +1,1088 @@
+package world;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Generación procedural. Todas las pasadas trabajan sobre una región (RectI, inclusiva):
+// el mapa completo en randomBalanced o un único chunk en ChunkGenerator. El orden y los nombres
+// de las pasadas están en GenPipeline; aquí quedan los algoritmos.
+final class MapGenerator {
+    // súbela cuando cambie la salida de cualquier pasada: invalida los mapas cacheados en disco
+    static final int VERSION = 7;
+
+    // biomas: filas por lote de ruido y umbrales de los campos (0..1, alrededor de 0.5)
+    private static final int BIOME_ROWS = 64;
+    private static final float BIOME_HILLS = 0.64f, BIOME_MARSH = 0.62f, BIOME_CLEARING = 0.38f, BIOME_DENSE = 0.56f;
+
+    // caminos: vecinos más cercanos por grupo que entran en Kruskal (se dobla si el grafo sale partido)
+    private static final int ROAD_NEIGHBOURS = 4;
+
+    private MapGenerator() {
+    }
+
+    // Mapa completo: la región es todo el mapa y el pipeline corre una sola vez
+    static GameMap randomBalanced(GenParams p) {
+        if (p.w < 5 || p.h < 5) throw new IllegalArgumentException("Mapa demasiado pequeño");
+        GameMap m = new GameMap(p.w, p.h);
+        RectI all = new RectI(0, 0, p.w - 1, p.h - 1);
+        GenPipeline.standard().run(new GenPipeline.Context(m, all, p, River.forSeed(p.seed, p.w, p.h), p.seed, true));
+        m.rooms().labelAll();
+        if (p.progress != null) p.progress.accept(1.0);
+        return m;
+    }
+
+    // Modo paralelo: cada chunk es una región con sus propias semillas (ChunkGenerator), así que el resultado
+    // es idéntico para la misma semilla con cualquier número de hilos. Después, en un solo hilo, los caminos
+    // unen los grupos de casas de todos los chunks (en orden de chunk). No es el mapa de randomBalanced: las
+    // casas no cruzan chunks y los recuentos van por densidad. El mundo perezoso 'chunked' es esto sin caminos.
+    static GameMap randomBalancedParallel(GenParams p) {
+        if (p.w < 5 || p.h < 5) throw new IllegalArgumentException("Mapa demasiado pequeño");
+        ChunkGenerator gen = new ChunkGenerator(p);
+        GameMap m = new GameMap(p.w, p.h);
+
+        ForkJoinPool pool = p.pool != null ? p.pool : new ForkJoinPool(Math.max(1, p.threads));
+        try {
+            int total = m.chunksW * m.chunksH;
+            AtomicInteger done = new AtomicInteger();
+            List<ForkJoinTask<List<RectI>>> tasks = new ArrayList<>(total);
+            for (int cy = 0; cy < m.chunksH; cy++) {
+                for (int cx = 0; cx < m.chunksW; cx++) {
+                    int fx = cx, fy = cy;
+                    tasks.add(pool.submit(() -> { // cada tarea sólo lee/escribe su propio chunk
+                        List<RectI> c = gen.region(m, fx, fy);
+                        if (p.progress != null) p.progress.accept((double) done.incrementAndGet() / total);
+                        return c;
+                    }));
+                }
+            }
+            List<RectI> clusters = new ArrayList<>();
+            for (ForkJoinTask<List<RectI>> t : tasks) clusters.addAll(t.join());
+            gen.finish(m, clusters);
+        } finally {
+            if (pool != p.pool) pool.shutdown();
+        }
+        m.rooms().labelAll();
+        return m;
+    }
+
+    // suelo base, borde de árboles y claro de aparición
+    static void baseTerrain(GameMap m, RectI reg, int safeRadius) {
+        for (int y = reg.y0; y <= reg.y1; y++) {
+            for (int x = reg.x0; x <= reg.x1; x++) {
+                if (x == 0 || y == 0 || x == m.w - 1 || y == m.h - 1) setTree(m, x, y);
+                else setFloor(m, x, y);
+            }
+        }
+        carveDisk(m, reg, m.w / 2, m.h / 2, safeRadius);
+    }
+
+    // biomas: dos campos de ruido (altura y humedad) deciden claros, bosque cerrado, marismas y colinas de roca.
+    // Todo depende de la semilla del mapa y de la casilla, no de la región: los chunks empalman sin costuras.
+    static void addBiomes(GameMap m, RectI reg, long seed, int safeRadius) {
+        long hs = biomeSeed(seed, "height"), ms = biomeSeed(seed, "moisture"), ds = biomeSeed(seed, "dither");
+        int cx = m.w / 2, cy = m.h / 2, clear2 = (safeRadius + 3) * (safeRadius + 3);
+        int w = reg.w();
+        GenScratch sc = GenScratch.get();
+        float[] height = sc.field(0, w * BIOME_ROWS), moist = sc.field(1, w * BIOME_ROWS);
+        for (int by = reg.y0; by <= reg.y1; by += BIOME_ROWS) {
+            int rows = Math.min(BIOME_ROWS, reg.y1 - by + 1);
+            BiomeField.fill(hs, reg.x0, by, w, rows, height);
+            BiomeField.fill(ms, reg.x0, by, w, rows, moist);
+            for (int r = 0; r < rows; r++) {
+                int y = by + r;
+                if (y == 0 || y == m.h - 1) continue;
+                for (int x = Math.max(1, reg.x0); x <= Math.min(m.w - 2, reg.x1); x++) {
+                    if (dist2(x, y, cx, cy) <= clear2) continue;
+                    int t = m.type(x, y);
+                    if (t != Tiles.FLOOR && t != Tiles.TREE) continue;
+                    float e = height[r * w + x - reg.x0], q = moist[r * w + x - reg.x0];
+                    if (e > BIOME_HILLS) { // colinas: roca cada vez más densa hacia la cima, con pasos entre medias
+                        if (BiomeField.cell(ds, x, y) < Math.min(0.55f, (e - BIOME_HILLS) * 5f)) setRock(m, x, y);
+                    } else if (q > BIOME_MARSH && e < 0.45f) { // marisma: charcos sueltos entre la hierba
+                        float u = BiomeField.cell(ds, x, y);
+                        if (u < 0.22f) setWater(m, x, y);
+                        else if (t == Tiles.TREE && u < 0.6f) setFloor(m, x, y);
+                    } else if (q < BIOME_CLEARING) { // claros: se aclara el bosque
+                        if (t == Tiles.TREE && BiomeField.cell(ds, x, y) < (BIOME_CLEARING - q) * 12f) setFloor(m, x, y);
+                    } else if (q > BIOME_DENSE && t == Tiles.FLOOR) { // bosque cerrado
+                        if (BiomeField.cell(ds, x, y) < (q - BIOME_DENSE) * 2.5f) setTree(m, x, y);
+                    }
+                }
+            }
+        }
+    }
+
+    private static long biomeSeed(long seed, String field) {
+        return ChunkGenerator.mix(seed ^ ChunkGenerator.mix(field.hashCode()));
+    }
+
+    // bosque (blobs)
+    static void addForest(GameMap m, Random rng, RectI reg, double coverageTarget, int minClusterDist, int minBlobSize, int maxBlobSize, int safeRadius) {
+        int cx = m.w / 2, cy = m.h / 2;
+        int interiorArea = (reg.w() - 2) * (reg.h() - 2);
+        int targetTrees = (int) Math.round(coverageTarget * interiorArea);
+        int placedTrees = 0;
+        int margin = 2;
+
+        // semillas a distancia >= minClusterDist entre sí y fuera del claro de aparición; se recorren en orden
+        // aleatorio para que el bosque quede repartido por toda la región aunque el cupo se llene antes
+        int inset = margin + 1;
+        int[] seeds = poissonSeeds(rng, reg.x0 + inset, reg.y0 + inset, reg.x1 - inset, reg.y1 - inset, Math.max(1, minClusterDist), cx, cy, (safeRadius + 1) * (safeRadius + 1));
+        for (int i = seeds.length - 1; i > 0; i--) {
+            int j = rng.nextInt(i + 1), t = seeds[i];
+            seeds[i] = seeds[j];
+            seeds[j] = t;
+        }
+        int sw = reg.w() - 2 * inset;
+        for (int i = 0; i < seeds.length && placedTrees < targetTrees; i++) {
+            int x = reg.x0 + inset + seeds[i] % sw, y = reg.y0 + inset + seeds[i] / sw;
+            int blobTarget = heavyBetween(rng, minBlobSize, maxBlobSize);
+            placedTrees += growTreeBlob(m, rng, reg, x, y, blobTarget, margin, cx, cy, safeRadius, targetTrees - placedTrees);
+        }
+    }
+
+    // Muestreo de disco de Poisson (Bridson) en el rectángulo [x0..x1]x[y0..y1]: cada punto nuevo se prueba en
+    // el anillo [r, 2r) de uno activo al azar (POISSON_K intentos antes de retirarlo) y la rejilla de fondo, de
+    // lado r/√2, deja la comprobación de vecinos en unas pocas cubetas. Lineal en el área. Se excluye el disco
+    // de radio² safeR2 alrededor de (cx, cy). Devuelve índices locales (y - y0) * ancho + (x - x0).
+    private static int[] poissonSeeds(Random rng, int x0, int y0, int x1, int y1, int r, int cx, int cy, int safeR2) {
+        int w = x1 - x0 + 1, h = y1 - y0 + 1;
+        if (w <= 0 || h <= 0) return new int[0];
+        double cell = Math.max(1.0, r / Math.sqrt(2.0));
+        int gw = (int) (w / cell) + 1, gh = (int) (h / cell) + 1;
+        int reach = (int) Math.ceil(r / cell); // cubetas a mirar a cada lado
+        int[] head = new int[gw * gh];
+        Arrays.fill(head, -1);
+        int[] pts = new int[64], next = new int[64], active = new int[64];
+        int n = 0, na = 0;
+        int r2 = r * r;
+
+        for (int t = 0; t < POISSON_K && n == 0; t++) {
+            int x = x0 + rng.nextInt(w), y = y0 + rng.nextInt(h);
+            if (dist2(x, y, cx, cy) <= safeR2) continue;
+            int g = (int) ((y - y0) / cell) * gw + (int) ((x - x0) / cell);
+            pts[0] = (y - y0) * w + (x - x0);
+            next[0] = -1;
+            head[g] = 0;
+            active[na++] = 0;
+            n = 1;
+        }
+
+        while (na > 0) {
+            int ai = rng.nextInt(na), s = pts[active[ai]];
+            int sx = x0 + s % w, sy = y0 + s / w;
+            boolean found = false;
+            for (int t = 0; t < POISSON_K && !found; t++) {
+                double ang = rng.nextDouble() * 2 * Math.PI, rad = r * (1 + rng.nextDouble());
+                int x = (int) Math.round(sx + Math.cos(ang) * rad), y = (int) Math.round(sy + Math.sin(ang) * rad);
+                if (x < x0 || y < y0 || x > x1 || y > y1 || dist2(x, y, cx, cy) <= safeR2) continue;
+
+                int gx = (int) ((x - x0) / cell), gy = (int) ((y - y0) / cell);
+                boolean farEnough = true;
+                for (int by = Math.max(0, gy - reach); farEnough && by <= Math.min(gh - 1, gy + reach); by++) {
+                    for (int bx = Math.max(0, gx - reach); farEnough && bx <= Math.min(gw - 1, gx + reach); bx++) {
+                        for (int k = head[by * gw + bx]; k >= 0; k = next[k]) {
+                            if (dist2(x, y, x0 + pts[k] % w, y0 + pts[k] / w) < r2) {
+                                farEnough = false;
+                                break;
+                            }
+                        }
+                    }
+                }
+                if (!farEnough) continue;
+
+                if (n == pts.length) {
+                    pts = Arrays.copyOf(pts, n * 2);
+                    next = Arrays.copyOf(next, n * 2);
+                    active = Arrays.copyOf(active, n * 2);
+                }
+                int g = gy * gw + gx;
+                pts[n] = (y - y0) * w + (x - x0);
+                next[n] = head[g];
+                head[g] = n;
+                active[na++] = n++;
+                found = true;
+            }
+            if (!found) active[ai] = active[--na];
+        }
+        return Arrays.copyOf(pts, n);
+    }
+
+    // tiles
+    private static void setTree(GameMap m, int x, int y) {
+        m.put(x, y, Tiles.TREE);
+    }
+
+    private static void setFloor(GameMap m, int x, int y) {
+        m.put(x, y, Tiles.FLOOR);
+    }
+
+    private static void setWater(GameMap m, int x, int y) {
+        m.put(x, y, Tiles.WATER);
+    }
+
+    private static void setRock(GameMap m, int x, int y) {
+        m.put(x, y, Tiles.ROCK);
+    }
+
+    private static void setCabinWall(GameMap m, int x, int y, int wall) {
+        m.put(x, y, wall);
+    }
+
+    private static void setDoor(GameMap m, int x, int y) {
+        m.put(x, y, Tiles.DOOR);
+    }
+
+    // util
+    private static boolean inInterior(GameMap m, int x, int y, int margin) {
+        return x >= (1 + margin) && y >= (1 + margin) && x < (m.w - 1 - margin) && y < (m.h - 1 - margin);
+    }
+
+    private static int dist2(int x1, int y1, int x2, int y2) {
+        int dx = x1 - x2, dy = y1 - y2;
+        return dx * dx + dy * dy;
+    }
+
+    private static void carveDisk(GameMap m, RectI reg, int cx, int cy, int r) {
+        int r2 = r * r;
+        int x0 = Math.max(Math.max(1, reg.x0), cx - r), x1 = Math.min(Math.min(m.w - 2, reg.x1), cx + r);
+        int y0 = Math.max(Math.max(1, reg.y0), cy - r), y1 = Math.min(Math.min(m.h - 2, reg.y1), cy + r);
+        for (int y = y0; y <= y1; y++) for (int x = x0; x <= x1; x++) if (dist2(x, y, cx, cy) <= r2) setFloor(m, x, y);
+    }
+
+    // reparto de un valor esperado fraccionario: 2.3 -> 2 ó 3 (30%)
+    static int scaledCount(Random rng, double expected) {
+        int n = (int) expected;
+        return n + (rng.nextDouble() < expected - n ? 1 : 0);
+    }
+
+    // bosque
+    private static final int POISSON_K = 30; // intentos por punto activo antes de retirarlo (Bridson)
+    private static final int[] DX_H = {1, -1, 0, 0}, DY_H = {0, 0, 1, -1}; // horizontal primero
+    private static final int[] DX_V = {0, 0, 1, -1}, DY_V = {1, -1, 0, 0}; // vertical primero
+
+    private static int growTreeBlob(GameMap m, Random rng, RectI reg, int sx, int sy, int targetSize, int margin, int cx, int cy, int safeRadius, int budget) {
+        if (budget <= 0 || !inInterior(m, sx, sy, margin) || !m.walkable(sx, sy)) return 0;
+        if (dist2(sx, sy, cx, cy) <= (safeRadius + 1) * (safeRadius + 1)) return 0;
+
+        // frontera en int[] con borrado por intercambio (O(1)); visitados con sello
+        int rw = reg.w();
+        GenScratch sc = GenScratch.get();
+        sc.begin(rw * reg.h());
+        int[] frontier = sc.cells;
+        int n = 0;
+        int si = (sy - reg.y0) * rw + (sx - reg.x0);
+        frontier[n++] = si;
+        sc.mark(si);
+
+        int placed = 0, placedThis = 0, minX = sx, maxX = sx, minY = sy, maxY = sy;
+
+        while (n > 0 && placedThis < targetSize) {
+            int idx = rng.nextInt(n);
+            int cur = frontier[idx];
+            frontier[idx] = frontier[--n];
+            int x = reg.x0 + cur % rw, y = reg.y0 + cur / rw;
+
+            if (m.walkable(x, y) && inInterior(m, x, y, margin) && dist2(x, y, cx, cy) > (safeRadius + 1) * (safeRadius + 1)) {
+                setTree(m, x, y);
+                placed++;
+                placedThis++;
+                if (x < minX) minX = x;
+                if (x > maxX) maxX = x;
+                if (y < minY) minY = y;
+                if (y > maxY) maxY = y;
+                if (placed >= budget || placedThis >= targetSize) break;
+            }
+
+            double progress = Math.min(1.0, placedThis / Math.max(1.0, (double) targetSize));
+            double p = 0.82 - 0.55 * progress;
+            boolean hFirst = rng.nextBoolean();
+            int[] dxs = hFirst ? DX_H : DX_V, dys = hFirst ? DY_H : DY_V;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + dxs[d], ny = y + dys[d];
+                if (!reg.contains(nx, ny) || !inInterior(m, nx, ny, margin)) continue;
+                int ni = (ny - reg.y0) * rw + (nx - reg.x0);
+                if (sc.marked(ni) || !m.walkable(nx, ny)) continue;
+                if (rng.nextDouble() < p) {
+                    sc.mark(ni);
+                    frontier[n++] = ni;
+                }
+            }
+        }
+
+        if (placedThis > 0 && placed < budget) {
+            int pad = 1;
+            int x0 = Math.max(Math.max(1, reg.x0), minX - pad), y0 = Math.max(Math.max(1, reg.y0), minY - pad);
+            int x1 = Math.min(Math.min(m.w - 2, reg.x1), maxX + pad), y1 = Math.min(Math.min(m.h - 2, reg.y1), maxY + pad);
+            placed += fillHolesRegionWithTrees(m, x0, y0, x1, y1, budget - placed);
+        }
+        return placed;
+    }
+
+    // rellena con árboles los huecos transitables del rectángulo que no conectan con su borde
+    // (relleno por capas de bits: 64 celdas por palabra en vez de una cola celda a celda)
+    private static int fillHolesRegionWithTrees(GameMap m, int x0, int y0, int x1, int y1, int budget) {
+        if (budget <= 0) return 0;
+        int rw = x1 - x0 + 1, rh = y1 - y0 + 1;
+        if (rw <= 0 || rh <= 0) return 0;
+        GenScratch sc = GenScratch.get();
+        BitLayer walk = sc.layer(0, rw, rh), reach = sc.layer(1, rw, rh);
+        m.walkWindow(walk, x0, y0);
+
+        // semillas: el borde transitable
+        for (int x = 0; x < rw; x++) {
+            if (walk.get(x, 0)) reach.set(x, 0);
+            if (walk.get(x, rh - 1)) reach.set(x, rh - 1);
+        }
+        for (int y = 0; y < rh; y++) {
+            if (walk.get(0, y)) reach.set(0, y);
+            if (walk.get(rw - 1, y)) reach.set(rw - 1, y);
+        }
+        reach.floodWithin(walk);
+        BitLayer holes = walk.andNot(reach);
+
+        int filled = 0;
+        for (int c = holes.nextSetBit(0); c >= 0; c = holes.nextSetBit(c + 1)) {
+            setTree(m, x0 + c % rw, y0 + c / rw);
+            if (++filled >= budget) return filled;
+        }
+        return filled;
+    }
+
+    // río: curva senoidal global, evaluable celda a celda para pintar cualquier región por separado
+    static final class River {
+        final boolean horizontal;
+        final int halfW;
+        final int w, h;
+        final int[] center; // centro del cauce por columna (horizontal) o por fila (vertical)
+
+        private River(boolean horizontal, int halfW, int w, int h, int[] center) {
+            this.horizontal = horizontal;
+            this.halfW = halfW;
+            this.w = w;
+            this.h = h;
+            this.center = center;
+        }
+
+        static River random(Random rng, int w, int h) {
+            if (w < 40 || h < 30) return null;
+            boolean horizontal = rng.nextBoolean();
+            double amp = (horizontal ? h : w) * (0.08 + rng.nextDouble() * 0.06);
+            double freq = (0.015 + rng.nextDouble() * 0.015);
+            double phase = rng.nextDouble() * Math.PI * 2.0;
+            int base = horizontal ? (int) (h * (0.25 + rng.nextDouble() * 0.5)) : (int) (w * (0.25 + rng.nextDouble() * 0.5));
+            int halfW = 2 + rng.nextInt(3);
+
+            int[] center = new int[horizontal ? w : h];
+            for (int i = 0; i < center.length; i++) center[i] = base + (int) Math.round(Math.sin(i * freq + phase) * amp);
+            return new River(horizontal, halfW, w, h, center);
+        }
+
+        boolean isWater(int x, int y) {
+            if (x <= 0 || y <= 0 || x >= w - 1 || y >= h - 1) return false;
+            return horizontal ? Math.abs(y - center[x]) <= halfW : Math.abs(x - center[y]) <= halfW;
+        }
+
+        // el río depende sólo de la semilla del mundo, no del modo de generación
+        static River forSeed(long seed, int w, int h) {
+            return random(new Random(ChunkGenerator.mix(seed ^ 0x5EEDL)), w, h);
+        }
+
+        boolean nearWater(int x, int y) {
+            for (int yy = y - 1; yy <= y + 1; yy++)
+                for (int xx = x - 1; xx <= x + 1; xx++)
+                    if (isWater(xx, yy)) return true;
+            return false;
+        }
+    }
+
+    static void addRiver(GameMap m, River river, RectI reg, int safeRadius) {
+        if (river == null) return;
+        for (int y = reg.y0; y <= reg.y1; y++)
+            for (int x = reg.x0; x <= reg.x1; x++)
+                if (river.isWater(x, y)) setWater(m, x, y);
+        // ribera
+        for (int y = reg.y0; y <= reg.y1; y++)
+            for (int x = reg.x0; x <= reg.x1; x++)
+                if (m.type(x, y) == Tiles.TREE && river.nearWater(x, y)) setFloor(m, x, y);
+        carveDisk(m, reg, m.w / 2, m.h / 2, safeRadius);
+    }
+
+    // rocas
+    static void addRocks(GameMap m, Random rng, RectI reg, int minGroups, int maxGroups, int sizeMin, int sizeMax, int safeRadius) {
+        // saneo parámetros
+        sizeMin = Math.max(1, sizeMin);
+        sizeMax = Math.max(sizeMin, sizeMax);
+        minGroups = Math.max(1, minGroups);
+        maxGroups = Math.max(minGroups, maxGroups);
+
+        int groups = minGroups + rng.nextInt(maxGroups - minGroups + 1);
+        int placedGroups = 0;
+        int attempts = groups * 30; // margen de intentos
+        int margin = 1;
+        int cx = m.w / 2, cy = m.h / 2;
+        int safe2 = (safeRadius + 1) * (safeRadius + 1);
+
+        while (placedGroups < groups && attempts-- > 0) {
+            // semilla en interior, sobre suelo libre
+            int x = reg.x0 + margin + rng.nextInt(Math.max(1, reg.w() - 2 * margin));
+            int y = reg.y0 + margin + rng.nextInt(Math.max(1, reg.h() - 2 * margin));
+            if (!inInterior(m, x, y, margin)) continue;
+            if (m.type(x, y) != Tiles.FLOOR) continue;       // no agua/árbol/pared
+            if (m.indoor(x, y)) continue;             // no interiores
+            if (dist2(x, y, cx, cy) <= safe2) continue;
+
+            int target = sizeMin + rng.nextInt(sizeMax - sizeMin + 1);
+            int got = sprinkleRockMicroBlob(m, rng, reg, x, y, target, cx, cy, safe2);
+            if (got > 0) placedGroups++;
+        }
+
+        // fallback mínimo por si acaso
+        if (placedGroups == 0) {
+            for (int y = Math.max(1, reg.y0); y <= Math.min(m.h - 2, reg.y1); y++)
+                for (int x = Math.max(1, reg.x0); x <= Math.min(m.w - 2, reg.x1); x++) {
+                    if (m.type(x, y) == Tiles.FLOOR && !m.indoor(x, y) && dist2(x, y, cx, cy) > safe2) {
+                        setRock(m, x, y);
+                        return;
+                    }
+                }
+        }
+    }
+
+    // 8 direcciones para formar grupitos compactos
+    private static final int[] DX8 = {1, -1, 0, 0, 1, 1, -1, -1}, DY8 = {0, 0, 1, -1, 1, -1, 1, -1};
+
+    private static int sprinkleRockMicroBlob(GameMap m, Random rng, RectI reg, int sx, int sy, int target, int cx, int cy, int safe2) {
+        int placed = 0, steps = 0;
+        int rw = reg.w();
+        GenScratch sc = GenScratch.get();
+        sc.begin(rw * reg.h());
+        int[] q = sc.cells;
+        int head = 0, tail = 0;
+        int si = (sy - reg.y0) * rw + (sx - reg.x0);
+        q[tail++] = si;
+        sc.mark(si);
+
+        while (head < tail && placed < target && steps < target * 12) {
+            steps++;
+            int cur = q[head++];
+            int x = reg.x0 + cur % rw, y = reg.y0 + cur / rw;
+
+            if (m.type(x, y) == Tiles.FLOOR && !m.indoor(x, y) && dist2(x, y, cx, cy) > safe2) {
+                setRock(m, x, y);
+                placed++;
+            }
+
+            // expansión moderada (≈40%) para mantener grupos pequeños y orgánicos
+            for (int d = 0; d < 8; d++) {
+                if (rng.nextDouble() > 0.25) continue;
+                int nx = x + DX8[d], ny = y + DY8[d];
+                if (!reg.contains(nx, ny)) continue;
+                int ni = (ny - reg.y0) * rw + (nx - reg.x0);
+                if (sc.marked(ni)) continue;
+                if (m.type(nx, ny) != Tiles.FLOOR || m.indoor(nx, ny)) continue;
+                sc.mark(ni);
+                q[tail++] = ni;
+            }
+        }
+        return placed;
+    }
+
+
+    // cabañas
+    static void addCabins(GameMap m, Random rng, RectI reg, int count, int safeRadius, boolean guaranteeOne, java.util.List<RectI> built) {
+        if (count <= 0 && !guaranteeOne) return;
+        int target = Math.max(1, count);
+        int tries = target * 60;
+        int placed = 0;
+        AreaCounts ac = new AreaCounts(m, reg, 1 << AreaCounts.WATER);
+
+        while (placed < target && tries-- > 0) {
+            int wCab = 6 + rng.nextInt(9);
+            int hCab = 4 + rng.nextInt(8);
+            int x0 = reg.x0 + 2 + rng.nextInt(Math.max(1, reg.w() - 2 - wCab - 2));
+            int y0 = reg.y0 + 2 + rng.nextInt(Math.max(1, reg.h() - 2 - hCab - 2));
+            int x1 = x0 + wCab - 1, y1 = y0 + hCab - 1;
+
+            int cx = (x0 + x1) / 2, cy = (y0 + y1) / 2;
+            if (dist2(cx, cy, m.w / 2, m.h / 2) <= (safeRadius + 3) * (safeRadius + 3)) continue;
+
+            // Requisito: sin agua en un halo 1-tile alrededor
+            if (!areaClearOfWater(m, ac, x0 - 1, y0 - 1, x1 + 1, y1 + 1)) continue;
+
+            buildCabin(m, ac, built, x0, y0, x1, y1);
+            placed++;
+        }
+
+        // Fallback determinista: si por cualquier motivo no se colocó ninguna, forzamos 1
+        if (placed == 0 && guaranteeOne) {
+            outer:
+            for (int hCab = 5; hCab <= 12; hCab++) {
+                for (int wCab = 8; wCab <= 16; wCab++) {
+                    for (int y0 = reg.y0 + 2; y0 <= reg.y1 - 1 - hCab; y0++) {
+                        for (int x0 = reg.x0 + 2; x0 <= reg.x1 - 1 - wCab; x0++) {
+                            int x1 = x0 + wCab - 1, y1 = y0 + hCab - 1;
+                            int cx = (x0 + x1) / 2, cy = (y0 + y1) / 2;
+                            if (dist2(cx, cy, m.w / 2, m.h / 2) <= (safeRadius + 3) * (safeRadius + 3)) continue;
+                            if (!areaClearOfWater(m, ac, x0 - 1, y0 - 1, x1 + 1, y1 + 1)) continue;
+
+                            buildCabin(m, ac, built, x0, y0, x1, y1);
+                            break outer;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void drawCabinShell(GameMap m, AreaCounts ac, java.util.List<RectI> built, int x0, int y0, int x1, int y1) {
+        ac.touch(x0, y0, x1, y1);
+        Blueprint.shell(x1 - x0 + 1, y1 - y0 + 1).stamp(m, x0, y0);
+        built.add(new RectI(x0, y0, x1, y1));
+    }
+
+    private static boolean areaBuildableForCabin(GameMap m, RectI reg, AreaCounts ac, int x0, int y0, int x1, int y1) {
+        if (!ac.inside(x0, y0, x1, y1)) return false;
+        if (ac.ready(x0, y0, x1, y1))
+            return ac.count(AreaCounts.BLOCKED, x0, y0, x1, y1) == 0 && ac.count(AreaCounts.STRUCT, x0, y0, x1, y1) == 0;
+        ac.scanned((x1 - x0 + 1) * (y1 - y0 + 1));
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                if (!reg.contains(x, y)) return false;
+                int t = m.type(x, y);
+                if (t == Tiles.WATER || t == Tiles.ROCK) return false; // agua/roca
+                if (Tiles.isStructure(t)) return false; // ya hay casa
+            }
+        }
+        return true;
+    }
+
+    static final class RectI {
+        final int x0, y0, x1, y1;
+
+        RectI(int x0, int y0, int x1, int y1) {
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+
+        int w() {
+            return x1 - x0 + 1;
+        }
+
+        int h() {
+            return y1 - y0 + 1;
+        }
+
+        boolean contains(int x, int y) {
+            return x >= x0 && y >= y0 && x <= x1 && y <= y1;
+        }
+    }
+
+    private static boolean areaBuildableForAttachment(GameMap m, RectI reg, AreaCounts ac, int x0, int y0, int x1, int y1, int side) {
+        if (!ac.inside(x0 - 1, y0 - 1, x1 + 1, y1 + 1)) return false;
+        if (ac.ready(x0 - 1, y0 - 1, x1 + 1, y1 + 1)) {
+            if (ac.count(AreaCounts.BLOCKED, x0 - 1, y0 - 1, x1 + 1, y1 + 1) != 0) return false;
+            if (ac.count(AreaCounts.STRUCT, x0, y0, x1, y1) != 0) return false;
+            // halo sin el lado compartido: lo ocupado en él es lo ocupado del marco menos lo del rectángulo
+            int hx0 = side == 0 ? x0 : x0 - 1, hx1 = side == 1 ? x1 : x1 + 1;
+            int hy0 = side == 2 ? y0 : y0 - 1, hy1 = side == 3 ? y1 : y1 + 1;
+            return ac.count(AreaCounts.OCCUPIED, hx0, hy0, hx1, hy1) == ac.count(AreaCounts.OCCUPIED, x0, y0, x1, y1);
+        }
+        ac.scanned((x1 - x0 + 3) * (y1 - y0 + 3));
+        for (int y = y0 - 1; y <= y1 + 1; y++) {
+            for (int x = x0 - 1; x <= x1 + 1; x++) {
+                if (!reg.contains(x, y)) return false;
+
+                int t = m.type(x, y);
+                if (t == Tiles.WATER || t == Tiles.ROCK) return false; // nunca sobre agua/roca
+
+                boolean inRect = (x >= x0 && x <= x1 && y >= y0 && y <= y1);
+
+                // halo adyacente al lado COMPARTIDO (permitido)
+                boolean sharedHalo = (side == 0 && x == x0 - 1) ||   // derecha → halo a la izquierda del nuevo
+                        (side == 1 && x == x1 + 1) ||   // izquierda → halo a la derecha del nuevo
+                        (side == 2 && y == y0 - 1) ||   // abajo → halo arriba del nuevo
+                        (side == 3 && y == y1 + 1);     // arriba → halo abajo del nuevo
+                if (!inRect && sharedHalo) continue;
+
+                boolean wallish = Tiles.isStructure(t);
+
+                // dentro del rectángulo no podemos pisar paredes/puertas existentes
+                if (inRect && wallish) return false;
+
+                // en el resto del halo (no compartido) no podemos tocar interiores/paredes
+                if (!inRect && (wallish || m.indoor(x, y))) return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static RectI boundsOf(java.util.List<RectI> rs) {
+        int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = Integer.MIN_VALUE, y1 = Integer.MIN_VALUE;
+        for (RectI r : rs) {
+            x0 = Math.min(x0, r.x0);
+            y0 = Math.min(y0, r.y0);
+            x1 = Math.max(x1, r.x1);
+            y1 = Math.max(y1, r.y1);
+        }
+        return new RectI(x0, y0, x1, y1);
+    }
+
+    // --- NUEVO: abre una puerta entre dos módulos adyacentes que comparten pared ---
+    private static void openSharedDoor(GameMap m, AreaCounts ac, RectI a, RectI b, Random rng) {
+        // vertical compartida
+        if (a.x1 == b.x0 || b.x1 == a.x0) {
+            int x = (a.x1 == b.x0) ? a.x1 : b.x1;
+            int yStart = Math.max(a.y0 + 1, b.y0 + 1);
+            int yEnd = Math.min(a.y1 - 1, b.y1 - 1);
+            if (yStart <= yEnd) {
+                int y = yStart + rng.nextInt(Math.max(1, yEnd - yStart + 1));
+                ac.touch(x - 1, y, x + 1, y);
+                setDoor(m, x, y);
+                // asegura suelo a ambos lados
+                if (m.inBounds(x - 1, y)) {
+                    setFloor(m, x - 1, y);
+                    m.setIndoor(x - 1, y);
+                }
+                if (m.inBounds(x + 1, y)) {
+                    setFloor(m, x + 1, y);
+                    m.setIndoor(x + 1, y);
+                }
+            }
+        }
+        // horizontal compartida
+        if (a.y1 == b.y0 || b.y1 == a.y0) {
+            int y = (a.y1 == b.y0) ? a.y1 : b.y1;
+            int xStart = Math.max(a.x0 + 1, b.x0 + 1);
+            int xEnd = Math.min(a.x1 - 1, b.x1 - 1);
+            if (xStart <= xEnd) {
+                int x = xStart + rng.nextInt(Math.max(1, xEnd - xStart + 1));
+                ac.touch(x, y - 1, x, y + 1);
+                setDoor(m, x, y);
+                if (m.inBounds(x, y - 1)) {
+                    setFloor(m, x, y - 1);
+                    m.setIndoor(x, y - 1);
+                }
+                if (m.inBounds(x, y + 1)) {
+                    setFloor(m, x, y + 1);
+                    m.setIndoor(x, y + 1);
+                }
+            }
+        }
+    }
+
+    // --- NUEVO: añade 1–2 puertas exteriores en la envolvente de la casa compuesta ---
+    private static void addExteriorDoorsOnBounding(GameMap m, AreaCounts ac, java.util.List<RectI> rooms, Random rng) {
+        RectI bb = boundsOf(rooms);
+        ac.touch(bb.x0, bb.y0, bb.x1, bb.y1); // puertas en la envolvente y el suelo justo dentro
+        int doors = 1 + rng.nextInt(2);
+        for (int d = 0; d < doors; d++) {
+            int side = rng.nextInt(4); // 0 top,1 right,2 bottom,3 left
+            switch (side) {
+                case 0 -> {
+                    if (bb.w() >= 4) {
+                        int x = bb.x0 + 2 + rng.nextInt(Math.max(1, bb.w() - 3));
+                        int y = bb.y0;
+                        setDoor(m, x, y);
+                        if (m.inBounds(x, y + 1)) {
+                            setFloor(m, x, y + 1);
+                            m.setIndoor(x, y + 1);
+                        }
+                    }
+                }
+                case 1 -> {
+                    if (bb.h() >= 4) {
+                        int x = bb.x1;
+                        int y = bb.y0 + 2 + rng.nextInt(Math.max(1, bb.h() - 3));
+                        setDoor(m, x, y);
+                        if (m.inBounds(x - 1, y)) {
+                            setFloor(m, x - 1, y);
+                            m.setIndoor(x - 1, y);
+                        }
+                    }
+                }
+                case 2 -> {
+                    if (bb.w() >= 4) {
+                        int x = bb.x0 + 2 + rng.nextInt(Math.max(1, bb.w() - 3));
+                        int y = bb.y1;
+                        setDoor(m, x, y);
+                        if (m.inBounds(x, y - 1)) {
+                            setFloor(m, x, y - 1);
+                            m.setIndoor(x, y - 1);
+                        }
+                    }
+                }
+                default -> {
+                    if (bb.h() >= 4) {
+                        int x = bb.x0;
+                        int y = bb.y0 + 2 + rng.nextInt(Math.max(1, bb.h() - 3));
+                        setDoor(m, x, y);
+                        if (m.inBounds(x + 1, y)) {
+                            setFloor(m, x + 1, y);
+                            m.setIndoor(x + 1, y);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean tryAttachModule(GameMap m, AreaCounts ac, java.util.List<RectI> built, Random rng, RectI reg, java.util.List<RectI> rooms, int safeRadius) {
+        RectI base = rooms.get(rng.nextInt(rooms.size()));
+
+        // módulos más grandes
+        int wCab = 8 + rng.nextInt(9);  // 8..16
+        int hCab = 5 + rng.nextInt(8);  // 5..12
+
+        int side = rng.nextInt(4);
+        int minOverlap = 3;
+
+        // más reintentos para encontrar hueco
+        for (int tries = 0; tries < 12; tries++) {
+            int x0, y0, x1, y1;
+
+            if (side == 0) { // derecha (comparte x0 con base.x1)
+                x0 = base.x1;
+                x1 = x0 + wCab - 1;
+                int yTop = Math.max(reg.y0 + 2, base.y0 - hCab + minOverlap);
+                int yBot = Math.min(reg.y1 - 2 - hCab, base.y1 - minOverlap + 1);
+                if (yTop > yBot) {
+                    side = (side + 1) % 4;
+                    continue;
+                }
+                y0 = yTop + rng.nextInt(Math.max(1, yBot - yTop + 1));
+                y1 = y0 + hCab - 1;
+
+                int cx = (x0 + x1) / 2, cy = (y0 + y1) / 2;
+                if (dist2(cx, cy, m.w / 2, m.h / 2) <= (safeRadius + 3) * (safeRadius + 3)) {
+                    side = (side + 1) % 4;
+                    continue;
+                }
+                if (!areaBuildableForAttachment(m, reg, ac, x0, y0, x1, y1, 0)) {
+                    side = (side + 1) % 4;
+                    continue;
+                }
+
+            } else if (side == 1) { // izquierda (comparte x1 con base.x0)
+                x1 = base.x0;
+                x0 = x1 - wCab + 1;
+                int yTop = Math.max(reg.y0 + 2, base.y0 - hCab + minOverlap);
+                int yBot = Math.min(reg.y1 - 2 - hCab, base.y1 - minOverlap + 1);
+                if (yTop > yBot) {
+                    side = (side + 1) % 4;
+                    continue;
+                }
+                y0 = yTop + rng.nextInt(Math.max(1, yBot - yTop + 1));
+                y1 = y0 + hCab - 1;
+
+                int cx = (x0 + x1) / 2, cy = (y0 + y1) / 2;
+                if (dist2(cx, cy, m.w / 2, m.h / 2) <= (safeRadius + 3) * (safeRadius + 3)) {
+                    side = (side + 1) % 4;
+                    continue;
+                }
+                if (!areaBuildableForAttachment(m, reg, ac, x0, y0, x1, y1, 1)) {
+                    side = (side + 1) % 4;
+                    continue;
+                }
+
+            } else if (side == 2) { // abajo (comparte y0 con base.y1)
+                y0 = base.y1;
+                y1 = y0 + hCab - 1;
+                int xLeft = Math.max(reg.x0 + 2, base.x0 - wCab + minOverlap);
+                int xRight = Math.min(reg.x1 - 2 - wCab, base.x1 - minOverlap + 1);
+                if (xLeft > xRight) {
+                    side = (side + 1) % 4;
+                    continue;
+                }
+                x0 = xLeft + rng.nextInt(Math.max(1, xRight - xLeft + 1));
+                x1 = x0 + wCab - 1;
+
+                int cx = (x0 + x1) / 2, cy = (y0 + y1) / 2;
+                if (dist2(cx, cy, m.w / 2, m.h / 2) <= (safeRadius + 3) * (safeRadius + 3)) {
+                    side = (side + 1) % 4;
+                    continue;
+                }
+                if (!areaBuildableForAttachment(m, reg, ac, x0, y0, x1, y1, 2)) {
+                    side = (side + 1) % 4;
+                    continue;
+                }
+
+            } else { // arriba (comparte y1 con base.y0)
+                y1 = base.y0;
+                y0 = y1 - hCab + 1;
+                int xLeft = Math.max(reg.x0 + 2, base.x0 - wCab + minOverlap);
+                int xRight = Math.min(reg.x1 - 2 - wCab, base.x1 - minOverlap + 1);
+                if (xLeft > xRight) {
+                    side = (side + 1) % 4;
+                    continue;
+                }
+                x0 = xLeft + rng.nextInt(Math.max(1, xRight - xLeft + 1));
+                x1 = x0 + wCab - 1;
+
+                int cx = (x0 + x1) / 2, cy = (y0 + y1) / 2;
+                if (dist2(cx, cy, m.w / 2, m.h / 2) <= (safeRadius + 3) * (safeRadius + 3)) {
+                    side = (side + 1) % 4;
+                    continue;
+                }
+                if (!areaBuildableForAttachment(m, reg, ac, x0, y0, x1, y1, 3)) {
+                    side = (side + 1) % 4;
+                    continue;
+                }
+            }
+
+            // Dibuja y conecta
+            drawCabinShell(m, ac, built, x0, y0, x1, y1);
+            RectI neo = new RectI(x0, y0, x1, y1);
+            rooms.add(neo);
+            openSharedDoor(m, ac, base, neo, rng);
+            return true;
+        }
+        return false;
+    }
+
+
+    static void addCabinClusters(GameMap m, Random rng, RectI reg, int groups, int safeRadius, java.util.List<RectI> built, java.util.List<RectI> clusters) {
+        int placed = 0;
+        int attempts = groups * 40;
+        if (attempts <= 0) return;
+        AreaCounts ac = new AreaCounts(m, reg, 1 << AreaCounts.BLOCKED | 1 << AreaCounts.STRUCT | 1 << AreaCounts.OCCUPIED);
+
+        while (placed < groups && attempts-- > 0) {
+            int modules = 2 + rng.nextInt(5);
+
+            int wCab = 6 + rng.nextInt(6);
+            int hCab = 4 + rng.nextInt(5);
+            int x0 = reg.x0 + 2 + rng.nextInt(Math.max(1, reg.w() - 2 - wCab - 2));
+            int y0 = reg.y0 + 2 + rng.nextInt(Math.max(1, reg.h() - 2 - hCab - 2));
+            int x1 = x0 + wCab - 1, y1 = y0 + hCab - 1;
+
+            int cx = (x0 + x1) / 2, cy = (y0 + y1) / 2;
+            if (dist2(cx, cy, m.w / 2, m.h / 2) <= (safeRadius + 3) * (safeRadius + 3)) continue;
+            if (!areaBuildableForCabin(m, reg, ac, x0 - 1, y0 - 1, x1 + 1, y1 + 1)) continue;
+
+            java.util.ArrayList<RectI> rooms = new java.util.ArrayList<>();
+            drawCabinShell(m, ac, built, x0, y0, x1, y1);
+            RectI first = new RectI(x0, y0, x1, y1);
+            rooms.add(first);
+
+            for (int k = 1; k < modules; k++) {
+                if (!tryAttachModule(m, ac, built, rng, reg, rooms, safeRadius)) break;
+            }
+
+            addExteriorDoorsOnBounding(m, ac, rooms, rng);
+            clusters.add(boundsOf(rooms));
+
+            placed++;
+        }
+    }
+
+    private static int heavyBetween(Random rng, int a, int b) {
+        if (a >= b) return a;
+        double u = rng.nextDouble(), t = (u < 0.2) ? Math.pow(rng.nextDouble(), 2.4) : (u < 0.85) ? rng.nextDouble() : 1.0 - Math.pow(rng.nextDouble(), 2.0);
+        int v = a + (int) Math.round(t * (b - a));
+        return Math.min(b, Math.max(a, v));
+    }
+
+    private static boolean areaClearOfWater(GameMap m, AreaCounts ac, int x0, int y0, int x1, int y1) {
+        if (!ac.inside(x0, y0, x1, y1)) return false;
+        if (ac.ready(x0, y0, x1, y1)) return ac.count(AreaCounts.WATER, x0, y0, x1, y1) == 0;
+        ac.scanned((x1 - x0 + 1) * (y1 - y0 + 1));
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                if (m.type(x, y) == Tiles.WATER) return false;
+            }
+        }
+        return true;
+    }
+
+    // Puertas entre interiores que sólo separa una pared (módulos pegados, cabañas solapadas). Una pared sólo
+    // sale de un módulo estampado, así que basta con mirar los lados de 'built' en vez de toda la región; las
+    // celdas se ordenan como las recorría el barrido completo (columna a columna, y luego fila a fila) para
+    // agrupar los mismos tramos y gastar el azar en el mismo orden.
+    static void punchDoorsBetweenTouchingInteriors(GameMap m, Random rng, RectI reg, java.util.List<RectI> built) {
+        if (built.isEmpty()) return;
+        int xa = Math.max(1, reg.x0 + 1), xb = Math.min(m.w - 1, reg.x1);
+        int ya = Math.max(1, reg.y0 + 1), yb = Math.min(m.h - 1, reg.y1);
+        // Segmentos verticales (pared '║'): interiores a izquierda y derecha
+        long[] cells = new long[64];
+        int n = 0;
+        for (RectI r : built) {
+            for (int side = 0; side < 2; side++) {
+                int x = side == 0 ? r.x0 : r.x1;
+                if (x < xa || x >= xb) continue;
+                for (int y = Math.max(ya, r.y0); y <= Math.min(yb - 1, r.y1); y++) {
+                    if (m.type(x, y) != Tiles.WALL_V || !m.indoor(x - 1, y) || !m.indoor(x + 1, y)) continue;
+                    if (n == cells.length) cells = java.util.Arrays.copyOf(cells, n * 2);
+                    cells[n++] = (long) x << 32 | y;
+                }
+            }
+        }
+        punchRuns(m, rng, cells, n, false);
+        // Segmentos horizontales (pared '═'): interiores arriba y abajo
+        n = 0;
+        for (RectI r : built) {
+            for (int side = 0; side < 2; side++) {
+                int y = side == 0 ? r.y0 : r.y1;
+                if (y < ya || y >= yb) continue;
+                for (int x = Math.max(xa, r.x0); x <= Math.min(xb - 1, r.x1); x++) {
+                    if (m.type(x, y) != Tiles.WALL_H || !m.indoor(x, y - 1) || !m.indoor(x, y + 1)) continue;
+                    if (n == cells.length) cells = java.util.Arrays.copyOf(cells, n * 2);
+                    cells[n++] = (long) y << 32 | x;
+                }
+            }
+        }
+        punchRuns(m, rng, cells, n, true);
+    }
+
+    // celdas (eje << 32 | posición en el eje): una puerta al azar en cada tramo de celdas seguidas
+    private static void punchRuns(GameMap m, Random rng, long[] cells, int n, boolean rows) {
+        java.util.Arrays.sort(cells, 0, n);
+        int i = 0;
+        while (i < n) {
+            int j = i + 1;
+            while (j < n && (cells[j] == cells[j - 1] || cells[j] == cells[j - 1] + 1)) j++;
+            // tramo [i, j) sin repetidas (dos módulos que comparten lado la dan dos veces)
+            int a = (int) (cells[i] >> 32), p0 = (int) cells[i], len = (int) cells[j - 1] - p0 + 1;
+            int p = p0 + rng.nextInt(len);
+            if (rows) setDoor(m, p, a);
+            else setDoor(m, a, p);
+            i = j;
+        }
+    }
+
+    // Caminos entre grupos de casas: árbol de expansión casi mínimo sobre los centros de los grupos. En vez de
+    // mirar todos los pares (O(n²)) cada centro busca sus ROAD_NEIGHBOURS vecinos más cercanos en una rejilla
+    // uniforme y Kruskal (aristas ordenadas + union-find) se queda con las que unen componentes: O(n log n).
+    // Si con esos vecinos el grafo queda partido (grupos muy apelotonados) se dobla k y se repite. Cada arista
+    // se traza en L entre los contornos de los dos grupos, con el codo que cruce menos casas; el agua se cruza
+    // con un puente de camino y las casas que queden en medio lo cortan. Es por región, como el resto.
+    static void addRoads(GameMap m, Random rng, RectI reg, java.util.List<RectI> clusters) {
+        int n = clusters.size();
+        if (n < 2) return;
+        int[] px = new int[n], py = new int[n];
+        for (int i = 0; i < n; i++) {
+            RectI r = clusters.get(i);
+            px[i] = (r.x0 + r.x1) / 2;
+            py[i] = (r.y0 + r.y1) / 2;
+        }
+        // rejilla con unos dos centros por celda: lista enlazada por celda (head/next)
+        int cell = Math.max(8, (int) Math.sqrt(2.0 * reg.w() * reg.h() / n));
+        int gw = (reg.w() - 1) / cell + 1, gh = (reg.h() - 1) / cell + 1;
+        int[] head = new int[gw * gh], next = new int[n];
+        Arrays.fill(head, -1);
+        for (int i = 0; i < n; i++) {
+            int g = ((py[i] - reg.y0) / cell) * gw + (px[i] - reg.x0) / cell;
+            next[i] = head[g];
+            head[g] = i;
+        }
+        int[] parent = new int[n], tree = new int[2 * (n - 1)];
+        for (int k = Math.min(ROAD_NEIGHBOURS, n - 1); ; k = Math.min(2 * k, n - 1)) {
+            int[] ends = new int[2 * n * k];
+            long[] edges = nearestEdges(px, py, reg, cell, gw, gh, head, next, k, ends);
+            Arrays.sort(edges);
+            for (int i = 0; i < n; i++) parent[i] = i;
+            int taken = 0;
+            for (int e = 0; e < edges.length && taken < n - 1; e++) {
+                int id = (int) edges[e], a = find(parent, ends[2 * id]), b = find(parent, ends[2 * id + 1]);
+                if (a == b) continue;
+                parent[Math.max(a, b)] = Math.min(a, b);
+                tree[2 * taken] = ends[2 * id];
+                tree[2 * taken + 1] = ends[2 * id + 1];
+                taken++;
+            }
+            if (taken == n - 1 || k == n - 1) {
+                for (int t = 0; t < taken; t++) carveRoad(m, rng, reg, clusters.get(tree[2 * t]), clusters.get(tree[2 * t + 1]));
+                return;
+            }
+        }
+    }
+
+    // aristas (d² << 32 | id) de cada centro a sus k vecinos más cercanos; ends[2 * id], ends[2 * id + 1] = extremos
+    private static long[] nearestEdges(int[] px, int[] py, RectI reg, int cell, int gw, int gh, int[] head, int[] next, int k, int[] ends) {
+        int n = px.length, ne = 0;
+        long[] edges = new long[n * k];
+        long[] best = new long[k]; // (d² << 32 | j) de menor a mayor
+        for (int i = 0; i < n; i++) {
+            int nb = 0, gx = (px[i] - reg.x0) / cell, gy = (py[i] - reg.y0) / cell;
+            for (int r = 0; r <= Math.max(gw, gh); r++) {
+                // anillo de celdas a distancia (Chebyshev) r de la del centro
+                for (int cy = Math.max(0, gy - r); cy <= Math.min(gh - 1, gy + r); cy++) {
+                    int step = cy == gy - r || cy == gy + r ? 1 : 2 * r;
+                    for (int cx = gx - r; cx <= gx + r; cx += step) {
+                        if (cx < 0 || cx >= gw) continue;
+                        for (int j = head[cy * gw + cx]; j >= 0; j = next[j]) {
+                            if (j == i) continue;
+                            long key = (long) dist2(px[i], py[i], px[j], py[j]) << 32 | j;
+                            if (nb == k && key >= best[k - 1]) continue;
+                            int p = nb < k ? nb++ : k - 1;
+                            for (; p > 0 && best[p - 1] > key; p--) best[p] = best[p - 1];
+                            best[p] = key;
+                        }
+                    }
+                }
+                // lo que quede fuera del anillo r está a más de r * cell
+                long reach = (long) r * cell;
+                if (nb == k && reach * reach >= best[k - 1] >>> 32) break;
+            }
+            for (int t = 0; t < nb; t++) {
+                ends[2 * ne] = i;
+                ends[2 * ne + 1] = (int) best[t];
+                edges[ne] = (best[t] >>> 32) << 32 | ne;
+                ne++;
+            }
+        }
+        return Arrays.copyOf(edges, ne);
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    // camino en L del contorno (+1) de 'a' al de 'b'
+    private static void carveRoad(GameMap m, Random rng, RectI reg, RectI a, RectI b) {
+        int sx = clamp((b.x0 + b.x1) / 2, a.x0 - 1, a.x1 + 1), sy = clamp((b.y0 + b.y1) / 2, a.y0 - 1, a.y1 + 1);
+        int ex = clamp(sx, b.x0 - 1, b.x1 + 1), ey = clamp(sy, b.y0 - 1, b.y1 + 1);
+        // codo en (ex, sy) -horizontal primero- o en (sx, ey): el que atraviese menos casas
+        int h = roadSegment(m, reg, sx, sy, ex, sy, false) + roadSegment(m, reg, ex, sy, ex, ey, false);
+        int v = roadSegment(m, reg, sx, sy, sx, ey, false) + roadSegment(m, reg, sx, ey, ex, ey, false);
+        if (h < v || (h == v && rng.nextBoolean())) {
+            roadSegment(m, reg, sx, sy, ex, sy, true);
+            roadSegment(m, reg, ex, sy, ex, ey, true);
+        } else {
+            roadSegment(m, reg, sx, sy, sx, ey, true);
+            roadSegment(m, reg, sx, ey, ex, ey, true);
+        }
+    }
+
+    // tramo recto (horizontal o vertical); con carve pone camino, sin él sólo cuenta las casillas de casa
+    private static int roadSegment(GameMap m, RectI reg, int x0, int y0, int x1, int y1, boolean carve) {
+        int dx = Integer.signum(x1 - x0), dy = Integer.signum(y1 - y0), blocked = 0;
+        for (int x = x0, y = y0; ; x += dx, y += dy) {
+            if (reg.contains(x, y) && inInterior(m, x, y, 0)) {
+                int t = m.type(x, y);
+                if (Tiles.isStructure(t) || m.indoor(x, y)) blocked++;
+                else if (carve && t != Tiles.ROAD) m.put(x, y, Tiles.ROAD);
+            }
+            if (x == x1 && y == y1) return blocked;
+        }
+    }
+
+    private static int clamp(int v, int lo, int hi) {
+        return Math.max(lo, Math.min(hi, v));
+    }
+
+    private static void buildCabin(GameMap m, AreaCounts ac, java.util.List<RectI> built, int x0, int y0, int x1, int y1) {
+        ac.touch(x0, y0, x1, y1);
+        Blueprint.cabin(x1 - x0 + 1, y1 - y0 + 1).stamp(m, x0, y0);
+        built.add(new RectI(x0, y0, x1, y1));
+    }
+}
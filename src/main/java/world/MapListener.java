@@ -0,0 +1,7 @@
+package world;
+
+// Recibe los cambios de un GameMap: rectángulo sucio (inclusivo) y versión del mapa tras el cambio.
+// Se llama en el hilo que hizo la mutación, ya con el mapa actualizado.
+public interface MapListener {
+    void mapChanged(GameMap map, int x0, int y0, int x1, int y1, long version);
+}
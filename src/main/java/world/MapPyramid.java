@@ -0,0 +1,149 @@
+package world;
+
+// Pirámide de resumen del mapa para minimapa y vista general. El nivel k tiene una celda por bloque de
+// 2^k x 2^k casillas con la clase dominante de lo explorado dentro (edificio > agua > lo más abundante de
+// suelo/bosque/roca; lo no explorado no cuenta, así no se filtra) y un bit "algo explorado dentro". El nivel 0
+// es el propio mapa; se guardan del 1 en adelante (un tercio de byte por casilla en total). Se actualiza por
+// trozos: al cambiar el mapa (listener), al cargarse un chunk y al explorarse una casilla nueva, recalculando
+// sólo los bloques afectados y sus antepasados.
+// Los chunks sin cargar cuentan como NONE; los que se expulsan a disco conservan aquí su resumen.
+public final class MapPyramid implements MapListener {
+    public static final int NONE = 0, OPEN = 1, FOREST = 2, ROCK = 3, WATER = 4, BUILDING = 5;
+    private static final int CLS_MASK = 0x0F;
+    private static final int EXPLORED = 0x80;
+    private static final int MIN_SIZE = 8; // se para al llegar a un nivel de como mucho 8x8
+
+    private final GameMap map;
+    private final byte[][] lv; // lv[k] para k >= 1; lv[0] sin usar
+    private final int[] lw, lh;
+
+    MapPyramid(GameMap map) {
+        this.map = map;
+        int n = 1;
+        while (((map.w - 1) >> n) + 1 > MIN_SIZE || ((map.h - 1) >> n) + 1 > MIN_SIZE) n++;
+        lv = new byte[n + 1][];
+        lw = new int[n + 1];
+        lh = new int[n + 1];
+        lw[0] = map.w;
+        lh[0] = map.h;
+        for (int k = 1; k <= n; k++) {
+            lw[k] = ((map.w - 1) >> k) + 1;
+            lh[k] = ((map.h - 1) >> k) + 1;
+            lv[k] = new byte[lw[k] * lh[k]];
+        }
+        // sólo lo ya cargado: en un mapa perezoso el resto llega con chunkLoaded
+        for (int ci = 0; ci < map.chunksW * map.chunksH; ci++) {
+            int x0 = (ci % map.chunksW) << GameMap.CHUNK_SHIFT, y0 = (ci / map.chunksW) << GameMap.CHUNK_SHIFT;
+            if (map.isLoaded(x0, y0)) update(x0, y0, x0 + GameMap.CHUNK - 1, y0 + GameMap.CHUNK - 1);
+        }
+    }
+
+    // --- consultas ---
+    public int levels() {
+        return lv.length;
+    }
+
+    public int width(int level) {
+        return lw[level];
+    }
+
+    public int height(int level) {
+        return lh[level];
+    }
+
+    // clase dominante de la celda (x, y) del nivel 'level' (fuera del nivel -> NONE)
+    public int cls(int level, int x, int y) {
+        if (x < 0 || y < 0 || x >= lw[level] || y >= lh[level]) return NONE;
+        if (level == 0) return map.isLoaded(x, y) ? cellClass(x, y) : NONE;
+        return lv[level][y * lw[level] + x] & CLS_MASK;
+    }
+
+    public boolean explored(int level, int x, int y) {
+        if (x < 0 || y < 0 || x >= lw[level] || y >= lh[level]) return false;
+        if (level == 0) return map.isLoaded(x, y) && map.explored(x, y);
+        return (lv[level][y * lw[level] + x] & EXPLORED) != 0;
+    }
+
+    // nivel más fino en el que todo el mapa cabe en w x h celdas
+    public int levelToFit(int w, int h) {
+        for (int k = 0; k < lv.length; k++) if (lw[k] <= w && lh[k] <= h) return k;
+        return lv.length - 1;
+    }
+
+    // --- mantenimiento ---
+    @Override
+    public void mapChanged(GameMap m, int x0, int y0, int x1, int y1, long version) {
+        update(x0, y0, x1, y1);
+    }
+
+    void chunkLoaded(int ci) {
+        int x0 = (ci % map.chunksW) << GameMap.CHUNK_SHIFT, y0 = (ci / map.chunksW) << GameMap.CHUNK_SHIFT;
+        update(x0, y0, x0 + GameMap.CHUNK - 1, y0 + GameMap.CHUNK - 1);
+    }
+
+    // casilla recién explorada: ahora cuenta para la clase de sus bloques; sube hasta el primero que no cambia
+    void explored(int x, int y) {
+        for (int k = 1; k < lv.length; k++) {
+            int bx = x >> k, by = y >> k, i = by * lw[k] + bx;
+            byte v = (byte) summarize(k - 1, 2 * bx, 2 * by);
+            if (lv[k][i] == v) return;
+            lv[k][i] = v;
+        }
+    }
+
+    // recalcula los bloques que cubren el rectángulo (casillas, inclusivo) en todos los niveles
+    private void update(int x0, int y0, int x1, int y1) {
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(map.w - 1, x1);
+        y1 = Math.min(map.h - 1, y1);
+        if (x0 > x1 || y0 > y1) return;
+        for (int k = 1; k < lv.length; k++) {
+            x0 >>= 1;
+            y0 >>= 1;
+            x1 >>= 1;
+            y1 >>= 1;
+            for (int y = y0; y <= y1; y++)
+                for (int x = x0; x <= x1; x++) lv[k][y * lw[k] + x] = (byte) summarize(k - 1, 2 * x, 2 * y);
+        }
+    }
+
+    // resumen del bloque 2x2 del nivel 'k' con esquina (x, y): sólo cuentan los hijos con algo explorado
+    private int summarize(int k, int x, int y) {
+        int open = 0, forest = 0, rock = 0;
+        boolean water = false, building = false, explored = false;
+        for (int dy = 0; dy < 2; dy++) {
+            for (int dx = 0; dx < 2; dx++) {
+                int c = cls(k, x + dx, y + dy);
+                if (c == NONE || !explored(k, x + dx, y + dy)) continue;
+                explored = true;
+                switch (c) {
+                    case OPEN -> open++;
+                    case FOREST -> forest++;
+                    case ROCK -> rock++;
+                    case WATER -> water = true;
+                    default -> building = true;
+                }
+            }
+        }
+        int c;
+        if (building) c = BUILDING;
+        else if (water) c = WATER;
+        else if (open + forest + rock == 0) c = NONE;
+        else if (forest >= open && forest >= rock) c = FOREST;
+        else if (rock >= open) c = ROCK;
+        else c = OPEN;
+        return explored ? c | EXPLORED : c;
+    }
+
+    private int cellClass(int x, int y) {
+        int t = map.type(x, y);
+        if (Tiles.isStructure(t) || map.indoor(x, y)) return BUILDING;
+        return switch (t) {
+            case Tiles.TREE -> FOREST;
+            case Tiles.WATER -> WATER;
+            case Tiles.ROCK -> ROCK;
+            default -> OPEN;
+        };
+    }
+}
@@ -0,0 +1,327 @@
+package world;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Índice de salas y edificios. Una sala es una componente 4-conexa de celdas interiores (el suelo dentro de
+// las paredes de un módulo); un edificio es el conjunto de salas unidas por puertas. Las casas no cambian
+// tras generarse, así que cada chunk se etiqueta una sola vez, la primera vez que se pregunta por él; a partir
+// de ahí "¿en qué sala/edificio estoy?" es una lectura de la rejilla. Si el mapa cambia, sólo se descartan las
+// salas que toca el rectángulo sucio y se re-etiquetan sus chunks. Al expulsar un chunk a disco se descartan
+// igual las salas que lo tocan y se suelta su rejilla: se vuelven a etiquetar (con ids nuevos) al preguntar.
+// Los ids descartados se reutilizan, así que las listas no crecen con cada vuelta y un id viejo puede ser otra sala.
+public final class RoomIndex implements MapListener {
+    public static final int NONE = -1;
+
+    public static final class Room {
+        public final int id;
+        public int x0, y0, x1, y1; // caja envolvente del suelo interior
+        public int cells;
+        int[] doors = new int[4]; // x, y alternados
+        int doorCount;
+        int[] neighbors;          // salas al otro lado de una puerta (se calcula al pedirlo)
+        int building = NONE;
+
+        Room(int id, int x, int y) {
+            this.id = id;
+            x0 = x1 = x;
+            y0 = y1 = y;
+        }
+
+        public int doorCount() {
+            return doorCount;
+        }
+
+        public int doorX(int i) {
+            return doors[2 * i];
+        }
+
+        public int doorY(int i) {
+            return doors[2 * i + 1];
+        }
+
+        private void addDoor(int x, int y) {
+            for (int i = 0; i < doorCount; i++) if (doors[2 * i] == x && doors[2 * i + 1] == y) return;
+            if (2 * doorCount == doors.length) doors = java.util.Arrays.copyOf(doors, doors.length * 2);
+            doors[2 * doorCount] = x;
+            doors[2 * doorCount + 1] = y;
+            doorCount++;
+        }
+    }
+
+    public static final class Building {
+        public final int id;
+        public final int[] rooms;
+        public final int x0, y0, x1, y1;
+        public final int[] exteriorDoors; // x, y alternados: puertas que dan al exterior
+
+        Building(int id, int[] rooms, int x0, int y0, int x1, int y1, int[] exteriorDoors) {
+            this.id = id;
+            this.rooms = rooms;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+            this.exteriorDoors = exteriorDoors;
+        }
+    }
+
+    private static final int[] DX = {1, -1, 0, 0}, DY = {0, 0, 1, -1};
+
+    private final GameMap map;
+    private final int[][] grid;      // por chunk: id de sala + 1 (0 = exterior); null si no hay interiores
+    private final boolean[] labeled; // por chunk
+    private final List<Room> rooms = new ArrayList<>();
+    private final List<Building> buildings = new ArrayList<>();
+    private int[] freeRooms = new int[16], freeBuildings = new int[16]; // ids descartados, para reutilizar
+    private int freeRoomCount, freeBuildingCount;
+
+    RoomIndex(GameMap map) {
+        this.map = map;
+        this.grid = new int[map.chunksW * map.chunksH][];
+        this.labeled = new boolean[grid.length];
+    }
+
+    // --- consultas ---
+    public synchronized int roomAt(int x, int y) {
+        if (!map.inBounds(x, y)) return NONE;
+        int ci = (y >> GameMap.CHUNK_SHIFT) * map.chunksW + (x >> GameMap.CHUNK_SHIFT);
+        if (!labeled[ci]) label(ci);
+        int[] g = grid[ci];
+        return g == null ? NONE : g[cell(x, y)] - 1;
+    }
+
+    // null si la sala se descartó por un cambio del mapa o al expulsar su chunk
+    public synchronized Room room(int id) {
+        return rooms.get(id);
+    }
+
+    public synchronized int buildingAt(int x, int y) {
+        int r = roomAt(x, y);
+        return r == NONE ? NONE : buildingOf(r);
+    }
+
+    // null si el edificio se descartó por un cambio del mapa o al expulsar su chunk
+    public synchronized Building building(int id) {
+        return buildings.get(id);
+    }
+
+    // salas conectadas a 'id' por una puerta
+    public synchronized int[] neighbors(int id) {
+        Room r = rooms.get(id);
+        if (r.neighbors != null) return r.neighbors;
+        int[] out = new int[0];
+        for (int i = 0; i < r.doorCount; i++) {
+            int dx = r.doorX(i), dy = r.doorY(i);
+            for (int d = 0; d < 4; d++) {
+                int o = roomAt(dx + DX[d], dy + DY[d]);
+                if (o == NONE || o == id || contains(out, o)) continue;
+                out = java.util.Arrays.copyOf(out, out.length + 1);
+                out[out.length - 1] = o;
+            }
+        }
+        r.neighbors = out;
+        return out;
+    }
+
+    public synchronized int buildingOf(int roomId) {
+        Room start = rooms.get(roomId);
+        if (start.building != NONE) return start.building;
+
+        // BFS por puertas; el edificio se crea una vez y queda anotado en todas sus salas
+        int[] members = {roomId};
+        int n = 1;
+        for (int i = 0; i < n; i++) {
+            for (int o : neighbors(members[i])) {
+                if (contains(members, n, o)) continue;
+                if (n == members.length) members = java.util.Arrays.copyOf(members, n * 2);
+                members[n++] = o;
+            }
+        }
+        members = java.util.Arrays.copyOf(members, n);
+
+        int id = freeBuildingCount > 0 ? freeBuildings[--freeBuildingCount] : buildings.size();
+        int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = Integer.MIN_VALUE, y1 = Integer.MIN_VALUE;
+        int[] ext = new int[0];
+        for (int rid : members) {
+            Room r = rooms.get(rid);
+            r.building = id;
+            x0 = Math.min(x0, r.x0 - 1); // caja con paredes
+            y0 = Math.min(y0, r.y0 - 1);
+            x1 = Math.max(x1, r.x1 + 1);
+            y1 = Math.max(y1, r.y1 + 1);
+            for (int i = 0; i < r.doorCount; i++) {
+                if (!isExterior(r.doorX(i), r.doorY(i))) continue;
+                ext = java.util.Arrays.copyOf(ext, ext.length + 2);
+                ext[ext.length - 2] = r.doorX(i);
+                ext[ext.length - 1] = r.doorY(i);
+            }
+        }
+        Building b = new Building(id, members, x0, y0, x1, y1, ext);
+        if (id == buildings.size()) buildings.add(b);
+        else buildings.set(id, b);
+        return id;
+    }
+
+    // salas vivas (etiquetadas y no descartadas)
+    public synchronized int roomCount() {
+        return rooms.size() - freeRoomCount;
+    }
+
+    // etiqueta ya todo el mapa (ids en orden de recorrido, deterministas); fuerza la carga de un mapa perezoso
+    public synchronized void labelAll() {
+        for (int ci = 0; ci < labeled.length; ci++) if (!labeled[ci]) label(ci);
+    }
+
+    // --- invalidación ---
+    @Override
+    public synchronized void mapChanged(GameMap m, int x0, int y0, int x1, int y1, long version) {
+        // salas con suelo a 2 o menos del cambio: sus paredes y puertas (1) y lo que hay tras las puertas (2),
+        // que decide si dan al exterior. Se leen en la rejilla: sólo el rectángulo, no todas las salas
+        dropIn(x0 - 2, y0 - 2, x1 + 2, y1 + 2);
+        // celdas interiores nuevas del rectángulo: se recogen al volver a etiquetar sus chunks
+        unlabel(x0 - 1, y0 - 1, x1 + 1, y1 + 1);
+    }
+
+    // GameMap.evicted (sin el cerrojo del mapa)
+    synchronized void chunkEvicted(int ci) {
+        int x0 = (ci % map.chunksW) << GameMap.CHUNK_SHIFT, y0 = (ci / map.chunksW) << GameMap.CHUNK_SHIFT;
+        if (map.isLoaded(x0, y0)) return; // ya ha vuelto
+        dropIn(x0, y0, x0 + GameMap.CHUNK - 1, y0 + GameMap.CHUNK - 1);
+        grid[ci] = null;
+        labeled[ci] = false;
+    }
+
+    // descarta las salas con alguna celda en el rectángulo (recortado al mapa)
+    private void dropIn(int x0, int y0, int x1, int y1) {
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(map.w - 1, x1);
+        y1 = Math.min(map.h - 1, y1);
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                int id = idAt(x, y) - 1;
+                if (id != NONE) drop(rooms.get(id));
+            }
+        }
+    }
+
+    private void drop(Room r) {
+        // quien la tenga de vecina la tiene al otro lado de una de sus puertas: se recalcula
+        for (int i = 0; i < r.doorCount; i++) {
+            for (int d = 0; d < 4; d++) {
+                int nx = r.doorX(i) + DX[d], ny = r.doorY(i) + DY[d];
+                int o = map.inBounds(nx, ny) ? idAt(nx, ny) - 1 : NONE;
+                if (o != NONE && o != r.id) rooms.get(o).neighbors = null;
+            }
+        }
+        for (int y = r.y0; y <= r.y1; y++)
+            for (int x = r.x0; x <= r.x1; x++) if (idAt(x, y) == r.id + 1) setId(x, y, 0);
+        unlabel(r.x0, r.y0, r.x1, r.y1);
+        rooms.set(r.id, null);
+        if (freeRoomCount == freeRooms.length) freeRooms = java.util.Arrays.copyOf(freeRooms, freeRoomCount * 2);
+        freeRooms[freeRoomCount++] = r.id;
+
+        if (r.building != NONE) {
+            Building b = buildings.get(r.building);
+            for (int rid : b.rooms) {
+                Room o = rooms.get(rid);
+                if (o != null) o.building = NONE;
+            }
+            buildings.set(b.id, null);
+            if (freeBuildingCount == freeBuildings.length) freeBuildings = java.util.Arrays.copyOf(freeBuildings, freeBuildingCount * 2);
+            freeBuildings[freeBuildingCount++] = b.id;
+        }
+    }
+
+    private void unlabel(int x0, int y0, int x1, int y1) {
+        int cx0 = Math.max(0, x0) >> GameMap.CHUNK_SHIFT, cx1 = Math.min(map.w - 1, x1) >> GameMap.CHUNK_SHIFT;
+        int cy0 = Math.max(0, y0) >> GameMap.CHUNK_SHIFT, cy1 = Math.min(map.h - 1, y1) >> GameMap.CHUNK_SHIFT;
+        for (int cy = cy0; cy <= cy1; cy++)
+            for (int cx = cx0; cx <= cx1; cx++) labeled[cy * map.chunksW + cx] = false;
+    }
+
+    // --- etiquetado ---
+    private void label(int ci) {
+        labeled[ci] = true;
+        int cx0 = (ci % map.chunksW) << GameMap.CHUNK_SHIFT, cy0 = (ci / map.chunksW) << GameMap.CHUNK_SHIFT;
+        int cx1 = Math.min(map.w, cx0 + GameMap.CHUNK) - 1, cy1 = Math.min(map.h, cy0 + GameMap.CHUNK) - 1;
+        for (int y = cy0; y <= cy1; y++) {
+            for (int x = cx0; x <= cx1; x++) {
+                if (map.indoor(x, y) && idAt(x, y) == 0) flood(x, y);
+            }
+        }
+    }
+
+    // rellena la sala que contiene (sx, sy); puede cruzar a chunks vecinos (quedan marcadas esas celdas)
+    private void flood(int sx, int sy) {
+        int id = freeRoomCount > 0 ? freeRooms[--freeRoomCount] : rooms.size();
+        Room r = new Room(id, sx, sy);
+        if (id == rooms.size()) rooms.add(r);
+        else rooms.set(id, r);
+        int[] q = new int[64];
+        int head = 0, tail = 0;
+        setId(sx, sy, r.id + 1);
+        q[tail++] = sx;
+        q[tail++] = sy;
+        while (head < tail) {
+            int x = q[head++], y = q[head++];
+            r.cells++;
+            if (x < r.x0) r.x0 = x;
+            if (x > r.x1) r.x1 = x;
+            if (y < r.y0) r.y0 = y;
+            if (y > r.y1) r.y1 = y;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DX[d], ny = y + DY[d];
+                if (!map.inBounds(nx, ny)) continue;
+                if (map.type(nx, ny) == Tiles.DOOR) {
+                    r.addDoor(nx, ny);
+                    continue;
+                }
+                if (!map.indoor(nx, ny) || idAt(nx, ny) != 0) continue;
+                setId(nx, ny, r.id + 1);
+                if (tail + 2 > q.length) {
+                    // compacta lo ya procesado antes de crecer
+                    System.arraycopy(q, head, q, 0, tail - head);
+                    tail -= head;
+                    head = 0;
+                    if (tail + 2 > q.length) q = java.util.Arrays.copyOf(q, q.length * 2);
+                }
+                q[tail++] = nx;
+                q[tail++] = ny;
+            }
+        }
+    }
+
+    private boolean isExterior(int dx, int dy) {
+        for (int d = 0; d < 4; d++) {
+            int nx = dx + DX[d], ny = dy + DY[d];
+            if (map.inBounds(nx, ny) && map.walkable(nx, ny) && !map.indoor(nx, ny) && map.type(nx, ny) != Tiles.DOOR) return true;
+        }
+        return false;
+    }
+
+    private int idAt(int x, int y) {
+        int[] g = grid[(y >> GameMap.CHUNK_SHIFT) * map.chunksW + (x >> GameMap.CHUNK_SHIFT)];
+        return g == null ? 0 : g[cell(x, y)];
+    }
+
+    private void setId(int x, int y, int v) {
+        int ci = (y >> GameMap.CHUNK_SHIFT) * map.chunksW + (x >> GameMap.CHUNK_SHIFT);
+        if (grid[ci] == null) grid[ci] = new int[GameMap.CHUNK * GameMap.CHUNK];
+        grid[ci][cell(x, y)] = v;
+    }
+
+    private static int cell(int x, int y) {
+        return ((y & (GameMap.CHUNK - 1)) << GameMap.CHUNK_SHIFT) | (x & (GameMap.CHUNK - 1));
+    }
+
+    private static boolean contains(int[] a, int v) {
+        return contains(a, a.length, v);
+    }
+
+    private static boolean contains(int[] a, int n, int v) {
+        for (int i = 0; i < n; i++) if (a[i] == v) return true;
+        return false;
+    }
+}
@@ -0,0 +1,52 @@
+package world;
+
+// Tabla de tipos de casilla: id compacto (4 bits) <-> glifo y flags por defecto
+public final class Tiles {
+    private Tiles() {
+    }
+
+    public static final int FLOOR = 0;
+    public static final int TREE = 1;
+    public static final int WATER = 2;
+    public static final int ROCK = 3;
+    public static final int WALL_NW = 4;
+    public static final int WALL_NE = 5;
+    public static final int WALL_SW = 6;
+    public static final int WALL_SE = 7;
+    public static final int WALL_H = 8;
+    public static final int WALL_V = 9;
+    public static final int DOOR = 10;
+    public static final int ROAD = 11;
+
+    public static final int COUNT = 12;
+
+    private static final char[] GLYPH = {'.', '#', '~', '^', '╔', '╗', '╚', '╝', '═', '║', '+', ':'};
+    private static final boolean[] WALK = {true, false, false, false, false, false, false, false, false, false, true, true};
+    private static final boolean[] TRANSP = {true, false, true, false, false, false, false, false, false, false, true, true};
+
+    public static char glyph(int type) {
+        return GLYPH[type];
+    }
+
+    public static boolean walkable(int type) {
+        return WALK[type];
+    }
+
+    public static boolean transparent(int type) {
+        return TRANSP[type];
+    }
+
+    public static boolean isWall(int type) {
+        return type >= WALL_NW && type <= WALL_V;
+    }
+
+    // paredes o puerta: cualquier cosa que ya forme parte de una casa
+    public static boolean isStructure(int type) {
+        return type >= WALL_NW && type <= DOOR;
+    }
+
+    public static int fromGlyph(char ch) {
+        for (int t = 0; t < COUNT; t++) if (GLYPH[t] == ch) return t;
+        throw new IllegalArgumentException("Glifo de casilla desconocido: " + ch);
+    }
+}
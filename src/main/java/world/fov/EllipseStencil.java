@@ -0,0 +1,44 @@
+package world.fov;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// Plantilla de la elipse de la vista, dx² + (dy · aspecto)² <= r², como tramos por fila: para cada dy, el
+// mayor |dx| que entra. Sólo depende de (radio, aspecto), así que se calcula una vez por pareja y se guarda;
+// se aplica relativa a la posición del jugador sin reservar nada y "¿está (dx, dy) dentro?" es O(1).
+public final class EllipseStencil {
+    private record Key(int radius, double aspect) {
+    }
+
+    private static final ConcurrentHashMap<Key, EllipseStencil> CACHE = new ConcurrentHashMap<>();
+
+    public final int radius, ry; // ry: filas a cada lado del centro
+    private final int[] half;    // por fila (dy + ry): mayor |dx| dentro
+
+    private EllipseStencil(int radius, double aspect) {
+        this.radius = radius;
+        double r2 = radius * (double) radius;
+        int rows = 0;
+        while ((rows + 1) * aspect * ((rows + 1) * aspect) <= r2) rows++;
+        ry = rows;
+        half = new int[2 * ry + 1];
+        for (int dy = -ry; dy <= ry; dy++) {
+            double dyAdj = dy * aspect;
+            int dx = 0;
+            while ((dx + 1) * (dx + 1) + dyAdj * dyAdj <= r2) dx++;
+            half[dy + ry] = dx;
+        }
+    }
+
+    public static EllipseStencil of(int radius, double aspect) {
+        return CACHE.computeIfAbsent(new Key(Math.max(0, radius), aspect <= 0 ? 2.0 : aspect), k -> new EllipseStencil(k.radius(), k.aspect()));
+    }
+
+    // mayor |dx| de la fila dy; -1 si la fila cae fuera
+    public int half(int dy) {
+        return dy < -ry || dy > ry ? -1 : half[dy + ry];
+    }
+
+    public boolean contains(int dx, int dy) {
+        return dy >= -ry && dy <= ry && Math.abs(dx) <= half[dy + ry];
+    }
+}
@@ -0,0 +1,69 @@
+package world.fov;
+
+import world.GameMap;
+import world.MapListener;
+
+// Último campo de visión calculado, con clave (origen, radios, versión del mapa): si el jugador no se ha
+// movido y el mapa no ha cambiado, update() devuelve el mismo campo sin mirar una casilla (redibujos por un
+// zombi o por el reloj del HUD). Cada versión nueva del mapa llega como aviso (listener) con su rectángulo;
+// de ahí se apunta qué cuadrantes tocan los cambios que caen dentro de la caja del campo, y si el origen
+// sigue igual sólo se rehacen esos (cada cuadrante se calcula sin mirar los demás). Un cambio fuera de la
+// caja no invalida nada. Los radios son fijos por caché.
+public final class FovCache implements MapListener {
+    private final int radius, outer;
+    private final ShadowCaster caster;
+    private final FovField field;
+    private GameMap map;
+    private boolean valid;
+    private int ox, oy;
+    private int dirty; // cuadrantes (1 << q) tocados por cambios desde el último cálculo
+
+    public FovCache(int radius, int outer, double aspect) {
+        this.radius = radius;
+        this.outer = Math.max(radius, outer);
+        this.caster = new ShadowCaster(aspect);
+        this.field = new FovField(this.outer, aspect);
+    }
+
+    // campo desde (px, py) en 'map', al día; el mismo objeto en cada llamada
+    public synchronized FovField update(GameMap map, int px, int py) {
+        if (map != this.map) {
+            if (this.map != null) this.map.removeListener(this);
+            this.map = map;
+            map.addListener(this);
+            valid = false;
+        }
+        if (valid && px == ox && py == oy) {
+            if (dirty == 0) return field;
+            for (int q = 0; q < ShadowCaster.QUADRANTS; q++) {
+                if ((dirty & 1 << q) == 0) continue;
+                field.clear(q);
+                caster.castQuadrant(map, px, py, radius, outer, q, field);
+            }
+        } else {
+            field.reset(px, py);
+            caster.cast(map, px, py, radius, outer, field);
+        }
+        ox = px;
+        oy = py;
+        dirty = 0;
+        valid = true;
+        return field;
+    }
+
+    // resultado del último update() (vacío si no lo ha habido)
+    public FovField field() {
+        return field;
+    }
+
+    @Override
+    public synchronized void mapChanged(GameMap m, int x0, int y0, int x1, int y1, long version) {
+        if (!valid || m != map || dirty == (1 << ShadowCaster.QUADRANTS) - 1) return;
+        x0 = Math.max(x0, field.minX());
+        y0 = Math.max(y0, field.minY());
+        x1 = Math.min(x1, field.maxX());
+        y1 = Math.min(y1, field.maxY());
+        for (int y = y0; y <= y1; y++)
+            for (int x = x0; x <= x1; x++) dirty |= ShadowCaster.quadrantsOf(x - ox, y - oy);
+    }
+}
@@ -0,0 +1,95 @@
+package world.fov;
+
+// Resultado de un campo de visión (el Sink de ShadowCaster): máscaras visible / detectado sólo del rectángulo
+// que puede cubrir la elipse alrededor del origen, no del mapa entero. Cada casilla guarda el sello de la
+// pasada que la marcó, así que empezar una pasada nueva es incrementar el sello, sin limpiar nada: el coste
+// por pasada no depende del tamaño del mapa. Hay un juego de máscaras y un sello por cuadrante, para poder
+// rehacer uno solo (clear + ShadowCaster.castQuadrant) sin perder lo que los otros ven en las diagonales.
+public final class FovField implements ShadowCaster.Sink {
+    private static final int Q = ShadowCaster.QUADRANTS;
+
+    private final int rx, ry, w;
+    private final int[][] vis = new int[Q][], det = new int[Q][];
+    private final int[] stamp = new int[Q];
+    private int q; // cuadrante que está escribiendo
+    private int x0, y0;
+
+    // 'outer': radio exterior de las pasadas; 'aspect' el mismo del ShadowCaster
+    public FovField(int outer, double aspect) {
+        EllipseStencil e = EllipseStencil.of(outer, aspect);
+        rx = e.half(0);
+        ry = e.ry;
+        w = 2 * rx + 1;
+        for (int k = 0; k < Q; k++) {
+            vis[k] = new int[w * (2 * ry + 1)];
+            det[k] = new int[vis[k].length];
+            stamp[k] = 1; // los arrays empiezan a 0: nada marcado
+        }
+    }
+
+    // vacía el campo y lo centra en (ox, oy) antes de una pasada
+    public void reset(int ox, int oy) {
+        x0 = ox - rx;
+        y0 = oy - ry;
+        for (int k = 0; k < Q; k++) clear(k);
+    }
+
+    // vacía sólo lo que vio el cuadrante k
+    public void clear(int k) {
+        if (++stamp[k] == 0) { // desbordamiento del sello: ahora sí toca limpiar
+            java.util.Arrays.fill(vis[k], 0);
+            java.util.Arrays.fill(det[k], 0);
+            stamp[k] = 1;
+        }
+    }
+
+    // rectángulo que cubre el campo (inclusivo)
+    public int minX() {
+        return x0;
+    }
+
+    public int minY() {
+        return y0;
+    }
+
+    public int maxX() {
+        return x0 + 2 * rx;
+    }
+
+    public int maxY() {
+        return y0 + 2 * ry;
+    }
+
+    @Override
+    public void quadrant(int q) {
+        this.q = q;
+    }
+
+    @Override
+    public void see(int x, int y, boolean inner) {
+        int i = index(x, y);
+        if (i < 0) return;
+        if (inner) vis[q][i] = stamp[q];
+        else det[q][i] = stamp[q];
+    }
+
+    public boolean visible(int x, int y) {
+        int i = index(x, y);
+        if (i < 0) return false;
+        for (int k = 0; k < Q; k++) if (vis[k][i] == stamp[k]) return true;
+        return false;
+    }
+
+    public boolean detected(int x, int y) {
+        int i = index(x, y);
+        if (i < 0) return false;
+        for (int k = 0; k < Q; k++) if (det[k][i] == stamp[k]) return true;
+        return false;
+    }
+
+    private int index(int x, int y) {
+        int dx = x - x0, dy = y - y0;
+        if (dx < 0 || dy < 0 || dx >= w || dy > 2 * ry) return -1;
+        return dy * w + dx;
+    }
+}
@@ -0,0 +1,136 @@
+package world.fov;
+
+import world.GameMap;
+
+// Campo de visión por sombras recursivas simétricas (symmetric shadowcasting). Cada cuadrante se recorre
+// por filas alejándose del origen con un abanico de pendientes [inicio, fin]; una pared parte el abanico y
+// la fila siguiente sólo mira lo que queda entre paredes, así que cada casilla se consulta una vez (no un
+// trazo de Bresenham por casilla) y el coste va con lo que se ve. Es simétrico: una casilla transparente
+// sólo cuenta si su centro cae dentro del abanico, de modo que si A ve a B, B ve a A. Las paredes que
+// tocan el abanico se ven. La forma es la elipse de la vista, dx² + (dy · aspecto)² <= r², con un radio
+// interior (visible) y uno exterior (periferia detectada) resueltos en la misma pasada.
+// No es reentrante: guarda el estado de la pasada en curso, uno por usuario.
+public final class ShadowCaster {
+    public interface Sink {
+        // (x, y) se ve desde el origen; inner = dentro del radio interior (si no, en la periferia)
+        void see(int x, int y, boolean inner);
+
+        // los see() que siguen son del cuadrante q (el origen se da en cada cuadrante)
+        default void quadrant(int q) {
+        }
+    }
+
+    public static final int QUADRANTS = 4; // norte, este, sur, oeste
+
+    private final double aspect;
+    // pasada en curso
+    private GameMap map;
+    private Sink sink;
+    private int ox, oy, quadrant, maxDepth, maxCol;
+    private EllipseStencil inner, outer;
+
+    // aspecto: alto/ancho de la celda en pantalla (2.0 -> la elipse es la mitad de alta que de ancha)
+    public ShadowCaster(double aspect) {
+        this.aspect = aspect <= 0 ? 2.0 : aspect;
+    }
+
+    public double aspect() {
+        return aspect;
+    }
+
+    // todo lo que se ve desde (ox, oy) hasta el radio 'outer' (>= radius), incluido el origen
+    public void cast(GameMap map, int ox, int oy, int radius, int outer, Sink sink) {
+        if (!map.inBounds(ox, oy)) return;
+        begin(map, ox, oy, radius, outer, sink);
+        for (int q = 0; q < QUADRANTS; q++) quadrant(q);
+        end();
+    }
+
+    // sólo el cuadrante 'q', para rehacer la parte de un campo que haya cambiado
+    public void castQuadrant(GameMap map, int ox, int oy, int radius, int outer, int q, Sink sink) {
+        if (!map.inBounds(ox, oy)) return;
+        begin(map, ox, oy, radius, outer, sink);
+        quadrant(q);
+        end();
+    }
+
+    // cuadrantes (1 << q) cuyo resultado depende de la casilla (dx, dy) respecto al origen: cada cuadrante
+    // se calcula sin mirar los demás, y sólo las diagonales (y el origen) caen en más de uno
+    public static int quadrantsOf(int dx, int dy) {
+        int ax = Math.abs(dx), ay = Math.abs(dy), m = 0;
+        if (dx == 0 && dy == 0) return (1 << QUADRANTS) - 1;
+        if (dy < 0 && ax <= ay) m |= 1;
+        if (dx > 0 && ay <= ax) m |= 1 << 1;
+        if (dy > 0 && ax <= ay) m |= 1 << 2;
+        if (dx < 0 && ay <= ax) m |= 1 << 3;
+        return m;
+    }
+
+    private void begin(GameMap map, int ox, int oy, int radius, int outer, Sink sink) {
+        this.map = map;
+        this.sink = sink;
+        this.ox = ox;
+        this.oy = oy;
+        this.inner = EllipseStencil.of(radius, aspect);
+        this.outer = EllipseStencil.of(Math.max(radius, outer), aspect);
+    }
+
+    private void end() {
+        map = null;
+        sink = null;
+    }
+
+    private void quadrant(int q) {
+        quadrant = q;
+        int across = outer.ry, along = outer.half(0); // semiejes de la elipse en casillas
+        // norte/sur avanzan por filas (profundidad = |dy|); este/oeste por columnas (profundidad = |dx|).
+        // Fuera de la caja de la elipse no se mira nada: una pared de ahí no tapa nada que esté dentro.
+        maxDepth = (q & 1) == 0 ? across : along;
+        maxCol = (q & 1) == 0 ? along : across;
+        sink.quadrant(q);
+        sink.see(ox, oy, true);
+        scan(1, -1, 1, 1, 1);
+    }
+
+    // fila a 'depth' con el abanico [sn/sd, en/ed]
+    private void scan(int depth, int sn, int sd, int en, int ed) {
+        if (depth > maxDepth) return;
+        int lo = Math.max(-maxCol, Math.floorDiv(2 * depth * sn + sd, 2 * sd));  // redondeo con empates hacia arriba
+        int hi = Math.min(maxCol, -Math.floorDiv(ed - 2 * depth * en, 2 * ed)); // y hacia abajo
+        int prev = -1; // -1 nada aún, 0 transparente, 1 pared
+        for (int col = lo; col <= hi; col++) {
+            int x = x(depth, col), y = y(depth, col);
+            boolean wall = !map.inBounds(x, y) || !map.transparent(x, y);
+            if (wall || (col * sd >= depth * sn && col * ed <= depth * en)) reveal(x, y);
+            if (prev == 1 && !wall) { // sale de una pared: el abanico empieza en su borde
+                sn = 2 * col - 1;
+                sd = 2 * depth;
+            }
+            if (prev == 0 && wall) scan(depth + 1, sn, sd, 2 * col - 1, 2 * depth); // lo de antes de la pared
+            prev = wall ? 1 : 0;
+        }
+        if (prev == 0) scan(depth + 1, sn, sd, en, ed);
+    }
+
+    private void reveal(int x, int y) {
+        if (!map.inBounds(x, y)) return;
+        int dx = x - ox, dy = y - oy;
+        if (outer.contains(dx, dy)) sink.see(x, y, inner.contains(dx, dy));
+    }
+
+    private int x(int depth, int col) {
+        return switch (quadrant) {
+            case 1 -> ox + depth;
+            case 3 -> ox - depth;
+            default -> ox + col;
+        };
+    }
+
+    private int y(int depth, int col) {
+        return switch (quadrant) {
+            case 0 -> oy - depth;
+            case 2 -> oy + depth;
+            default -> oy + col;
+        };
+    }
+}
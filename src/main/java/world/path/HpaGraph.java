@@ -0,0 +1,433 @@
+package world.path;
+
+import world.GameMap;
+import world.MapListener;
+
+// Búsqueda de caminos jerárquica (HPA*) sobre la rejilla de paso, con movimiento en 4 direcciones.
+// El mapa se parte en clusters de CLUSTER x CLUSTER; en cada borde entre clusters vecinos, cada tramo
+// transitable por ambos lados aporta una o dos transiciones (par de nodos, coste 1). Dentro de cada
+// cluster se precalculan las distancias entre sus nodos y los caminos se guardan al refinarlos.
+// Los clusters se construyen al primer uso (sirve para mundos perezosos) y un cambio del mapa sólo
+// invalida los clusters que toca y sus bordes.
+public final class HpaGraph implements MapListener {
+    public static final int CLUSTER = 16;
+    private static final int AREA = CLUSTER * CLUSTER;
+    private static final int WIDE_ENTRANCE = 6; // tramos de esta longitud o más -> una transición en cada extremo
+    private static final int[] DX = {1, -1, 0, 0}, DY = {0, 0, 1, -1};
+
+    private final GameMap map;
+    private final int cw, ch;
+    private final Cluster[] clusters;
+    // bordes: vertical entre (cx,cy)-(cx+1,cy) y horizontal entre (cx,cy)-(cx,cy+1), ambos con índice cy*cw+cx
+    private final int[][] vBorder, hBorder; // ids de nodo del borde (null = sin construir)
+
+    // nodos del grafo abstracto
+    private int nodeCount;
+    private int[] nodeX = new int[256], nodeY = new int[256], nodeCluster = new int[256], nodePartner = new int[256], nodeSlot = new int[256];
+    private int[] free = new int[64];
+    private int freeCount;
+
+    private static final class Cluster {
+        boolean built;
+        int[] nodes = new int[0];
+        int[] dist;    // k*k, -1 = no conectados dentro del cluster
+        int[][] paths; // k*k, caminos ya refinados (celdas empaquetadas, sin la de salida)
+    }
+
+    // exploraciones reutilizables: salida, llegada y la de construcción/refinado
+    private final Bfs fromStart = new Bfs(), fromGoal = new Bfs(), scratch = new Bfs();
+
+    // A*: arrays por nodo con sello de búsqueda y montículo binario
+    private int searchStamp;
+    private int[] seen = new int[256], closed = new int[256], gCost = new int[256], parent = new int[256];
+    private int[] heapNode = new int[256], heapF = new int[256];
+    private int heapSize;
+
+    public HpaGraph(GameMap map) {
+        this.map = map;
+        this.cw = (map.w + CLUSTER - 1) / CLUSTER;
+        this.ch = (map.h + CLUSTER - 1) / CLUSTER;
+        this.clusters = new Cluster[cw * ch];
+        for (int i = 0; i < clusters.length; i++) clusters[i] = new Cluster();
+        this.vBorder = new int[cw * ch][];
+        this.hBorder = new int[cw * ch][];
+        map.addListener(this);
+    }
+
+    public synchronized int nodeCount() {
+        return nodeCount - freeCount;
+    }
+
+    // Camino de (sx,sy) a (gx,gy) como celdas empaquetadas (y * w + x), sin la de salida y con la de llegada.
+    // Vacío si ya está en destino; null si no hay camino o algún extremo no es transitable.
+    public synchronized int[] findPath(int sx, int sy, int gx, int gy) {
+        if (!map.inBounds(sx, sy) || !map.inBounds(gx, gy) || !map.walkable(sx, sy) || !map.walkable(gx, gy)) return null;
+        if (sx == gx && sy == gy) return new int[0];
+        int sc = clusterOf(sx, sy), gc = clusterOf(gx, gy);
+        ensureCluster(sc);
+        ensureCluster(gc);
+
+        // mismo cluster: camino local directo si existe sin salir de él
+        if (sc == gc) {
+            scratch.run(map, sc, sx, sy);
+            if (scratch.distTo(gx, gy) >= 0) return scratch.pathTo(gx, gy);
+        }
+
+        fromStart.run(map, sc, sx, sy);
+        fromGoal.run(map, gc, gx, gy);
+        int last = astar(sc, gc, gx, gy);
+        if (last < 0) return null;
+        return refine(last);
+    }
+
+    // --- A* sobre el grafo abstracto: devuelve el último nodo antes del destino (o -1) ---
+    private int astar(int sc, int gc, int gx, int gy) {
+        growSearch(nodeCount);
+        if (++searchStamp == 0) {
+            java.util.Arrays.fill(seen, 0);
+            java.util.Arrays.fill(closed, 0);
+            searchStamp = 1;
+        }
+        heapSize = 0;
+        int bestGoal = Integer.MAX_VALUE, goalFrom = -1;
+
+        for (int n : clusters[sc].nodes) {
+            int d = fromStart.distTo(nodeX[n], nodeY[n]);
+            if (d >= 0) relax(n, d, -1, gx, gy);
+        }
+        while (heapSize > 0) {
+            if (heapF[0] >= bestGoal) break; // heurística admisible: ya no se puede mejorar
+            int n = pop();
+            if (closed[n] == searchStamp) continue;
+            closed[n] = searchStamp;
+            int c = nodeCluster[n], g = gCost[n];
+
+            if (c == gc) {
+                int d = fromGoal.distTo(nodeX[n], nodeY[n]);
+                if (d >= 0 && g + d < bestGoal) {
+                    bestGoal = g + d;
+                    goalFrom = n;
+                }
+            }
+            int p = nodePartner[n];
+            if (p >= 0) {
+                ensureCluster(nodeCluster[p]); // puede crear nodos: los arrays de búsqueda crecen con ellos
+                growSearch(nodeCount);
+                relax(p, g + 1, n, gx, gy);
+            }
+            Cluster cl = clusters[c];
+            int k = cl.nodes.length, i = nodeSlot[n];
+            for (int j = 0; j < k; j++) {
+                int d = cl.dist[i * k + j];
+                if (j != i && d >= 0) relax(cl.nodes[j], g + d, n, gx, gy);
+            }
+        }
+        return goalFrom;
+    }
+
+    private void relax(int n, int g, int from, int gx, int gy) {
+        if (seen[n] == searchStamp && (closed[n] == searchStamp || gCost[n] <= g)) return;
+        seen[n] = searchStamp;
+        gCost[n] = g;
+        parent[n] = from;
+        push(n, g + Math.abs(nodeX[n] - gx) + Math.abs(nodeY[n] - gy));
+    }
+
+    // --- refinado: de la secuencia de nodos a celdas ---
+    private int[] refine(int last) {
+        int len = 0;
+        for (int n = last; n >= 0; n = parent[n]) len++;
+        int[] seq = new int[len];
+        for (int n = last, i = len - 1; n >= 0; n = parent[n]) seq[i--] = n;
+
+        // salida -> primer nodo
+        int[] out = fromStart.pathTo(nodeX[seq[0]], nodeY[seq[0]]);
+        int size = out.length;
+        for (int i = 0; i + 1 < seq.length; i++) {
+            int a = seq[i], b = seq[i + 1];
+            int[] seg = nodePartner[a] == b ? new int[]{nodeY[b] * map.w + nodeX[b]} : intraPath(a, b);
+            if (size + seg.length > out.length) out = java.util.Arrays.copyOf(out, Math.max(size + seg.length, out.length * 2));
+            System.arraycopy(seg, 0, out, size, seg.length);
+            size += seg.length;
+        }
+        // último nodo -> destino (la exploración desde el destino da los padres hacia él)
+        int x = nodeX[last], y = nodeY[last];
+        int d = fromGoal.distTo(x, y);
+        out = java.util.Arrays.copyOf(out, size + d);
+        for (int i = 0; i < d; i++) {
+            int p = fromGoal.parentOf(x, y);
+            x = p % map.w;
+            y = p / map.w;
+            out[size++] = p;
+        }
+        return out;
+    }
+
+    private int[] intraPath(int a, int b) {
+        Cluster cl = clusters[nodeCluster[a]];
+        int k = cl.nodes.length, key = nodeSlot[a] * k + nodeSlot[b];
+        int[] p = cl.paths[key];
+        if (p == null) {
+            scratch.run(map, nodeCluster[a], nodeX[a], nodeY[a]);
+            p = scratch.pathTo(nodeX[b], nodeY[b]);
+            cl.paths[key] = p;
+        }
+        return p;
+    }
+
+    // --- construcción perezosa ---
+    private int clusterOf(int x, int y) {
+        return (y / CLUSTER) * cw + (x / CLUSTER);
+    }
+
+    private void ensureCluster(int c) {
+        Cluster cl = clusters[c];
+        if (cl.built) return;
+        int cx = c % cw, cy = c / cw;
+        if (cx > 0) ensureVBorder(c - 1);
+        if (cx < cw - 1) ensureVBorder(c);
+        if (cy > 0) ensureHBorder(c - cw);
+        if (cy < ch - 1) ensureHBorder(c);
+
+        // nodos propios = los de sus bordes que caen de este lado
+        int[] nodes = new int[8];
+        int k = 0;
+        int[][] borders = {cx > 0 ? vBorder[c - 1] : null, cx < cw - 1 ? vBorder[c] : null, cy > 0 ? hBorder[c - cw] : null, cy < ch - 1 ? hBorder[c] : null};
+        for (int[] b : borders) {
+            if (b == null) continue;
+            for (int n : b) {
+                if (nodeCluster[n] != c) continue;
+                if (k == nodes.length) nodes = java.util.Arrays.copyOf(nodes, k * 2);
+                nodeSlot[n] = k;
+                nodes[k++] = n;
+            }
+        }
+        cl.nodes = java.util.Arrays.copyOf(nodes, k);
+        cl.dist = new int[k * k];
+        cl.paths = new int[k * k][];
+        for (int i = 0; i < k; i++) {
+            scratch.run(map, c, nodeX[cl.nodes[i]], nodeY[cl.nodes[i]]);
+            for (int j = 0; j < k; j++) cl.dist[i * k + j] = scratch.distTo(nodeX[cl.nodes[j]], nodeY[cl.nodes[j]]);
+        }
+        cl.built = true;
+    }
+
+    // borde vertical entre c y c+1: columna derecha de c contra columna izquierda de c+1
+    private void ensureVBorder(int c) {
+        if (vBorder[c] != null) return;
+        int xa = (c % cw) * CLUSTER + CLUSTER - 1, xb = xa + 1;
+        int y0 = (c / cw) * CLUSTER, y1 = Math.min(map.h, y0 + CLUSTER) - 1;
+        int[] ids = new int[0];
+        int y = y0;
+        while (y <= y1) {
+            if (!(map.walkable(xa, y) && map.walkable(xb, y))) {
+                y++;
+                continue;
+            }
+            int s = y;
+            while (y <= y1 && map.walkable(xa, y) && map.walkable(xb, y)) y++;
+            int e = y - 1;
+            if (e - s + 1 < WIDE_ENTRANCE) ids = transition(ids, xa, (s + e) / 2, c, xb, (s + e) / 2, c + 1);
+            else {
+                ids = transition(ids, xa, s, c, xb, s, c + 1);
+                ids = transition(ids, xa, e, c, xb, e, c + 1);
+            }
+        }
+        vBorder[c] = ids;
+    }
+
+    // borde horizontal entre c y c+cw: fila inferior de c contra fila superior de c+cw
+    private void ensureHBorder(int c) {
+        if (hBorder[c] != null) return;
+        int ya = (c / cw) * CLUSTER + CLUSTER - 1, yb = ya + 1;
+        int x0 = (c % cw) * CLUSTER, x1 = Math.min(map.w, x0 + CLUSTER) - 1;
+        int[] ids = new int[0];
+        int x = x0;
+        while (x <= x1) {
+            if (!(map.walkable(x, ya) && map.walkable(x, yb))) {
+                x++;
+                continue;
+            }
+            int s = x;
+            while (x <= x1 && map.walkable(x, ya) && map.walkable(x, yb)) x++;
+            int e = x - 1;
+            if (e - s + 1 < WIDE_ENTRANCE) ids = transition(ids, (s + e) / 2, ya, c, (s + e) / 2, yb, c + cw);
+            else {
+                ids = transition(ids, s, ya, c, s, yb, c + cw);
+                ids = transition(ids, e, ya, c, e, yb, c + cw);
+            }
+        }
+        hBorder[c] = ids;
+    }
+
+    private int[] transition(int[] ids, int ax, int ay, int ac, int bx, int by, int bc) {
+        int a = newNode(ax, ay, ac), b = newNode(bx, by, bc);
+        nodePartner[a] = b;
+        nodePartner[b] = a;
+        ids = java.util.Arrays.copyOf(ids, ids.length + 2);
+        ids[ids.length - 2] = a;
+        ids[ids.length - 1] = b;
+        return ids;
+    }
+
+    private int newNode(int x, int y, int c) {
+        int id;
+        if (freeCount > 0) id = free[--freeCount];
+        else {
+            id = nodeCount++;
+            if (id == nodeX.length) {
+                int cap = id * 2;
+                nodeX = java.util.Arrays.copyOf(nodeX, cap);
+                nodeY = java.util.Arrays.copyOf(nodeY, cap);
+                nodeCluster = java.util.Arrays.copyOf(nodeCluster, cap);
+                nodePartner = java.util.Arrays.copyOf(nodePartner, cap);
+                nodeSlot = java.util.Arrays.copyOf(nodeSlot, cap);
+            }
+        }
+        nodeX[id] = x;
+        nodeY[id] = y;
+        nodeCluster[id] = c;
+        nodePartner[id] = -1;
+        return id;
+    }
+
+    // --- reparación incremental ---
+    @Override
+    public synchronized void mapChanged(GameMap m, int x0, int y0, int x1, int y1, long version) {
+        int cx0 = Math.max(0, x0 - 1) / CLUSTER, cx1 = Math.min(m.w - 1, x1 + 1) / CLUSTER;
+        int cy0 = Math.max(0, y0 - 1) / CLUSTER, cy1 = Math.min(m.h - 1, y1 + 1) / CLUSTER;
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int c = cy * cw + cx;
+                clusters[c].built = false;
+                if (cx > 0) dropBorder(vBorder, c - 1, c - 1);
+                if (cx < cw - 1) dropBorder(vBorder, c, c + 1);
+                if (cy > 0) dropBorder(hBorder, c - cw, c - cw);
+                if (cy < ch - 1) dropBorder(hBorder, c, c + cw);
+            }
+        }
+    }
+
+    // libera los nodos del borde; el cluster vecinal 'other' pierde nodos, así que también se reconstruye
+    private void dropBorder(int[][] borders, int index, int other) {
+        int[] ids = borders[index];
+        if (ids == null) return;
+        for (int n : ids) {
+            nodeCluster[n] = -1;
+            nodePartner[n] = -1;
+            if (freeCount == free.length) free = java.util.Arrays.copyOf(free, freeCount * 2);
+            free[freeCount++] = n;
+        }
+        borders[index] = null;
+        clusters[other].built = false;
+    }
+
+    // --- montículo ---
+    private void growSearch(int n) {
+        if (seen.length >= n) return;
+        int cap = Math.max(n, seen.length * 2);
+        seen = java.util.Arrays.copyOf(seen, cap);
+        closed = java.util.Arrays.copyOf(closed, cap);
+        gCost = java.util.Arrays.copyOf(gCost, cap);
+        parent = java.util.Arrays.copyOf(parent, cap);
+    }
+
+    private void push(int n, int f) {
+        if (heapSize == heapNode.length) {
+            heapNode = java.util.Arrays.copyOf(heapNode, heapSize * 2);
+            heapF = java.util.Arrays.copyOf(heapF, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int p = (i - 1) >> 1;
+            if (heapF[p] <= f) break;
+            heapNode[i] = heapNode[p];
+            heapF[i] = heapF[p];
+            i = p;
+        }
+        heapNode[i] = n;
+        heapF[i] = f;
+    }
+
+    private int pop() {
+        int top = heapNode[0];
+        int n = heapNode[--heapSize], f = heapF[heapSize];
+        int i = 0;
+        while (true) {
+            int l = 2 * i + 1;
+            if (l >= heapSize) break;
+            int r = l + 1, m = (r < heapSize && heapF[r] < heapF[l]) ? r : l;
+            if (heapF[m] >= f) break;
+            heapNode[i] = heapNode[m];
+            heapF[i] = heapF[m];
+            i = m;
+        }
+        heapNode[i] = n;
+        heapF[i] = f;
+        return top;
+    }
+
+    // BFS restringido a un cluster, con distancias y padres por celda local
+    private final class Bfs {
+        final int[] dist = new int[AREA], par = new int[AREA], mark = new int[AREA], queue = new int[AREA];
+        int stamp, x0, y0, x1, y1;
+
+        void run(GameMap m, int c, int sx, int sy) {
+            x0 = (c % cw) * CLUSTER;
+            y0 = (c / cw) * CLUSTER;
+            x1 = Math.min(m.w, x0 + CLUSTER) - 1;
+            y1 = Math.min(m.h, y0 + CLUSTER) - 1;
+            if (++stamp == 0) {
+                java.util.Arrays.fill(mark, 0);
+                stamp = 1;
+            }
+            int head = 0, tail = 0, s = local(sx, sy);
+            mark[s] = stamp;
+            dist[s] = 0;
+            par[s] = -1;
+            queue[tail++] = s;
+            while (head < tail) {
+                int cur = queue[head++];
+                int x = x0 + cur % CLUSTER, y = y0 + cur / CLUSTER;
+                for (int d = 0; d < 4; d++) {
+                    int nx = x + DX[d], ny = y + DY[d];
+                    if (nx < x0 || ny < y0 || nx > x1 || ny > y1) continue;
+                    int li = local(nx, ny);
+                    if (mark[li] == stamp || !m.walkable(nx, ny)) continue;
+                    mark[li] = stamp;
+                    dist[li] = dist[cur] + 1;
+                    par[li] = cur;
+                    queue[tail++] = li;
+                }
+            }
+        }
+
+        int local(int x, int y) {
+            return (y - y0) * CLUSTER + (x - x0);
+        }
+
+        int distTo(int x, int y) {
+            if (x < x0 || y < y0 || x > x1 || y > y1) return -1;
+            int li = local(x, y);
+            return mark[li] == stamp ? dist[li] : -1;
+        }
+
+        // celda empaquetada del padre de (x, y) en el árbol de la exploración
+        int parentOf(int x, int y) {
+            int p = par[local(x, y)];
+            return (y0 + p / CLUSTER) * map.w + (x0 + p % CLUSTER);
+        }
+
+        // camino desde el origen hasta (x, y), sin el origen
+        int[] pathTo(int x, int y) {
+            int d = distTo(x, y);
+            int[] res = new int[d];
+            int li = local(x, y);
+            for (int i = d - 1; i >= 0; i--) {
+                res[i] = (y0 + li / CLUSTER) * map.w + (x0 + li % CLUSTER);
+                li = par[li];
+            }
+            return res;
+        }
+    }
+}
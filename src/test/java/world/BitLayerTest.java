@@ -0,0 +1,119 @@
+package world;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// floodWithin (relleno palabra a palabra) contra un BFS celda a celda sobre máscaras al azar, con anchos que
+// no son múltiplo de 64 para pillar los bits sueltos del final de cada fila.
+class BitLayerTest {
+    private static final int[] DX = {1, -1, 0, 0}, DY = {0, 0, 1, -1};
+
+    @Test
+    void floodWithinMatchesBfs() {
+        Random rng = new Random(11);
+        for (int t = 0; t < 300; t++) {
+            int w = 1 + rng.nextInt(200), h = 1 + rng.nextInt(70);
+            double density = 0.3 + 0.6 * rng.nextDouble();
+            BitLayer mask = new BitLayer(w, h);
+            boolean[][] m = new boolean[h][w];
+            for (int y = 0; y < h; y++)
+                for (int x = 0; x < w; x++) {
+                    if (rng.nextDouble() >= density) continue;
+                    mask.set(x, y);
+                    m[y][x] = true;
+                }
+
+            BitLayer seeds = new BitLayer(w, h);
+            boolean[][] reach = new boolean[h][w];
+            ArrayDeque<int[]> q = new ArrayDeque<>();
+            for (int k = 1 + rng.nextInt(3); k > 0; k--) {
+                int x = rng.nextInt(w), y = rng.nextInt(h);
+                seeds.set(x, y);
+                if (m[y][x] && !reach[y][x]) {
+                    reach[y][x] = true;
+                    q.add(new int[]{x, y});
+                }
+            }
+            while (!q.isEmpty()) {
+                int[] c = q.poll();
+                for (int d = 0; d < 4; d++) {
+                    int nx = c[0] + DX[d], ny = c[1] + DY[d];
+                    if (nx < 0 || ny < 0 || nx >= w || ny >= h || !m[ny][nx] || reach[ny][nx]) continue;
+                    reach[ny][nx] = true;
+                    q.add(new int[]{nx, ny});
+                }
+            }
+
+            seeds.floodWithin(mask);
+            for (int y = 0; y < h; y++)
+                for (int x = 0; x < w; x++) assertEquals(reach[y][x], seeds.get(x, y), "caso " + t + " (" + w + "x" + h + ") en " + x + "," + y);
+        }
+    }
+
+    @Test
+    void floodWithinCrossesWordBoundariesOnLongCorridors() {
+        // pasillo en zigzag de lado a lado: cada fila sólo se conecta a la siguiente por un extremo
+        int w = 130, h = 9;
+        BitLayer mask = new BitLayer(w, h);
+        for (int y = 0; y < h; y += 2) for (int x = 0; x < w; x++) mask.set(x, y);
+        for (int y = 1; y < h; y += 2) mask.set((y / 2) % 2 == 0 ? w - 1 : 0, y);
+        BitLayer seed = new BitLayer(w, h);
+        seed.set(0, 0);
+        seed.floodWithin(mask);
+        assertEquals(mask.count(), seed.count());
+    }
+
+    @Test
+    void copyWindowMatchesCellByCell() {
+        Random rng = new Random(23);
+        BitLayer src = new BitLayer(300, 40);
+        for (int y = 0; y < 40; y++) for (int x = 0; x < 300; x++) if (rng.nextBoolean()) src.set(x, y);
+        for (int t = 0; t < 200; t++) {
+            int x0 = rng.nextInt(300), y0 = rng.nextInt(40), w = 1 + rng.nextInt(160), h = 1 + rng.nextInt(50);
+            BitLayer win = new BitLayer(w, h).copyWindow(src, x0, y0);
+            for (int y = 0; y < h; y++)
+                for (int x = 0; x < w; x++) {
+                    boolean in = x0 + x < 300 && y0 + y < 40 && src.get(x0 + x, y0 + y);
+                    assertEquals(in, win.get(x, y), "ventana " + t + " en " + x + "," + y);
+                }
+        }
+    }
+
+    // las capas del mapa siguen a los bytes de celda al generar chunks perezosos y con cada mutación
+    @Test
+    void mapLayersFollowCells() {
+        GameMap map = GameMap.chunked(3 * GameMap.CHUNK + 9, 2 * GameMap.CHUNK + 5, 4);
+        Random rng = new Random(9);
+        map.walkable(70, 70);
+        assertLayersMatch(map);
+        for (int i = 0; i < 400; i++) {
+            int x = rng.nextInt(map.w), y = rng.nextInt(map.h);
+            switch (i % 4) {
+                case 0 -> map.setType(x, y, rng.nextBoolean() ? Tiles.ROCK : Tiles.FLOOR);
+                case 1 -> map.setIndoor(x, y, rng.nextBoolean());
+                case 2 -> map.setExplored(x, y);
+                default -> map.fill(x, y, x + rng.nextInt(6), y + rng.nextInt(6), Tiles.WATER);
+            }
+        }
+        assertLayersMatch(map);
+    }
+
+    private static void assertLayersMatch(GameMap map) {
+        for (int y = 0; y < map.h; y++)
+            for (int x = 0; x < map.w; x++) {
+                String at = "en " + x + "," + y;
+                if (!map.isLoaded(x, y)) {
+                    assertFalse(map.walkLayer().get(x, y) || map.exploredLayer().get(x, y), at);
+                    continue;
+                }
+                assertEquals(map.walkable(x, y), map.walkLayer().get(x, y), at);
+                assertEquals(map.transparent(x, y), map.transparentLayer().get(x, y), at);
+                assertEquals(map.indoor(x, y), map.indoorLayer().get(x, y), at);
+                assertEquals(map.explored(x, y), map.exploredLayer().get(x, y), at);
+            }
+    }
+}
@@ -0,0 +1,173 @@
+package world;
+
+import items.Item;
+import items.Items;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Ida y vuelta por el fichero de intercambio: un chunk expulsado vuelve con sus celdas, lo explorado, los
+// tejados vistos y su loot (id, durabilidad y si ya se había visto), tanto si se lee en síncrono como si
+// llega su página en segundo plano, y nunca con una página vieja aunque se expulse muchas veces con cambios
+// entre medias.
+class ChunkResidencyTest {
+    private static final int CHUNKS = 12; // una fila de chunks
+    private static final int W = CHUNKS * GameMap.CHUNK, H = GameMap.CHUNK;
+
+    private GameMap map;
+    private List<Entity> entities;
+    private ChunkResidency res;
+    private Path spill;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        map = GameMap.chunked(W, H, 7);
+        entities = new ArrayList<>();
+        spill = Files.createTempFile("residency-test", ".spill");
+        res = new ChunkResidency(map, 3, spill, entities);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        res.close();
+        Files.deleteIfExists(spill);
+    }
+
+    @Test
+    void evictedChunkComesBackIntact() {
+        mark(0, 1);
+        entities.add(loot(20, 20, "water_01", 13));
+        entities.add(loot(40, 9, "knife_01", 3));
+        entities.get(1).revealed = true;
+        entities.add(loot(3 * GameMap.CHUNK + 5, 5, "cap_01", 1)); // otro chunk: no viaja con el 0
+        byte[] cells = snapshot(0);
+        long[] roofs = roofs(0);
+        List<String> loot = lootIn(0);
+
+        walkAway();
+        assertFalse(loaded(0), "el chunk 0 debería estar en disco");
+        assertTrue(lootIn(0).isEmpty(), "su loot sale de la lista mientras está fuera");
+        assertTrue(res.evictions() > 0);
+
+        // lectura síncrona: consultar una celda la trae en el momento; el loot vuelve en el siguiente update
+        assertArrayEquals(cells, snapshot(0));
+        assertArrayEquals(roofs, roofs(0));
+        res.update(32, 32, 0);
+        assertEquals(loot, lootIn(0));
+
+        // lectura asíncrona: la cámara a un chunk de distancia pide la página y update() la instala
+        walkAway();
+        assertFalse(loaded(0));
+        waitForPage(0);
+        assertArrayEquals(cells, snapshot(0));
+        assertArrayEquals(roofs, roofs(0));
+        assertEquals(loot, lootIn(0));
+    }
+
+    @Test
+    void latestContentWinsOverRepeatedEvictions() {
+        Random rng = new Random(3);
+        for (int round = 1; round <= 25; round++) {
+            mark(0, round);
+            byte[] cells = snapshot(0);
+            long[] roofs = roofs(0);
+            walkAway();
+            assertFalse(loaded(0));
+            // páginas pedidas en segundo plano y lecturas síncronas que se les adelantan, mezcladas: una página
+            // de una expulsión anterior nunca debe ganar a la última
+            if (rng.nextBoolean()) res.update(GameMap.CHUNK + 32, 32, 0);
+            if (rng.nextBoolean()) sleep(rng.nextInt(3));
+            if (rng.nextBoolean()) waitForPage(0);
+            assertArrayEquals(cells, snapshot(0), "ronda " + round);
+            assertArrayEquals(roofs, roofs(0), "ronda " + round);
+            res.update(32, 32, 0);
+        }
+    }
+
+    // cambios propios de la ronda 'k' en el chunk 'ci': tipos, explorado y tejados que la generación no pone
+    private void mark(int ci, int k) {
+        int x0 = ci * GameMap.CHUNK;
+        for (int i = 0; i < 8; i++) {
+            int x = x0 + 1 + (k * 7 + i * 5) % (GameMap.CHUNK - 2), y = 1 + (k * 3 + i * 11) % (GameMap.CHUNK - 2);
+            map.setType(x, y, (k + i) % 2 == 0 ? Tiles.ROCK : Tiles.WATER);
+            map.setExplored(x, (y + 1) % GameMap.CHUNK);
+            map.setRoofSeen((x + 1) % GameMap.CHUNK + x0, y);
+        }
+    }
+
+    // lleva la cámara hasta el otro extremo cargando chunks por el camino: el 0 acaba expulsado
+    private void walkAway() {
+        for (int cx = 0; cx < CHUNKS; cx++) {
+            map.walkable(cx * GameMap.CHUNK, 0);
+            res.update(cx * GameMap.CHUNK + 32, 32, 0);
+        }
+    }
+
+    // cámara en el chunk vecino (el 0 queda en el anillo de lectura) hasta que su página se instala
+    private void waitForPage(int ci) {
+        long end = System.nanoTime() + 5_000_000_000L;
+        while (!loaded(ci)) {
+            assertTrue(System.nanoTime() < end, "la página del chunk " + ci + " no llega");
+            res.update((ci + 1) * GameMap.CHUNK + 32, 32, 0);
+            sleep(1);
+        }
+        res.update((ci + 1) * GameMap.CHUNK + 32, 32, 0); // devuelve su loot
+    }
+
+    private boolean loaded(int ci) {
+        return map.isLoaded(ci * GameMap.CHUNK, 0);
+    }
+
+    // tipo, interior y explorado de cada celda (consultarlas carga el chunk)
+    private byte[] snapshot(int ci) {
+        byte[] out = new byte[GameMap.CHUNK * GameMap.CHUNK];
+        for (int y = 0; y < GameMap.CHUNK; y++) {
+            for (int x = 0; x < GameMap.CHUNK; x++) {
+                int gx = ci * GameMap.CHUNK + x;
+                out[y * GameMap.CHUNK + x] = (byte) (map.type(gx, y) | (map.indoor(gx, y) ? 0x40 : 0) | (map.explored(gx, y) ? 0x80 : 0));
+            }
+        }
+        return out;
+    }
+
+    private long[] roofs(int ci) {
+        long[] out = new long[GameMap.CHUNK];
+        for (int y = 0; y < GameMap.CHUNK; y++)
+            for (int x = 0; x < GameMap.CHUNK; x++) if (map.roofSeen(ci * GameMap.CHUNK + x, y)) out[y] |= 1L << x;
+        return out;
+    }
+
+    private List<String> lootIn(int ci) {
+        List<String> out = new ArrayList<>();
+        for (Entity e : entities) {
+            if (e.type != Entity.Type.LOOT || e.x >> GameMap.CHUNK_SHIFT != ci) continue;
+            out.add(e.x + "," + e.y + " " + e.item.getId() + " " + e.item.getDurabilidad() + " " + e.revealed);
+        }
+        Collections.sort(out);
+        return out;
+    }
+
+    private static Entity loot(int x, int y, String id, int durability) {
+        Item it = Items.create(id);
+        it.setDurabilidad(durability);
+        return Entity.loot(x, y, it);
+    }
+
+    private static void sleep(int ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
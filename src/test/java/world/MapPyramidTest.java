@@ -0,0 +1,53 @@
+package world;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// La clase de un bloque sale sólo de lo explorado: un bloque sin nada explorado no enseña su terreno y uno con
+// agua sin explorar al lado no se pinta de agua. Y lo mantenido por trozos coincide con una pirámide nueva.
+class MapPyramidTest {
+    private static final int W = 150, H = 110;
+
+    @Test
+    void unexploredTerrainDoesNotLeak() {
+        GameMap map = new GameMap(W, H);
+        map.fill(0, 0, W - 1, H - 1, Tiles.FLOOR);
+        map.fill(40, 0, 41, H - 1, Tiles.WATER); // franja de agua de dos columnas
+        MapPyramid p = map.pyramid();
+        for (int k = 1; k < p.levels(); k++)
+            for (int y = 0; y < p.height(k); y++)
+                for (int x = 0; x < p.width(k); x++) assertEquals(MapPyramid.NONE, p.cls(k, x, y), "nivel " + k);
+
+        map.setExplored(39, 10); // el bloque 2x2 (38..39, 10..11) sólo tiene suelo; el de nivel 3 (32..39) también
+        assertEquals(MapPyramid.OPEN, p.cls(1, 19, 5));
+        assertEquals(MapPyramid.OPEN, p.cls(3, 4, 1));
+        assertEquals(MapPyramid.OPEN, p.cls(4, 2, 0), "el agua sin explorar del bloque no cuenta");
+        map.setExplored(40, 10);
+        assertEquals(MapPyramid.WATER, p.cls(4, 2, 0));
+    }
+
+    @Test
+    void incrementalMatchesRebuild() {
+        GameMap map = GameMap.chunked(3 * GameMap.CHUNK + 20, 2 * GameMap.CHUNK + 7, 4);
+        Random rng = new Random(2);
+        map.walkable(10, 10);
+        MapPyramid p = map.pyramid();
+        for (int i = 0; i < 5000; i++) {
+            int x = rng.nextInt(map.w), y = rng.nextInt(map.h);
+            if (i % 500 == 0) map.walkable(x, y); // carga chunks nuevos por el camino
+            if (map.isLoaded(x, y)) map.setExplored(x, y);
+            if (i % 700 == 0) map.fill(x, y, x + 8, y + 5, Tiles.WATER);
+        }
+        MapPyramid fresh = new MapPyramid(map);
+        for (int k = 1; k < p.levels(); k++)
+            for (int y = 0; y < p.height(k); y++)
+                for (int x = 0; x < p.width(k); x++) {
+                    String at = "nivel " + k + " en " + x + "," + y;
+                    assertEquals(fresh.cls(k, x, y), p.cls(k, x, y), at);
+                    assertEquals(fresh.explored(k, x, y), p.explored(k, x, y), at);
+                }
+    }
+}
@@ -0,0 +1,87 @@
+package world;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// El índice mantenido por trozos (descartar y re-etiquetar lo que toca cada cambio) da las mismas salas y
+// edificios que uno nuevo, y los ids descartados se reutilizan: editar una y otra vez no hace crecer los ids.
+class RoomIndexTest {
+
+    @Test
+    void incrementalMatchesFreshIndex() {
+        GameMap map = GameMap.randomBalanced(new GenParams(220, 160, 31));
+        Random rng = new Random(8);
+        for (int i = 0; i < 300; i++) {
+            int x = 1 + rng.nextInt(map.w - 2), y = 1 + rng.nextInt(map.h - 2);
+            switch (i % 4) {
+                case 0 -> map.setType(x, y, Tiles.DOOR);
+                case 1 -> map.setIndoor(x, y, !map.indoor(x, y));
+                case 2 -> map.setType(x, y, Tiles.FLOOR);
+                default -> map.fill(x, y, x + 3, y, Tiles.WALL_H);
+            }
+            map.rooms().roomAt(rng.nextInt(map.w), rng.nextInt(map.h)); // re-etiqueta a trozos entre cambios
+            if (i % 50 == 0) assertSameRooms(map);
+        }
+        assertSameRooms(map);
+    }
+
+    @Test
+    void droppedIdsAreReused() {
+        GameMap map = GameMap.randomBalanced(new GenParams(220, 160, 31));
+        RoomIndex rooms = map.rooms();
+        int live = rooms.roomCount();
+        assertTrue(live > 0);
+        int x = -1, y = -1;
+        for (int i = 0; i < map.w * map.h && x < 0; i++) if (map.indoor(i % map.w, i / map.w)) {
+            x = i % map.w;
+            y = i / map.w;
+        }
+        for (int k = 0; k < 200; k++) {
+            map.setIndoor(x, y, k % 2 != 0); // descarta la sala y la vuelve a crear
+            rooms.labelAll();
+            assertTrue(maxId(map) < live + 2, "vuelta " + k + ": los ids siguen creciendo");
+            assertTrue(rooms.roomCount() <= live + 1);
+        }
+    }
+
+    // misma partición en salas (salvo nombre de los ids), mismas puertas y mismos edificios
+    private static void assertSameRooms(GameMap map) {
+        RoomIndex inc = map.rooms(), fresh = new RoomIndex(map);
+        Map<Integer, Integer> ids = new HashMap<>(), back = new HashMap<>();
+        for (int y = 0; y < map.h; y++) {
+            for (int x = 0; x < map.w; x++) {
+                int a = inc.roomAt(x, y), b = fresh.roomAt(x, y);
+                String at = "en " + x + "," + y;
+                assertEquals(b == RoomIndex.NONE, a == RoomIndex.NONE, at);
+                if (a == RoomIndex.NONE) continue;
+                assertEquals(ids.computeIfAbsent(a, k -> b), b, at);
+                assertEquals(back.computeIfAbsent(b, k -> a), a, at);
+            }
+        }
+        for (Map.Entry<Integer, Integer> e : ids.entrySet()) {
+            RoomIndex.Room a = inc.room(e.getKey()), b = fresh.room(e.getValue());
+            assertEquals(b.cells, a.cells);
+            assertEquals(b.doorCount(), a.doorCount());
+            RoomIndex.Building ba = inc.building(inc.buildingOf(a.id)), bb = fresh.building(fresh.buildingOf(b.id));
+            assertEquals(bb.rooms.length, ba.rooms.length);
+            for (int r : ba.rooms) assertTrue(contains(bb.rooms, ids.get(r)));
+            assertEquals(bb.exteriorDoors.length, ba.exteriorDoors.length);
+        }
+    }
+
+    private static int maxId(GameMap map) {
+        int max = RoomIndex.NONE;
+        for (int y = 0; y < map.h; y++) for (int x = 0; x < map.w; x++) max = Math.max(max, map.rooms().roomAt(x, y));
+        return max;
+    }
+
+    private static boolean contains(int[] a, int v) {
+        for (int x : a) if (x == v) return true;
+        return false;
+    }
+}
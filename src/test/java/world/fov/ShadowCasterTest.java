@@ -0,0 +1,61 @@
+package world.fov;
+
+import org.junit.jupiter.api.Test;
+import world.GameMap;
+import world.Tiles;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Simetría: entre dos casillas transparentes, si A ve a B entonces B ve a A (mismo radio y aspecto).
+// Y en campo abierto se ve exactamente la elipse.
+class ShadowCasterTest {
+    private static final int W = 48, H = 32;
+
+    @Test
+    void visibilityIsSymmetricBetweenTransparentCells() {
+        Random rng = new Random(5);
+        ShadowCaster caster = new ShadowCaster(2.0);
+        int radius = 12;
+        for (int t = 0; t < 20; t++) {
+            GameMap map = new GameMap(W, H);
+            map.fill(0, 0, W - 1, H - 1, Tiles.FLOOR);
+            double walls = 0.05 + 0.3 * rng.nextDouble();
+            for (int y = 0; y < H; y++)
+                for (int x = 0; x < W; x++) if (rng.nextDouble() < walls) map.setType(x, y, Tiles.ROCK);
+
+            boolean[][][] sees = new boolean[W * H][][];
+            for (int y = 0; y < H; y++)
+                for (int x = 0; x < W; x++) if (map.transparent(x, y)) sees[y * W + x] = visible(caster, map, x, y, radius);
+
+            for (int a = 0; a < W * H; a++) {
+                if (sees[a] == null) continue;
+                for (int b = a + 1; b < W * H; b++) {
+                    if (sees[b] == null) continue;
+                    boolean ab = sees[a][b / W][b % W], ba = sees[b][a / W][a % W];
+                    assertEquals(ab, ba, "mapa " + t + ": (" + a % W + "," + a / W + ") y (" + b % W + "," + b / W + ")");
+                }
+            }
+        }
+    }
+
+    @Test
+    void openFieldSeesTheWholeEllipse() {
+        GameMap map = new GameMap(W, H);
+        map.fill(0, 0, W - 1, H - 1, Tiles.FLOOR);
+        ShadowCaster caster = new ShadowCaster(2.0);
+        EllipseStencil e = EllipseStencil.of(10, 2.0);
+        boolean[][] v = visible(caster, map, W / 2, H / 2, 10);
+        for (int y = 0; y < H; y++)
+            for (int x = 0; x < W; x++) assertEquals(e.contains(x - W / 2, y - H / 2), v[y][x], "en " + x + "," + y);
+    }
+
+    private static boolean[][] visible(ShadowCaster caster, GameMap map, int ox, int oy, int radius) {
+        boolean[][] out = new boolean[H][W];
+        caster.cast(map, ox, oy, radius, radius, (x, y, inner) -> {
+            if (inner) out[y][x] = true;
+        });
+        return out;
+    }
+}
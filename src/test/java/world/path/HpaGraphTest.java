@@ -0,0 +1,92 @@
+package world.path;
+
+import org.junit.jupiter.api.Test;
+import world.GameMap;
+import world.Tiles;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// HPA* contra un BFS de la rejilla entera: encuentra camino exactamente cuando lo hay, el camino es válido
+// (pasos 4-conexos por casillas transitables, acaba en la meta) y nunca es más corto que el óptimo. También
+// después de cambiar el mapa (sólo se rehacen los clusters tocados).
+class HpaGraphTest {
+    private static final int W = 90, H = 70;
+    private static final int[] DX = {1, -1, 0, 0}, DY = {0, 0, 1, -1};
+
+    @Test
+    void pathsAgreeWithBfs() {
+        Random rng = new Random(17);
+        for (int t = 0; t < 6; t++) {
+            GameMap map = randomMap(rng);
+            HpaGraph hpa = new HpaGraph(map);
+            check(map, hpa, rng, 150);
+
+            // cambios sueltos: muros y aperturas
+            for (int k = 0; k < 40; k++) map.setType(rng.nextInt(W), rng.nextInt(H), rng.nextBoolean() ? Tiles.ROCK : Tiles.FLOOR);
+            map.fill(0, H / 2, W - 1, H / 2, Tiles.ROCK); // parte el mapa en dos
+            check(map, hpa, rng, 100);
+            map.fill(W / 3, H / 2, W / 3 + 2, H / 2, Tiles.FLOOR);
+            check(map, hpa, rng, 100);
+        }
+    }
+
+    private static void check(GameMap map, HpaGraph hpa, Random rng, int queries) {
+        for (int q = 0; q < queries; q++) {
+            int sx = rng.nextInt(W), sy = rng.nextInt(H), gx = rng.nextInt(W), gy = rng.nextInt(H);
+            if (!map.walkable(sx, sy) || !map.walkable(gx, gy)) {
+                assertNull(hpa.findPath(sx, sy, gx, gy));
+                continue;
+            }
+            int best = bfs(map, sx, sy)[gy * W + gx];
+            int[] path = hpa.findPath(sx, sy, gx, gy);
+            String what = "(" + sx + "," + sy + ") -> (" + gx + "," + gy + ")";
+            if (best < 0) {
+                assertNull(path, "no hay camino " + what);
+                continue;
+            }
+            assertNotNull(path, "hay camino " + what);
+            assertTrue(path.length >= best, "más corto que el óptimo " + what);
+            int x = sx, y = sy;
+            for (int cell : path) {
+                int nx = cell % W, ny = cell / W;
+                assertEquals(1, Math.abs(nx - x) + Math.abs(ny - y), "paso no 4-conexo " + what);
+                assertTrue(map.walkable(nx, ny), "pisa una casilla no transitable " + what);
+                x = nx;
+                y = ny;
+            }
+            assertEquals(gx, x, what);
+            assertEquals(gy, y, what);
+        }
+    }
+
+    private static GameMap randomMap(Random rng) {
+        GameMap map = new GameMap(W, H);
+        map.fill(0, 0, W - 1, H - 1, Tiles.FLOOR);
+        double walls = 0.15 + 0.2 * rng.nextDouble();
+        for (int y = 0; y < H; y++)
+            for (int x = 0; x < W; x++) if (rng.nextDouble() < walls) map.setType(x, y, Tiles.ROCK);
+        return map;
+    }
+
+    private static int[] bfs(GameMap map, int sx, int sy) {
+        int[] dist = new int[W * H];
+        Arrays.fill(dist, -1);
+        int[] q = new int[W * H];
+        int head = 0, tail = 0;
+        dist[sy * W + sx] = 0;
+        q[tail++] = sy * W + sx;
+        while (head < tail) {
+            int i = q[head++], x = i % W, y = i / W;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DX[d], ny = y + DY[d];
+                if (nx < 0 || ny < 0 || nx >= W || ny >= H || !map.walkable(nx, ny) || dist[ny * W + nx] >= 0) continue;
+                dist[ny * W + nx] = dist[i] + 1;
+                q[tail++] = ny * W + nx;
+            }
+        }
+        return dist;
+    }
+}